@@ -0,0 +1,216 @@
+package ddd.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe {@link UnitOfWork}, which could be shared by the threads working on the same business transaction, e.g.
+ * loading the entities concurrently. The state is striped per repository and kept in the concurrent maps, so that the
+ * threads working with different entities do not contend. The calls for the same entity are atomic and take effect in
+ * some sequential order, i.e. the last "changed" or "removed" call wins.
+ * Flushing is exclusive: the changes made by other threads while flushing wait until the flush completes, and then
+ * they get into the next flush. Reading the registered entities never waits.
+ */
+@SuppressWarnings("unchecked")
+public class ConcurrentUnitOfWork extends UnitOfWork {
+    private final ConcurrentMap<Class<? extends PersistenceOrientedRepository>, Stripe> stripes = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // set for the threads flushing the changes, including the executor's ones
+    private final ThreadLocal<Boolean> flushing = ThreadLocal.withInitial(() -> false);
+
+    public ConcurrentUnitOfWork() {
+        super();
+    }
+
+    /**
+     * Creates the unit of work flushing the changes of the independent repositories concurrently, see
+     * {@link UnitOfWork#UnitOfWork(Executor)}.
+     */
+    public ConcurrentUnitOfWork(Executor executor) {
+        super(executor);
+    }
+
+    @Override
+    public <T extends IdentifiedEntity<K>, K, R extends PersistenceOrientedRepository<T, K>> Optional<T> get(R r, K id) {
+        return Optional.ofNullable(stripes.get(r.getClass())).flatMap(stripe -> Optional.ofNullable((T) stripe.cache.get(id)));
+    }
+
+    @Override
+    public <T extends IdentifiedEntity<K>, K, R extends PersistenceOrientedRepository<T, K>> boolean isRemoved(R r, K id) {
+        return Optional.ofNullable(stripes.get(r.getClass())).map(stripe -> stripe.removed.contains(id)).orElse(false);
+    }
+
+    @Override
+    public <T extends IdentifiedEntity<K>, K, R extends PersistenceOrientedRepository<T, K>> void register(R r, T entity) {
+        mutating(() -> {
+            Stripe stripe = stripe(r);
+            stripe.cache.compute(entity.getId(), (id, cached) -> {
+                // okay, someone registers an entity, but we know it was changed already and not flushed, seems like a bug
+                if (stripe.changed.containsKey(id)) {
+                    throw new IllegalStateException("Entity (" + r.getClass() + ") " + id + " was changed already");
+                }
+                stripe.removed.remove(id);
+                return entity;
+            });
+            return null;
+        });
+    }
+
+    @Override
+    public <T extends IdentifiedEntity<K>, K, R extends PersistenceOrientedRepository<T, K>> void fingerprinted(R r, K id, Object fingerprint) {
+        mutating(() -> {
+            Stripe stripe = stripe(r);
+            stripe.cache.computeIfPresent(id, (key, cached) -> {
+                stripe.fingerprints.put(key, fingerprint);
+                return cached;
+            });
+            return null;
+        });
+    }
+
+    @Override
+    public <F, T extends IdentifiedEntity<K>, K, R extends PersistenceOrientedRepository<T, K>> Optional<F> fingerprint(R r, K id) {
+        return Optional.ofNullable(stripes.get(r.getClass())).flatMap(stripe -> Optional.ofNullable((F) stripe.fingerprints.get(id)));
+    }
+
+    @Override
+    public <T extends IdentifiedEntity<K>, K, R extends PersistenceOrientedRepository<T, K>> void changed(R r, T entity) {
+        mutating(() -> {
+            Stripe stripe = stripe(r);
+            // the cache entry guards the other collections of the same entity
+            stripe.cache.compute(entity.getId(), (id, cached) -> {
+                if (cached != entity) {
+                    stripe.changed.put(id, entity);
+                    stripe.removed.remove(id);
+                }
+                return entity;
+            });
+            return null;
+        });
+    }
+
+    @Override
+    public <T extends IdentifiedEntity<K>, K, R extends PersistenceOrientedRepository<T, K>> void removed(R r, K id) {
+        mutating(() -> {
+            Stripe stripe = stripe(r);
+            stripe.cache.compute(id, (key, cached) -> {
+                if (!stripe.removed.add(key)) {
+                    throw new IllegalStateException("Entity (" + r + ") " + key + " was removed already");
+                }
+                stripe.changed.remove(key);
+                stripe.fingerprints.remove(key);
+                return null;
+            });
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isFlushing() {
+        return flushing.get();
+    }
+
+    @Override
+    public void flush() {
+        exclusively(() -> super.flush());
+    }
+
+    @Override
+    public <T extends IdentifiedEntity<K>, K, R extends PersistenceOrientedRepository<T, K>> void flush(R r) {
+        exclusively(() -> super.flush(r));
+    }
+
+    @Override
+    public void end() {
+        exclusively(() -> super.end());
+    }
+
+    @Override
+    protected void flushChanges(PersistenceOrientedRepository repository) {
+        boolean wasFlushing = flushing.get();
+        flushing.set(true);
+        try {
+            super.flushChanges(repository);
+        } finally {
+            flushing.set(wasFlushing);
+        }
+    }
+
+    @Override
+    protected Collection<PersistenceOrientedRepository> registeredRepositories() {
+        Collection<PersistenceOrientedRepository> repositories = new ArrayList<>();
+        stripes.values().forEach(stripe -> repositories.add(stripe.repository));
+        return repositories;
+    }
+
+    @Override
+    protected Optional<Collection> changedEntities(Class<? extends PersistenceOrientedRepository> rClass) {
+        return Optional.ofNullable(stripes.get(rClass)).map(stripe -> stripe.changed.values());
+    }
+
+    @Override
+    protected Optional<Collection> removedIds(Class<? extends PersistenceOrientedRepository> rClass) {
+        return Optional.ofNullable(stripes.get(rClass)).map(stripe -> stripe.removed);
+    }
+
+    @Override
+    protected void clear(Optional<? extends PersistenceOrientedRepository> r) {
+        if (r.isPresent()) {
+            stripes.remove(r.get().getClass());
+        } else {
+            stripes.clear();
+        }
+    }
+
+    private Stripe stripe(PersistenceOrientedRepository r) {
+        return stripes.computeIfAbsent(r.getClass(), (rClass) -> new Stripe(r));
+    }
+
+    private <V> V mutating(Supplier<V> mutation) {
+        // the flushing threads register the entities they read, so they must not wait for the flush they are doing
+        if (flushing.get()) {
+            return mutation.get();
+        }
+        lock.readLock().lock();
+        try {
+            return mutation.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void exclusively(Runnable flush) {
+        lock.writeLock().lock();
+        boolean wasFlushing = flushing.get();
+        flushing.set(true);
+        try {
+            flush.run();
+        } finally {
+            flushing.set(wasFlushing);
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static final class Stripe {
+        final PersistenceOrientedRepository repository;
+        // repositories put entities they've read here
+        final ConcurrentMap<Object, Object> cache = new ConcurrentHashMap<>();
+        // last version of all changed entities (except deleted ones)
+        final ConcurrentMap<Object, Object> changed = new ConcurrentHashMap<>();
+        // all deleted entities
+        final Set<Object> removed = ConcurrentHashMap.newKeySet();
+        // fingerprints of the read entities
+        final ConcurrentMap<Object, Object> fingerprints = new ConcurrentHashMap<>();
+
+        Stripe(PersistenceOrientedRepository repository) {
+            this.repository = repository;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ddd.repository;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Exception for cases, when the changes of several repositories failed to be flushed concurrently. The changes of the
+ * other repositories are flushed anyway, except the ones declared to be flushed after the failed repositories.
+ */
+public class FlushException extends RepositoryException {
+    private final Map<Class<? extends PersistenceOrientedRepository>, RuntimeException> failures;
+    private final Set<Class<? extends PersistenceOrientedRepository>> skipped;
+
+    FlushException(
+            Map<Class<? extends PersistenceOrientedRepository>, RuntimeException> failures,
+            Set<Class<? extends PersistenceOrientedRepository>> skipped) {
+        super("Failed to flush the repositories " + failures.keySet() + (skipped.isEmpty() ? "" : ", skipped " + skipped));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        this.skipped  = Collections.unmodifiableSet(skipped);
+        failures.values().forEach(this::addSuppressed);
+    }
+
+    /**
+     * @return the failures by the classes of the repositories
+     */
+    public Map<Class<? extends PersistenceOrientedRepository>, RuntimeException> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the classes of the repositories, which were not flushed because of the failed ones they depend on
+     */
+    public Set<Class<? extends PersistenceOrientedRepository>> getSkipped() {
+        return skipped;
+    }
+}
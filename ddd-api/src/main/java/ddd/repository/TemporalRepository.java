@@ -1,5 +1,7 @@
 package ddd.repository;
 
+import java.util.Optional;
+
 /**
  * Temporal Repository. This repository contains temporal methods, i.e. operations based on time.
  */
@@ -18,4 +20,20 @@ public interface TemporalRepository<T extends IdentifiedEntity<K>, K> extends Pe
      */
     default boolean removed(K id) { return !contains(id) && contained(id); }
 
+    /**
+     * Returns an {@link Optional} describing the element as it was at the specified version, or an empty
+     * {@code Optional} if the element did not present at that version.
+     * @param id identifier of the element which whould be retrieved
+     * @param version version of the element, or -1 for the latest one
+     */
+    Optional<T> get(K id, long version);
+
+    /**
+     * Returns an {@link Optional} describing the element as it was at the specified time, or an empty
+     * {@code Optional} if the element did not present at that time.
+     * @param id identifier of the element which whould be retrieved
+     * @param timestamp time in milliseconds
+     */
+    Optional<T> getAsOf(K id, long timestamp);
+
 }
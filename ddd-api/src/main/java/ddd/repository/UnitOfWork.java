@@ -1,16 +1,55 @@
 package ddd.repository;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 public class UnitOfWork implements AutoCloseable {
-    private boolean flushing = false;
+    private volatile boolean flushing = false;
     // repositories put entities they've read  here
     private final Map<Class<? extends PersistenceOrientedRepository>, Map> cache = new IdentityHashMap<>();
     // put last version of all changed entities (except deleted ones)
     private final Map<Class<? extends PersistenceOrientedRepository>, Map> changed = new IdentityHashMap<>();
     // all deleted entities
     private final Map<Class<? extends PersistenceOrientedRepository>, Set> removed = new IdentityHashMap<>();
+    // fingerprints of the read entities of the repositories doing the dirty checking
+    private final Map<Class<? extends PersistenceOrientedRepository>, Map> fingerprints = new IdentityHashMap<>();
     private final Map<Class<? extends PersistenceOrientedRepository>, PersistenceOrientedRepository> repositories = new HashMap<>();
+    // repositories, whose changes must be flushed before the changes of the key repository
+    private final Map<Class<? extends PersistenceOrientedRepository>, Set<Class<? extends PersistenceOrientedRepository>>> flushAfter = new HashMap<>();
+    private final Optional<Executor> executor;
+    // the unit of work flushed concurrently by the current thread of the executor
+    private static final ThreadLocal<UnitOfWork> flushingOnCurrentThread = new ThreadLocal<>();
+
+    public UnitOfWork() {
+        this.executor = Optional.empty();
+    }
+
+    /**
+     * Creates the unit of work flushing the changes of the independent repositories concurrently using the given
+     * executor, which should be bounded. If several repositories fail, the failures are aggregated into
+     * {@link FlushException}.
+     * Note, that the repositories are flushed on the executor's threads, where they get this unit of work through
+     * {@link #flushingOnCurrentThread()} instead of their suppliers, which are usually thread-local.
+     */
+    public UnitOfWork(Executor executor) {
+        this.executor = Optional.of(executor);
+    }
+
+    /**
+     * Declares, that the changes of the given repository must be flushed only after the changes of the other one,
+     * e.g. because the entities of the former refer to the entities of the latter.
+     * @param repository class of the dependent repository
+     * @param dependency class of the repository is to be flushed first
+     * @return this unit of work
+     */
+    public UnitOfWork flushAfter(
+            Class<? extends PersistenceOrientedRepository> repository,
+            Class<? extends PersistenceOrientedRepository> dependency) {
+        flushAfter.computeIfAbsent(repository, (c) -> new HashSet<>()).add(dependency);
+        return this;
+    }
 
     public void begin() {
         clear();
@@ -33,6 +72,22 @@ public class UnitOfWork implements AutoCloseable {
         putToCache(r, entity);
     }
 
+    /**
+     * Records the fingerprint of the registered entity, i.e. of the state it was read in, so that the repository could
+     * tell whether the entity was changed since then.
+     */
+    public <T extends IdentifiedEntity<K>, K, R extends PersistenceOrientedRepository<T, K>> void fingerprinted(R r, K id, Object fingerprint) {
+        Class<? extends PersistenceOrientedRepository> rClass = r.getClass();
+        if (!fingerprints.containsKey(rClass)) {
+            fingerprints.put(rClass, new HashMap<>());
+        }
+        fingerprints.get(rClass).put(id, fingerprint);
+    }
+
+    public <F, T extends IdentifiedEntity<K>, K, R extends PersistenceOrientedRepository<T, K>> Optional<F> fingerprint(R r, K id) {
+        return Optional.ofNullable(fingerprints.get(r.getClass())).flatMap(map -> Optional.ofNullable((F) map.get(id)));
+    }
+
     public <T extends IdentifiedEntity<K>, K, R extends PersistenceOrientedRepository<T, K>> void changed(R r, T entity) {
         if (get(r, entity.getId()).map(e -> e == entity).orElse(false)) {
             return;
@@ -67,9 +122,18 @@ public class UnitOfWork implements AutoCloseable {
         repositories.putIfAbsent(rClass, r);
         Optional.ofNullable(cache.get(rClass)).ifPresent(map -> map.remove(id));
         Optional.ofNullable(changed.get(rClass)).ifPresent(map -> map.remove(id));
+        Optional.ofNullable(fingerprints.get(rClass)).ifPresent(map -> map.remove(id));
         removed.get(rClass).add(id);
     }
 
+    /**
+     * Returns the unit of work, whose repositories are being flushed by the current thread of its executor, see
+     * {@link #UnitOfWork(Executor)}. The repositories take it instead of the unit of work of their supplier.
+     */
+    public static Optional<UnitOfWork> flushingOnCurrentThread() {
+        return Optional.ofNullable(flushingOnCurrentThread.get());
+    }
+
     public boolean isFlushing() {
         return flushing;
     }
@@ -87,11 +151,12 @@ public class UnitOfWork implements AutoCloseable {
             flushing = true;
             Collection<? extends PersistenceOrientedRepository> repos = r.map(repo ->
                     (Collection<PersistenceOrientedRepository>) Collections.singleton(repo)
-            ).orElse(repositories.values());
-            for (PersistenceOrientedRepository repository : repos) {
-                Class<? extends PersistenceOrientedRepository> rClass = repository.getClass();
-                Optional.ofNullable(changed.get(rClass)).map(Map::values).ifPresent(repository::saveAll);
-                Optional.ofNullable(removed.get(rClass)).ifPresent(repository::removeAll);
+            ).orElse(registeredRepositories());
+            List<PersistenceOrientedRepository> ordered = ordered(repos);
+            if (executor.isPresent() && ordered.size() > 1) {
+                flushConcurrently(ordered);
+            } else {
+                ordered.forEach(this::flushChanges);
             }
             clear(r);
         } finally {
@@ -99,21 +164,129 @@ public class UnitOfWork implements AutoCloseable {
         }
     }
 
+    /**
+     * Saves the changed entities and removes the removed ones of the given repository.
+     */
+    protected void flushChanges(PersistenceOrientedRepository repository) {
+        Class<? extends PersistenceOrientedRepository> rClass = repository.getClass();
+        changedEntities(rClass).ifPresent(repository::saveAll);
+        removedIds(rClass).ifPresent(repository::removeAll);
+    }
+
+    protected Collection<PersistenceOrientedRepository> registeredRepositories() {
+        return repositories.values();
+    }
+
+    protected Optional<Collection> changedEntities(Class<? extends PersistenceOrientedRepository> rClass) {
+        return Optional.ofNullable(changed.get(rClass)).map(Map::values);
+    }
+
+    protected Optional<Collection> removedIds(Class<? extends PersistenceOrientedRepository> rClass) {
+        return Optional.ofNullable(removed.get(rClass));
+    }
+
+    /**
+     * Flushes every repository as soon as the repositories it depends on are flushed. The repositories depending on
+     * the failed ones are skipped.
+     */
+    private void flushConcurrently(List<PersistenceOrientedRepository> ordered) {
+        Map<Class<? extends PersistenceOrientedRepository>, CompletableFuture<Void>> flushes = new LinkedHashMap<>();
+        for (PersistenceOrientedRepository repository : ordered) {
+            CompletableFuture<?>[] dependencies = dependencies(repository.getClass()).stream()
+                .map(flushes::get)
+                .filter(Objects::nonNull)
+                .toArray(CompletableFuture[]::new);
+            flushes.put(
+                repository.getClass(),
+                CompletableFuture.allOf(dependencies).thenRunAsync(() -> flushOnCurrentThread(repository), executor.get())
+            );
+        }
+        Map<Class<? extends PersistenceOrientedRepository>, RuntimeException> failures = new LinkedHashMap<>();
+        Set<Class<? extends PersistenceOrientedRepository>> skipped = new LinkedHashSet<>();
+        // the dependencies go first, so that the skipped repositories are known before their dependents are checked
+        flushes.forEach((rClass, flush) -> {
+            try {
+                flush.join();
+            } catch (CompletionException e) {
+                if (dependencies(rClass).stream().anyMatch(d -> failures.containsKey(d) || skipped.contains(d))) {
+                    skipped.add(rClass);
+                } else {
+                    failures.put(rClass, e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e);
+                }
+            }
+        });
+        if (failures.size() == 1 && skipped.isEmpty()) {
+            throw failures.values().iterator().next();
+        }
+        if (!failures.isEmpty()) {
+            throw new FlushException(failures, skipped);
+        }
+    }
+
+    private void flushOnCurrentThread(PersistenceOrientedRepository repository) {
+        flushingOnCurrentThread.set(this);
+        try {
+            flushChanges(repository);
+        } finally {
+            flushingOnCurrentThread.remove();
+        }
+    }
+
+    private Set<Class<? extends PersistenceOrientedRepository>> dependencies(Class<? extends PersistenceOrientedRepository> rClass) {
+        return flushAfter.getOrDefault(rClass, Collections.emptySet());
+    }
+
+    /**
+     * Sorts the repositories so that every repository goes after the repositories it depends on.
+     */
+    private List<PersistenceOrientedRepository> ordered(Collection<? extends PersistenceOrientedRepository> repos) {
+        Map<Class<? extends PersistenceOrientedRepository>, PersistenceOrientedRepository> byClass = new LinkedHashMap<>();
+        repos.forEach(repository -> byClass.put(repository.getClass(), repository));
+        List<PersistenceOrientedRepository> ordered = new ArrayList<>(byClass.size());
+        Set<Class<? extends PersistenceOrientedRepository>> visited = new HashSet<>();
+        for (Class<? extends PersistenceOrientedRepository> rClass : byClass.keySet()) {
+            visit(rClass, byClass, visited, new HashSet<>(), ordered);
+        }
+        return ordered;
+    }
+
+    private void visit(
+            Class<? extends PersistenceOrientedRepository> rClass,
+            Map<Class<? extends PersistenceOrientedRepository>, PersistenceOrientedRepository> byClass,
+            Set<Class<? extends PersistenceOrientedRepository>> visited,
+            Set<Class<? extends PersistenceOrientedRepository>> visiting,
+            List<PersistenceOrientedRepository> ordered) {
+        if (visited.contains(rClass)) {
+            return;
+        }
+        if (!visiting.add(rClass)) {
+            throw new IllegalStateException("Cyclic flush order of the repository " + rClass);
+        }
+        for (Class<? extends PersistenceOrientedRepository> dependency : dependencies(rClass)) {
+            visit(dependency, byClass, visited, visiting, ordered);
+        }
+        visiting.remove(rClass);
+        visited.add(rClass);
+        Optional.ofNullable(byClass.get(rClass)).ifPresent(ordered::add);
+    }
+
     public void end() {
         flush();
         clear();
     }
 
-    private void clear(Optional<? extends PersistenceOrientedRepository> r) {
+    protected void clear(Optional<? extends PersistenceOrientedRepository> r) {
         if (r.isPresent()) {
             cache.remove(r.get().getClass());
             changed.remove(r.get().getClass());
             removed.remove(r.get().getClass());
+            fingerprints.remove(r.get().getClass());
             repositories.remove(r.get().getClass());
         } else {
             cache.clear();
             changed.clear();
             removed.clear();
+            fingerprints.clear();
             repositories.clear();
         }
     }
@@ -0,0 +1,26 @@
+package ddd.repository.exception;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exception for cases, when some of the entities saved at once were modified concurrently. The other entities are
+ * saved anyway, so that only the failed ones should be handled.
+ */
+public class BulkOptimisticLockingException extends OptimisticLockingException {
+    private final Map<Object, OptimisticLockingException> failures;
+
+    public BulkOptimisticLockingException(Map<?, ? extends OptimisticLockingException> failures) {
+        super("Failed to save the concurrently modified entities " + failures.keySet());
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        failures.values().forEach(this::addSuppressed);
+    }
+
+    /**
+     * @return the failures by the identifiers of the entities failed to be saved
+     */
+    public Map<Object, OptimisticLockingException> getFailures() {
+        return failures;
+    }
+}
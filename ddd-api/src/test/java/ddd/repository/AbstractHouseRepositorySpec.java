@@ -5,6 +5,8 @@ import ddd.repository.TemporalRepository;
 import ddd.repository.example.domain.House;
 import ddd.repository.exception.OptimisticLockingException;
 import ddd.repository.UnitOfWork;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.function.Supplier;
 import org.junit.Test;
@@ -63,6 +65,17 @@ public abstract class AbstractHouseRepositorySpec<T extends House, R extends Per
         assertEquals("Stepan Stepanov", houseRepository.get(house.getAddress()).get().getOwner());
     }
 
+    @Test
+    public void findAllByIds() {
+        T house = houseRepository.save(awesomeHouse);
+        houseRepository.save((T) house.buy("Stepan Stepanov"));
+        houseRepository.flush();
+
+        Collection<T> found = houseRepository.findAllByIds(Arrays.asList(awesomeHouse.getAddress(), "Nowhere"));
+        assertEquals(1, found.size());
+        assertEquals("Stepan Stepanov", found.iterator().next().getOwner());
+    }
+
     @Test(expected = OptimisticLockingException.class)
     public void save() {
         houseRepository.save((T) awesomeHouse.destroy());
@@ -1,12 +1,16 @@
 package ddd.repository.dynamodb;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.AttributeUpdate;
 import com.amazonaws.services.dynamodbv2.document.Expected;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
 import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateTableSpec;
+import com.amazonaws.services.dynamodbv2.document.internal.InternalUtils;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
@@ -17,39 +21,60 @@ import com.amazonaws.services.dynamodbv2.model.ReturnValue;
 import ddd.repository.AbstractRepository;
 import ddd.repository.IdentifiedEntity;
 import ddd.repository.PersistenceOrientedRepository;
+import ddd.repository.RepositoryOptions;
 import ddd.repository.UnitOfWork;
 import ddd.repository.exception.OptimisticLockingException;
 import eventstore.util.DbObjectMapper;
+import eventstore.util.IoExecutors;
 import eventstore.util.RuntimeGeneric;
 import eventstore.util.collection.Collections;
 import eventstore.util.dynamodb.ExtendedTable;
 import eventstore.util.dynamodb.GsonDynamoDbObjectMapper;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 /**
  * Simple DynamoDB based repository. It just does the POJO mapping and puts it into the DB.
+ * Given the client of a {@link eventstore.util.dynamodb.CapacityLimiter}, the repository stays within the provisioned
+ * throughput of the table.
  */
 @SuppressWarnings("unchecked")
 public abstract class DynamoDbRepository<T extends IdentifiedEntity<K>, K>
     extends AbstractRepository<T, K, Item, PrimaryKey> {
     protected final ExtendedTable table;
     protected final String tableName;
+    /**
+     * Executor sending the BatchGetItem requests of {@link #findAllByIds(Iterable)} concurrently, and prefetching the
+     * pages of {@link #streamAll(int)}.
+     */
+    protected final Executor executor;
 
     public DynamoDbRepository(AmazonDynamoDB client, Optional<Supplier<UnitOfWork>> uof) {
         this(client, new GsonDynamoDbObjectMapper(), uof);
     }
 
     public DynamoDbRepository(AmazonDynamoDB client, DbObjectMapper<Item> mapper, Optional<Supplier<UnitOfWork>> uof) {
-        super(mapper, uof);
+        this(client, mapper, uof, new RepositoryOptions());
+    }
+
+    public DynamoDbRepository(AmazonDynamoDB client, DbObjectMapper<Item> mapper, Optional<Supplier<UnitOfWork>> uof, RepositoryOptions options) {
+        super(mapper, uof, options);
         this.tableName = getTableName(getClassArgument(0));
         this.table = new ExtendedTable(client, tableName);
+        this.executor = executor(options);
     }
 
     public DynamoDbRepository(AmazonDynamoDB client, String tableName, Optional<Supplier<UnitOfWork>> uof) {
@@ -57,15 +82,34 @@ public abstract class DynamoDbRepository<T extends IdentifiedEntity<K>, K>
     }
 
     public DynamoDbRepository(AmazonDynamoDB client, String tableName, DbObjectMapper<Item> mapper, Optional<Supplier<UnitOfWork>> uof) {
-        super(mapper, uof);
+        this(client, tableName, mapper, uof, new RepositoryOptions());
+    }
+
+    public DynamoDbRepository(
+            AmazonDynamoDB client,
+            String tableName,
+            DbObjectMapper<Item> mapper,
+            Optional<Supplier<UnitOfWork>> uof,
+            RepositoryOptions options) {
+        super(mapper, uof, options);
         this.table = new ExtendedTable(client, tableName);
         this.tableName = tableName;
+        this.executor = executor(options);
     }
 
     public DynamoDbRepository(Table table, DbObjectMapper<Item> mapper, Optional<Supplier<UnitOfWork>> uof) {
-        super(mapper, uof);
+        this(table, mapper, uof, new RepositoryOptions());
+    }
+
+    public DynamoDbRepository(Table table, DbObjectMapper<Item> mapper, Optional<Supplier<UnitOfWork>> uof, RepositoryOptions options) {
+        super(mapper, uof, options);
         this.table     = new ExtendedTable(table);
         this.tableName = table.getTableName();
+        this.executor  = executor(options);
+    }
+
+    private static Executor executor(RepositoryOptions options) {
+        return options.getExecutor().orElseGet(() -> IoExecutors.newPool("DynamoDbRepository"));
     }
 
     protected String getTableName(Class<T> entityClass) {
@@ -80,6 +124,36 @@ public abstract class DynamoDbRepository<T extends IdentifiedEntity<K>, K>
         return Optional.ofNullable(table.getItemOutcome(id).getItem());
     }
 
+    @Override
+    protected Collection<Item> doGetAll(List<K> ids) {
+        return table.batchGetItems(ids.stream().map(this::toDbId).collect(toList()), executor);
+    }
+
+    /**
+     * Returns all the entities, see {@link #streamAll(int)}.
+     */
+    public Stream<T> streamAll() {
+        return streamAll(DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Returns all the entities as a lazy stream, which scans the table page by page, so that the whole repository
+     * could be walked with the bounded memory. This is intended for the batch jobs, so that the entities bypass the
+     * unit of work, i.e. neither are registered in it, nor reflect its changes.
+     * @param pageSize maximum amount of the entities read at once
+     */
+    public Stream<T> streamAll(int pageSize) {
+        return stream(new ScanSpec(), pageSize);
+    }
+
+    /**
+     * Returns the entities matching the given scan as a lazy stream, which reads them page by page, see
+     * {@link #streamAll(int)}.
+     */
+    protected Stream<T> stream(ScanSpec scan, int pageSize) {
+        return table.scanStream(scan, pageSize, executor).map(item -> detached(() -> deserialize(item)));
+    }
+
     @Override
     public long size() { flush(); return table.count(); }
 
@@ -104,8 +178,76 @@ public abstract class DynamoDbRepository<T extends IdentifiedEntity<K>, K>
         }
     }
 
+    /**
+     * Puts the entities without the version field with the batch writes. The versioned entities require the
+     * conditional writes, which cannot be batched, so they are put one by one.
+     */
+    @Override
+    protected Map<K, OptimisticLockingException> doSaveAll(List<T> entities) {
+        Map<K, OptimisticLockingException> failures = new LinkedHashMap<>();
+        List<Item> unversioned = new ArrayList<>();
+        for (T entity : entities) {
+            Optional<Long> currentVersion = version(entity);
+            if (!currentVersion.isPresent()) {
+                unversioned.add(serialize(entity));
+                continue;
+            }
+            try {
+                doSave(serialize(entity), currentVersion);
+            } catch (OptimisticLockingException e) {
+                failures.put(entity.getId(), e);
+            }
+        }
+        table.batchWriteItems(unversioned, java.util.Collections.emptyList());
+        return failures;
+    }
+
+    @Override
+    protected Map<String, ?> attributes(Item dbObject) {
+        return dbObject.asMap();
+    }
+
+    @Override
+    protected Item copy(Item dbObject) {
+        return InternalUtils.toItemList(java.util.Collections.singletonList(InternalUtils.toAttributeValues(dbObject))).get(0);
+    }
+
+    /**
+     * Updates only the changed attributes of the item with a single conditional UpdateItem.
+     */
+    @Override
+    protected void doUpdate(Item dbObject, Map<String, Object> changed, Optional<Long> currentVersion) {
+        List<AttributeUpdate> updates = new ArrayList<>();
+        changed.forEach((name, value) -> updates.add(new AttributeUpdate(name).put(value)));
+        currentVersion.ifPresent((version) -> updates.add(new AttributeUpdate("version").put(version + 1)));
+        if (updates.isEmpty()) {
+            return;
+        }
+        try {
+            table.updateItem(new UpdateItemSpec()
+                .withPrimaryKey(toDbId((K) dbObject.get("id")))
+                .withAttributeUpdate(updates)
+                .withExpected(currentVersion.map((v) -> new Expected("version").eq(v)).orElse(new Expected("id").exists()))
+            );
+        } catch (ConditionalCheckFailedException e) {
+            if (currentVersion.isPresent()) {
+                throw new OptimisticLockingException(
+                        "Failed to update item " + dbObject + " in the table " + tableName,
+                        e
+                );
+            }
+            // the item was removed concurrently, so it is put as a whole
+            doSave(dbObject, currentVersion);
+        }
+    }
+
     @Override
     protected boolean doRemove(PrimaryKey id) {
         return table.deleteAndCheck(id);
     }
+
+    @Override
+    protected void doRemoveAll(List<K> ids) {
+        table.batchWriteItems(java.util.Collections.emptyList(), ids.stream().map(this::toDbId).collect(toList()));
+    }
 }
@@ -4,8 +4,10 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Expected;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
+import com.amazonaws.services.dynamodbv2.document.RangeKeyCondition;
 import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateTableSpec;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
@@ -18,6 +20,8 @@ import ddd.repository.IdentifiedEntity;
 import ddd.repository.UnitOfWork;
 import ddd.repository.eventsourcing.EventSourcedEntity;
 import ddd.repository.eventsourcing.EventSourcedRepository;
+import ddd.repository.eventsourcing.EventSourcedRepositoryOptions;
+import eventstore.Event;
 import eventstore.EventStore;
 import eventstore.dynamodb.DynamoDbEventStore;
 import eventstore.util.DbObjectMapper;
@@ -26,8 +30,12 @@ import eventstore.util.dynamodb.ExtendedTable;
 import eventstore.util.dynamodb.GsonDynamoDbObjectMapper;
 import java.lang.reflect.Field;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -37,6 +45,8 @@ import java.util.stream.StreamSupport;
 /**
  * DynamoDB-based event sourced repository. This stores events and snapshots in DynamoDB. Optionally,
  * you can specify other {@link EventStore}.
+ * By default, the snapshots are stored in a separate table. Optionally, every snapshot could be co-located with the
+ * events of its entity, so that loading an entity is a single query.
  */
 @SuppressWarnings("unchecked")
 public abstract class DynamoDbEventSourcedRepository<T extends EventSourcedEntity<T> & IdentifiedEntity<K>, K>
@@ -45,6 +55,15 @@ public abstract class DynamoDbEventSourcedRepository<T extends EventSourcedEntit
     protected final ExtendedTable table;
     protected final String tableName;
     protected final ProvisionedThroughput provisionedThroughput;
+    /**
+     * Whether the snapshots are stored in the table of the events, in the partition of the entity's stream under the
+     * {@link DynamoDbEventStore#RESERVED_VERSION}.
+     */
+    protected final boolean colocated;
+    // historical snapshots keyed by both the id and the version, created only if the history is used
+    private volatile ExtendedTable snapshotHistory;
+    // the tail of a stream after the snapshot is usually short, so the first page should not read the whole stream
+    private static final int LOAD_PAGE_SIZE = 32;
 
     public DynamoDbEventSourcedRepository(
             AmazonDynamoDB client,
@@ -70,12 +89,57 @@ public abstract class DynamoDbEventSourcedRepository<T extends EventSourcedEntit
             long writeCapacityUnits,
             DbObjectMapper<Item> mapper,
             Optional<Supplier<UnitOfWork>> uow) {
+        this(client, tableName, readCapacityUnits, writeCapacityUnits, mapper, false, uow);
+    }
+
+    /**
+     * Creates the repository.
+     * @param colocated whether the snapshots are stored along with the events in the single table with the given
+     *                  name, rather than in the separate one; note, that the layouts are not compatible
+     */
+    public DynamoDbEventSourcedRepository(
+            AmazonDynamoDB client,
+            String tableName,
+            long readCapacityUnits,
+            long writeCapacityUnits,
+            DbObjectMapper<Item> mapper,
+            boolean colocated,
+            Optional<Supplier<UnitOfWork>> uow) {
+        this(client, tableName, readCapacityUnits, writeCapacityUnits, mapper, colocated, uow, new EventSourcedRepositoryOptions<>());
+    }
+
+    /**
+     * Creates the repository.
+     * @param colocated whether the snapshots are stored along with the events in the single table with the given
+     *                  name, rather than in the separate one; note, that the layouts are not compatible
+     * @param options optional settings of the repository
+     */
+    public DynamoDbEventSourcedRepository(
+            AmazonDynamoDB client,
+            String tableName,
+            long readCapacityUnits,
+            long writeCapacityUnits,
+            DbObjectMapper<Item> mapper,
+            boolean colocated,
+            Optional<Supplier<UnitOfWork>> uow,
+            EventSourcedRepositoryOptions<K, Item> options) {
+        super(options);
         this.tableName = tableName != null ? tableName : getTableName(getClassArgument(0));
         this.provisionedThroughput = new ProvisionedThroughput(readCapacityUnits, writeCapacityUnits);
         this.table = new ExtendedTable(client, this.tableName);
         this.unitOfWork = uow;
-        initializeTable(table);
-        init(new DynamoDbEventStore(client, this.tableName + "Events", readCapacityUnits, writeCapacityUnits, mapper), mapper);
+        this.colocated = colocated;
+        if (!colocated) {
+            initializeTable(table);
+        }
+        // the event store creates the co-located table, since its key is the key of the events
+        init(new DynamoDbEventStore(
+                    client,
+                    colocated ? this.tableName : this.tableName + "Events",
+                    readCapacityUnits,
+                    writeCapacityUnits,
+                    mapper
+        ), mapper);
     }
 
     public DynamoDbEventSourcedRepository(
@@ -88,9 +152,19 @@ public abstract class DynamoDbEventSourcedRepository<T extends EventSourcedEntit
     }
 
     public DynamoDbEventSourcedRepository(EventStore eventStore, Table table, DbObjectMapper<Item> mapper, Optional<Supplier<UnitOfWork>> uow) {
-        super(eventStore, mapper, uow);
+        this(eventStore, table, mapper, uow, new EventSourcedRepositoryOptions<>());
+    }
+
+    public DynamoDbEventSourcedRepository(
+            EventStore eventStore,
+            Table table,
+            DbObjectMapper<Item> mapper,
+            Optional<Supplier<UnitOfWork>> uow,
+            EventSourcedRepositoryOptions<K, Item> options) {
+        super(eventStore, mapper, uow, options);
         this.table     = new ExtendedTable(table);
         this.tableName = table.getTableName();
+        this.colocated = false;
         this.provisionedThroughput = this.table.exists() ?
             this.table.getProvisionedThroughput() :
             new ProvisionedThroughput(1L, 1L);
@@ -110,13 +184,73 @@ public abstract class DynamoDbEventSourcedRepository<T extends EventSourcedEntit
     }
 
     @Override
-    protected PrimaryKey toDbId(K id) { return new PrimaryKey("id", id); }
+    protected PrimaryKey toDbId(K id) {
+        return colocated ?
+            new PrimaryKey("streamName", streamName(id), "streamVersion", DynamoDbEventStore.RESERVED_VERSION) :
+            new PrimaryKey("id", id);
+    }
+
+    @Override
+    protected Item serialize(T entity) {
+        Item item = super.serialize(entity);
+        return colocated ?
+            item.withString("streamName", streamName(entity.getId())).withLong("streamVersion", DynamoDbEventStore.RESERVED_VERSION) :
+            item;
+    }
+
+    /**
+     * Reads the co-located snapshot along with the newer events by a single query going from the snapshot down to
+     * the events, which are not older than the snapshot.
+     */
+    @Override
+    protected Optional<T> loadLatest(K id, Supplier<Optional<T>> snapshot) {
+        if (!colocated) {
+            return super.loadLatest(id, snapshot);
+        }
+        Iterator<Item> items = table.queryStream(new QuerySpec()
+                .withHashKey("streamName", streamName(id))
+                .withScanIndexForward(false)
+                .withMaxPageSize(LOAD_PAGE_SIZE)
+        ).iterator();
+        if (!items.hasNext()) {
+            return Optional.empty();
+        }
+        Item item = items.next();
+        Optional<T> latest = Optional.empty();
+        if (item.getLong("streamVersion") == DynamoDbEventStore.RESERVED_VERSION) {
+            latest = Optional.of(deserialize(item));
+            item = items.hasNext() ? items.next() : null;
+        }
+        long snapshotVersion = latest.map(e -> e.getUnmutatedVersion()).orElse(0L);
+        LinkedList<Event> tail = new LinkedList<>();
+        for (; item != null && item.getLong("streamVersion") > snapshotVersion; item = items.hasNext() ? items.next() : null) {
+            tail.addFirst((Event) mapper.mapToObject(item));
+        }
+        return rehydrate(latest, Optional.of(tail.iterator()));
+    }
 
     @Override
     protected Optional<Item> doGet(PrimaryKey id) {
         return Optional.ofNullable(table.getItemOutcome(id).getItem());
     }
 
+    @Override
+    protected Map<String, ?> attributes(Item dbObject) {
+        return dbObject.asMap();
+    }
+
+    @Override
+    protected Map<K, T> snapshots(Collection<K> ids) {
+        if (colocated) {
+            // every entity is read along with its snapshot anyway
+            return new HashMap<>();
+        }
+        return table.batchGetItems(ids.stream().map(this::toDbId).collect(Collectors.toList()))
+            .stream()
+            .map(item -> deserialize(item))
+            .collect(Collectors.toMap(e -> e.getId(), e -> e));
+    }
+
     @Override
     protected Item doSave(Item dbObject, Optional<Long> unmutatedVersion) {
         try {
@@ -138,4 +272,60 @@ public abstract class DynamoDbEventSourcedRepository<T extends EventSourcedEntit
     protected boolean doRemove(PrimaryKey id) {
         return table.deleteAndCheck(id);
     }
+
+    @Override
+    protected void doSaveHistory(K id, long version, Item dbObject) {
+        snapshotHistory().putItem(dbObject);
+    }
+
+    @Override
+    protected Optional<Item> doGetHistory(K id, long before) {
+        return snapshotHistory().queryStream(new QuerySpec()
+                .withHashKey("id", id)
+                .withRangeKeyCondition(new RangeKeyCondition("_version").le(before))
+                .withScanIndexForward(false)
+                .withMaxResultSize(1)
+        ).findFirst();
+    }
+
+    @Override
+    protected void doRemoveHistory(K id, long before) {
+        ExtendedTable history = snapshotHistory();
+        history.queryStream(new QuerySpec()
+                .withHashKey("id", id)
+                .withRangeKeyCondition(new RangeKeyCondition("_version").lt(before))
+                .withAttributesToGet("id", "_version"), true
+        ).forEach(item -> history.deleteItem("id", id, "_version", item.getNumber("_version")));
+    }
+
+    /**
+     * Returns the table of the historical snapshots, creating it on the first use.
+     */
+    protected ExtendedTable snapshotHistory() {
+        if (snapshotHistory == null) {
+            synchronized (this) {
+                if (snapshotHistory == null) {
+                    ExtendedTable history = new ExtendedTable(table.getClient(), tableName + "History");
+                    boolean created = history.createIfNotExists(
+                        Arrays.asList(
+                            new AttributeDefinition("id", Number.class.isAssignableFrom(getClassArgument(1)) ? "N" : "S"),
+                            new AttributeDefinition("_version", "N")
+                        ),
+                        Arrays.asList(new KeySchemaElement("id", KeyType.HASH), new KeySchemaElement("_version", KeyType.RANGE)),
+                        provisionedThroughput
+                    );
+                    if (created) {
+                        try {
+                            history.waitForActive();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IllegalStateException("Interrupted while creating the table " + history.getTableName(), e);
+                        }
+                    }
+                    snapshotHistory = history;
+                }
+            }
+        }
+        return snapshotHistory;
+    }
 }
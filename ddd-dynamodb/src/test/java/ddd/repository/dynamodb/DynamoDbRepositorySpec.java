@@ -3,8 +3,13 @@ package ddd.repository.dynamodb;
 import ddd.repository.AbstractHouseRepositorySpec;
 import ddd.repository.UnitOfWork;
 import ddd.repository.example.domain.ImmutableHouse;
+import eventstore.util.dynamodb.CapacityLimiter;
 import eventstore.util.dynamodb.LocalAmazonDynamoDbClient;
 import java.util.*;
+import org.junit.Test;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.assertEquals;
 
 public class DynamoDbRepositorySpec extends AbstractHouseRepositorySpec<ImmutableHouse, DynamoDbRepository<ImmutableHouse, String>> {
     public DynamoDbRepositorySpec() {
@@ -17,4 +22,25 @@ public class DynamoDbRepositorySpec extends AbstractHouseRepositorySpec<Immutabl
                 new ImmutableHouse("100500 Awesome str., Chicago, USA", 100500, "Alexey Balchunas")
         );
     }
+
+    @Test
+    public void streamAll() {
+        Set<String> addresses = new HashSet<>();
+        for (int i = 0; i < 7; ++i) {
+            addresses.add(houseRepository.save(new ImmutableHouse("Street " + i + ", Chicago, USA", i, "Alexey Balchunas")).getAddress());
+        }
+        assertEquals(addresses, houseRepository.streamAll(3).map(ImmutableHouse::getAddress).collect(toSet()));
+    }
+
+    @Test
+    public void capacityLimiter() {
+        CapacityLimiter limiter = new CapacityLimiter(new LocalAmazonDynamoDbClient(9823));
+        DynamoDbRepository<ImmutableHouse, String> limitedRepository = new DynamoDbRepository<ImmutableHouse, String>(
+            limiter.client(),
+            houseRepository.tableName,
+            Optional.empty()
+        ){};
+        CapacityLimiter.withPriority(CapacityLimiter.Priority.BATCH, () -> limitedRepository.save(awesomeHouse));
+        assertEquals(awesomeHouse.getOwner(), limitedRepository.get(awesomeHouse.getAddress()).get().getOwner());
+    }
 }
@@ -0,0 +1,27 @@
+package ddd.repository.eventsourcing.dynamodb;
+
+import ddd.repository.AbstractHouseRepositorySpec;
+import ddd.repository.eventsourcing.example.domain.EventSourcedHouse;
+import eventstore.util.dynamodb.GsonDynamoDbObjectMapper;
+import eventstore.util.dynamodb.LocalAmazonDynamoDbClient;
+
+import java.util.Optional;
+import java.util.UUID;
+
+public class ColocatedDynamoDbEventSourcedRepositorySpec
+    extends AbstractHouseRepositorySpec<EventSourcedHouse, DynamoDbEventSourcedRepository<EventSourcedHouse, String>> {
+    public ColocatedDynamoDbEventSourcedRepositorySpec() {
+        super(
+                new DynamoDbEventSourcedRepository<EventSourcedHouse, String>(
+                    new LocalAmazonDynamoDbClient(9823),
+                    UUID.randomUUID().toString(),
+                    1000,
+                    1000,
+                    new GsonDynamoDbObjectMapper(),
+                    true,
+                    Optional.empty()
+                ){},
+                new EventSourcedHouse("100500 Awesome str., Chicago, USA", 100500, "Alexey Balchunas")
+        );
+    }
+}
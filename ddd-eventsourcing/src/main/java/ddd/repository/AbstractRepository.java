@@ -3,12 +3,27 @@ package ddd.repository;
 import ddd.repository.IdentifiedEntity;
 import ddd.repository.PersistenceOrientedRepository;
 import ddd.repository.eventsourcing.EventSourcedEntity;
+import ddd.repository.exception.BulkOptimisticLockingException;
+import ddd.repository.exception.OptimisticLockingException;
 import eventstore.util.DbObjectMapper;
 import eventstore.util.RuntimeGeneric;
+import eventstore.util.SingleFlight;
 import eventstore.util.collection.Collections;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -19,6 +34,33 @@ public abstract class AbstractRepository<T extends IdentifiedEntity<K>, K, D, DK
     protected Optional<Supplier<UnitOfWork>> unitOfWork = Optional.empty();
     protected DbObjectMapper<D> mapper;
     protected Class<T> entityClass;
+    /**
+     * Optional second-level cache shared by the units of work, see {@link EntityCache}. The event sourced repositories
+     * have their own cache of the aggregates instead.
+     */
+    protected final Optional<EntityCache> entityCache;
+    /**
+     * Whether the entities read into the unit of work are fingerprinted, so that flushing skips the entities, which
+     * were not changed since they were read. The fingerprint keeps a 64-bit hash of every attribute of the stored
+     * form the entity was deserialized from, see {@link #attributes(Object)}, rather than a copy of it, so that the
+     * read entities are not kept twice, while a change is missed only in case of a hash collision. The entity is
+     * compared by the attributes of its serialized form, so the stored attributes unknown to it are ignored, and the
+     * mapper should serialize the nulls, so that the cleared attributes are compared as well.
+     * See {@link #isDirtyChecking()} for the repositories, which ignore it.
+     */
+    protected final boolean dirtyChecking;
+    /**
+     * Whether flushing writes only the changed attributes of the fingerprinted entities, see
+     * {@link #doUpdate(Object, Map, Optional)}. Takes effect only along with {@link #dirtyChecking}.
+     */
+    protected final boolean partialUpdates;
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // set while reading the entities, which must not get into the unit of work, e.g. by the background tasks
+    private final ThreadLocal<Boolean> detached = ThreadLocal.withInitial(() -> false);
+    // concurrent reads of the same entity share a single database request, but every reader deserializes its own copy
+    private final SingleFlight<K, Optional<D>> reads = new SingleFlight<>();
 
     public static final ClassValue<Optional<Field>> versionField = new ClassValue<Optional<Field>>() {
         @Override
@@ -36,9 +78,16 @@ public abstract class AbstractRepository<T extends IdentifiedEntity<K>, K, D, DK
     };
 
     public AbstractRepository(DbObjectMapper<D> mapper, Optional<Supplier<UnitOfWork>> unitOfWork) {
+        this(mapper, unitOfWork, new RepositoryOptions());
+    }
+
+    public AbstractRepository(DbObjectMapper<D> mapper, Optional<Supplier<UnitOfWork>> unitOfWork, RepositoryOptions options) {
         this.mapper = mapper;
         this.entityClass = (Class<T>) getClassArgument(0);
         this.unitOfWork = unitOfWork;
+        this.entityCache    = options.getEntityCache();
+        this.dirtyChecking  = options.isDirtyChecking();
+        this.partialUpdates = options.isPartialUpdates();
     }
 
     public AbstractRepository(DbObjectMapper<D> mapper) {
@@ -51,21 +100,357 @@ public abstract class AbstractRepository<T extends IdentifiedEntity<K>, K, D, DK
 
     @Override
     public Optional<T> get(K id) {
-        return reading(id, () -> doGet(toDbId(id)).map((e) -> deserialize(e)));
+        return reading(id, () -> read(id).map((e) -> deserialize(e)));
+    }
+
+    /**
+     * Reads the database object of the entity from the second-level cache, if any, or from the database.
+     */
+    private Optional<D> read(K id) {
+        if (!entityCache.isPresent()) {
+            return reads.execute(id, () -> doGet(toDbId(id)));
+        }
+        EntityCache cache = entityCache.get();
+        Optional<D> cached = cache.get(getClass(), id);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        return reads.execute(id, () -> {
+            // the ticket is taken by the reading thread, so that the invalidations made since then are respected
+            long ticket = cache.ticket();
+            Optional<D> dbObject = doGet(toDbId(id));
+            dbObject.ifPresent(d -> cache.put(getClass(), id, copy(d), versionOf(d), ticket));
+            return dbObject;
+        });
+    }
+
+    /**
+     * Finds the entities with the given identifiers. The entities registered or removed in the unit of work are not
+     * read, the rest ones are read from the second-level cache, if any, and then with {@link #doGetAll(List)}. Every
+     * entity is returned once, even if its identifier is given many times.
+     */
+    @Override
+    public Collection<T> findAllByIds(Iterable<K> ids) {
+        Set<K> uniqueIds = new LinkedHashSet<>();
+        ids.forEach(uniqueIds::add);
+        List<T> found = new ArrayList<>();
+        Set<K> toRead = new LinkedHashSet<>();
+        for (K id : uniqueIds) {
+            if (currentUnitOfWork().map(uow -> uow.isRemoved(this, id)).orElse(false)) {
+                continue;
+            }
+            Optional<T> cached = currentUnitOfWork().flatMap(uow -> uow.get(this, id));
+            if (cached.isPresent()) {
+                found.add(cached.get());
+            } else {
+                toRead.add(id);
+            }
+        }
+        List<D> dbObjects = new ArrayList<>(toRead.size());
+        entityCache.ifPresent(cache -> toRead.removeIf(id -> {
+            Optional<D> cached = cache.get(getClass(), id);
+            cached.ifPresent(dbObjects::add);
+            return cached.isPresent();
+        }));
+        int cachedCount = dbObjects.size();
+        long ticket = entityCache.map(EntityCache::ticket).orElse(0L);
+        if (!toRead.isEmpty()) {
+            dbObjects.addAll(doGetAll(new ArrayList<>(toRead)));
+        }
+        for (int i = 0; i < dbObjects.size(); ++i) {
+            D dbObject = dbObjects.get(i);
+            Optional<T> entity = reading(() -> Optional.of(deserialize(dbObject)));
+            entity.ifPresent(found::add);
+            if (i >= cachedCount) {
+                // the identifier is taken from the entity, which is deserialized anyway
+                entityCache.ifPresent(cache -> entity.ifPresent(e ->
+                    cache.put(getClass(), e.getId(), copy(dbObject), versionOf(dbObject), ticket)
+                ));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads the entities with the given identifiers. The default implementation reads them one by one, override it,
+     * if the storage supports the bulk reads.
+     * @return the found entities in no particular order
+     */
+    protected Collection<D> doGetAll(List<K> ids) {
+        List<D> found = new ArrayList<>(ids.size());
+        ids.forEach(id -> doGet(toDbId(id)).ifPresent(found::add));
+        return found;
+    }
+
+    /**
+     * Returns the version of the stored entity from the raw attribute, so that the entity is not deserialized.
+     */
+    private Optional<Long> versionOf(D dbObject) {
+        return versionField.get(entityClass)
+            .map(field -> attributes(dbObject).get(field.getName()))
+            .map(version -> ((Number) version).longValue());
+    }
+
+    /**
+     * Returns a deep copy of the read database object, which is kept by the second-level cache, see
+     * {@link #entityCache}, so that the cached object is never shared with the code, which got the read one. The
+     * default implementation maps the object to the entity and back, override it, if the object could be copied
+     * directly.
+     */
+    protected D copy(D dbObject) {
+        return mapper.mapToDbObject(mapper.mapToObject(dbObject));
     }
 
     @Override
     public T save(T entity) {
-        return saving(entity, () -> deserialize(doSave(serialize(entity), version(entity))));
+        return saving(entity, () -> {
+            try {
+                return deserialize(doSave(serialize(entity), version(entity)));
+            } finally {
+                invalidate(entity.getId());
+            }
+        });
     }
 
     @Override
     public boolean remove(K id) {
-        return removing(id, () -> doRemove(toDbId(id)));
+        return removing(id, () -> {
+            try {
+                return doRemove(toDbId(id));
+            } finally {
+                invalidate(id);
+            }
+        });
+    }
+
+    private void invalidate(K id) {
+        // the reads in flight could have started before the write, so the readers after it must not join them
+        reads.invalidate(id);
+        entityCache.ifPresent(cache -> cache.invalidate(getClass(), id));
+    }
+
+    /**
+     * Saves the given entities. Unless there is a unit of work, which just records the changes, the entities are
+     * saved at once by {@link #doSaveAll(List)}, and the entities modified concurrently do not prevent the other ones
+     * from being saved.
+     * @throws BulkOptimisticLockingException if some of the entities were modified concurrently
+     */
+    @Override
+    public void saveAll(Iterable<T> entities) {
+        if (!isFlushing()) {
+            entities.forEach(this::save);
+            return;
+        }
+        List<T> toSave = new ArrayList<>();
+        Map<K, OptimisticLockingException> failures = new LinkedHashMap<>();
+        for (T entity : entities) {
+            Optional<Map<String, Long>> original = isDirtyChecking() ?
+                currentUnitOfWork().flatMap(uow -> uow.fingerprint(this, entity.getId())) :
+                Optional.empty();
+            if (!original.isPresent()) {
+                toSave.add(entity);
+                continue;
+            }
+            D dbObject = serialize(entity);
+            Map<String, Object> changed = new LinkedHashMap<>();
+            attributes(dbObject).forEach((name, value) -> {
+                Long stored = original.get().get(name);
+                if (stored == null || stored != hash(FNV_OFFSET_BASIS, value)) {
+                    changed.put(name, value);
+                }
+            });
+            if (changed.isEmpty()) {
+                continue;
+            }
+            if (!partialUpdates) {
+                toSave.add(entity);
+                continue;
+            }
+            try {
+                doUpdate(dbObject, changed, version(entity));
+            } catch (OptimisticLockingException e) {
+                failures.put(entity.getId(), e);
+            } finally {
+                invalidate(entity.getId());
+            }
+        }
+        try {
+            failures.putAll(doSaveAll(toSave));
+        } finally {
+            toSave.forEach(entity -> invalidate(entity.getId()));
+        }
+        if (!failures.isEmpty()) {
+            throw new BulkOptimisticLockingException(failures);
+        }
+    }
+
+    @Override
+    public void removeAll(Iterable<K> ids) {
+        if (!isFlushing()) {
+            ids.forEach(this::remove);
+            return;
+        }
+        List<K> toRemove = new ArrayList<>();
+        ids.forEach(toRemove::add);
+        try {
+            doRemoveAll(toRemove);
+        } finally {
+            toRemove.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * Saves the given entities at once. The default implementation saves them one by one, override it, if the
+     * storage supports the bulk writes.
+     * @param entities entities are to be saved
+     * @return the failures by the identifiers of the entities, which were not saved because of the concurrent
+     *         modifications
+     */
+    protected Map<K, OptimisticLockingException> doSaveAll(List<T> entities) {
+        Map<K, OptimisticLockingException> failures = new LinkedHashMap<>();
+        for (T entity : entities) {
+            try {
+                save(entity);
+            } catch (OptimisticLockingException e) {
+                failures.put(entity.getId(), e);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Removes the given entities at once. The default implementation removes them one by one, override it, if the
+     * storage supports the bulk writes.
+     */
+    protected void doRemoveAll(List<K> ids) {
+        ids.forEach(this::remove);
     }
 
     protected abstract D doSave(D dbObject, Optional<Long> currentVersion);
 
+    /**
+     * Writes only the given attributes of the stored entity, see {@link #partialUpdates}. The default implementation
+     * writes the whole entity, override it, if the storage supports the partial updates.
+     * @param dbObject the whole serialized entity
+     * @param changed the attributes, which were changed or added since the entity was read
+     * @param currentVersion version of the entity, if it is versioned
+     */
+    protected void doUpdate(D dbObject, Map<String, Object> changed, Optional<Long> currentVersion) {
+        doSave(dbObject, currentVersion);
+    }
+
+    /**
+     * Returns the top-level attributes of the serialized entity, which are used for the dirty checking and for reading
+     * the version of the stored entity.
+     */
+    protected abstract Map<String, ?> attributes(D dbObject);
+
+    /**
+     * Whether the entities are fingerprinted, see {@link #dirtyChecking}.
+     */
+    protected boolean isDirtyChecking() {
+        return dirtyChecking;
+    }
+
+    /**
+     * Returns the hashes of the attributes of the stored entity by their names.
+     */
+    private Map<String, Long> fingerprint(D dbObject) {
+        Map<String, Long> fingerprint = new HashMap<>();
+        attributes(dbObject).forEach((name, value) -> fingerprint.put(name, hash(FNV_OFFSET_BASIS, value)));
+        return fingerprint;
+    }
+
+    /**
+     * Feeds the given attribute value into the 64-bit FNV-1a hash. The nested maps, collections and arrays are walked,
+     * and every value is prefixed with its type and length, so that the different values do not give the same input.
+     * The numbers are compared by their values, since the stored ones could be read as the other types than the
+     * serialized ones, e.g. an integer as a long.
+     */
+    private static long hash(long hash, Object value) {
+        if (value == null) {
+            return hash(hash, 'n');
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            hash = hash(hash(hash, 'm'), map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                hash = hash(hash(hash, entry.getKey()), entry.getValue());
+            }
+            return hash;
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            hash = hash(hash(hash, 'c'), collection.size());
+            for (Object element : collection) {
+                hash = hash(hash, element);
+            }
+            return hash;
+        } else if (value instanceof byte[]) {
+            return hash(hash(hash(hash, 'b'), ((byte[]) value).length), ByteBuffer.wrap((byte[]) value));
+        } else if (value instanceof ByteBuffer) {
+            return hash(hash(hash(hash, 'b'), ((ByteBuffer) value).remaining()), ((ByteBuffer) value).duplicate());
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            hash = hash(hash(hash, 'a'), length);
+            for (int i = 0; i < length; ++i) {
+                hash = hash(hash, Array.get(value, i));
+            }
+            return hash;
+        } else if (value instanceof Number) {
+            Optional<Long> integral = integral((Number) value);
+            if (integral.isPresent()) {
+                return hash(hash(hash, 'i'), integral.get().longValue());
+            }
+            return hash(hash(hash, 'd'), value instanceof BigDecimal ?
+                ((BigDecimal) value).stripTrailingZeros().toString() :
+                String.valueOf(((Number) value).doubleValue()));
+        } else if (value instanceof Date) {
+            return hash(hash(hash, 't'), ((Date) value).getTime());
+        }
+        return hash(hash(hash(hash, 'v'), value.getClass().getName()), value.toString());
+    }
+
+    private static Optional<Long> integral(Number number) {
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            return Optional.of(number.longValue());
+        }
+        if (number instanceof BigDecimal || number instanceof BigInteger) {
+            BigDecimal decimal = number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal((BigInteger) number);
+            try {
+                return Optional.of(decimal.longValueExact());
+            } catch (ArithmeticException e) {
+                return Optional.empty();
+            }
+        }
+        double d = number.doubleValue();
+        return d == Math.rint(d) && Math.abs(d) < 0x1p63 ? Optional.of((long) d) : Optional.empty();
+    }
+
+    private static long hash(long hash, String text) {
+        hash = hash(hash, text.length());
+        for (int i = 0; i < text.length(); ++i) {
+            hash = hash(hash, text.charAt(i));
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            hash = (hash ^ (bytes.get() & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, char c) {
+        return ((hash ^ (c & 0xff)) * FNV_PRIME ^ (c >>> 8)) * FNV_PRIME;
+    }
+
+    private static long hash(long hash, long n) {
+        for (int i = 0; i < 8; ++i, n >>>= 8) {
+            hash = (hash ^ (n & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
     protected abstract boolean doRemove(DK id);
 
     protected abstract Optional<D> doGet(DK id);
@@ -75,8 +460,12 @@ public abstract class AbstractRepository<T extends IdentifiedEntity<K>, K, D, DK
     protected T deserialize(D dbObject) {
         T entity = (T) mapper.mapToObject(dbObject);
         // put in the cache everything we deserialize
-        if (!isFlushing()) {
+        if (!isFlushing() && !detached.get()) {
             register(entity);
+            if (isDirtyChecking()) {
+                // the fingerprint is taken from the stored form at hand, rather than from the entity serialized again
+                withUow(uow -> uow.fingerprinted(this, entity.getId(), fingerprint(dbObject)));
+            }
         }
         return entity;
     }
@@ -85,7 +474,7 @@ public abstract class AbstractRepository<T extends IdentifiedEntity<K>, K, D, DK
         return mapper.mapToDbObject(entity);
     }
 
-    private Optional<Long> version(T entity) {
+    protected Optional<Long> version(T entity) {
         return versionField.get(entityClass).map((field) -> {
             try {
                 return (Long) field.get(entity);
@@ -100,7 +489,7 @@ public abstract class AbstractRepository<T extends IdentifiedEntity<K>, K, D, DK
     }
 
     protected boolean isFlushing() {
-        return unitOfWork.map(uow -> uow.get().isFlushing()).orElse(true);
+        return currentUnitOfWork().map(uow -> uow.isFlushing()).orElse(true);
     }
 
     protected <V> Optional<V> ifFlushing(Callable<V> c) {
@@ -116,11 +505,24 @@ public abstract class AbstractRepository<T extends IdentifiedEntity<K>, K, D, DK
         return Optional.empty();
     }
 
+    /**
+     * Reads the entities bypassing the unit of work, i.e. the read entities are not registered in it.
+     */
+    protected <V> V detached(Supplier<V> reader) {
+        boolean wasDetached = detached.get();
+        detached.set(true);
+        try {
+            return reader.get();
+        } finally {
+            detached.set(wasDetached);
+        }
+    }
+
     protected Optional<T> reading(K id, Callable<Optional<T>> c) {
-        if (unitOfWork.map(uow -> uow.get().isRemoved(this, id)).orElse(false)) {
+        if (currentUnitOfWork().map(uow -> uow.isRemoved(this, id)).orElse(false)) {
             return Optional.empty();
         }
-        Optional<T> cached = unitOfWork.flatMap(uow -> uow.get().get(this, id));
+        Optional<T> cached = currentUnitOfWork().flatMap(uow -> uow.get(this, id));
         if (cached.isPresent()) {
             return cached;
         } else {
@@ -168,7 +570,19 @@ public abstract class AbstractRepository<T extends IdentifiedEntity<K>, K, D, DK
     }
 
     protected void withUow(Consumer<UnitOfWork> c) {
-        unitOfWork.ifPresent(uow -> c.accept(uow.get()));
+        currentUnitOfWork().ifPresent(c);
+    }
+
+    /**
+     * Returns the unit of work of the current thread. The threads flushing the unit of work concurrently get the
+     * flushed one, whatever the supplier returns on them, see {@link UnitOfWork#flushingOnCurrentThread()}.
+     */
+    protected Optional<UnitOfWork> currentUnitOfWork() {
+        if (!unitOfWork.isPresent()) {
+            return Optional.empty();
+        }
+        Optional<UnitOfWork> flushing = UnitOfWork.flushingOnCurrentThread();
+        return flushing.isPresent() ? flushing : unitOfWork.map(Supplier::get);
     }
 
     /*
@@ -0,0 +1,114 @@
+package ddd.repository;
+
+import eventstore.util.collection.LruCache;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded second-level cache of the stored entities, which could be shared by all the repositories and the units of
+ * work of the process. The entries are keyed by the class of the repository and the identifier of the entity. The
+ * database objects are cached rather than the entities, so that every read gets its own instance of the entity. The
+ * repositories cache the private copies of the read database objects, which are only deserialized afterwards.
+ * The repositories invalidate the entries on every write, and an entry read before the last invalidation of the
+ * entity is never cached, so that a stale entity could be returned only within the optional time-to-live by the
+ * repositories of the other processes. Even then, the entities with a version field fail to be saved, so that the
+ * stale data is never written back.
+ * The tickets of the entries evicted by the size limit (including the invalidated ones) are kept as a single
+ * high-water mark, so that a read started before an evicted invalidation is not cached either.
+ */
+public class EntityCache {
+
+    private final LruCache<Map.Entry<Class<?>, Object>, Entry> entries;
+    private final long timeToLiveMillis;
+    private final AtomicLong ticks = new AtomicLong();
+    // the newest ticket of the evicted entries
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * Creates the cache without the time-to-live.
+     * @param maxSize maximum amount of the cached entities
+     */
+    public EntityCache(int maxSize) {
+        this(maxSize, 0);
+    }
+
+    /**
+     * Creates the cache.
+     * @param maxSize maximum amount of the cached entities
+     * @param timeToLiveMillis for how long an entity is cached, or 0 if there is no limit
+     */
+    public EntityCache(int maxSize, long timeToLiveMillis) {
+        this.entries          = new LruCache<>(maxSize, (key, entry) -> evicted.accumulateAndGet(entry.ticket, Math::max));
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * Returns the ticket, which should be taken before reading an entity from the database, and then passed to
+     * {@link #put(Class, Object, Object, Optional, long)}.
+     */
+    long ticket() {
+        return ticks.incrementAndGet();
+    }
+
+    @SuppressWarnings("unchecked")
+    <D> Optional<D> get(Class<?> repository, Object id) {
+        long now = System.currentTimeMillis();
+        return entries.get(key(repository, id))
+            .filter(e -> e.dbObject != null && (timeToLiveMillis <= 0 || now - e.cachedOn < timeToLiveMillis))
+            .map(e -> (D) e.dbObject);
+    }
+
+    /**
+     * Caches the read database object, unless the entity was invalidated or cached in a newer version after the
+     * ticket was taken. If there is no entry of the entity, it could have been evicted, so the object is cached only if
+     * the ticket is newer than any evicted entry.
+     */
+    void put(Class<?> repository, Object id, Object dbObject, Optional<Long> version, long ticket) {
+        long now = System.currentTimeMillis();
+        entries.compute(key(repository, id), (key, cached) ->
+            cached == null && evicted.get() < ticket ||
+            cached != null && cached.ticket < ticket && !isNewer(cached, version) ?
+                new Entry(dbObject, version, ticket, now) :
+                cached
+        );
+    }
+
+    void invalidate(Class<?> repository, Object id) {
+        entries.put(key(repository, id), new Entry(null, Optional.empty(), ticket(), 0));
+    }
+
+    public void clear() {
+        // the cleared entries could be the invalidated ones
+        evicted.accumulateAndGet(ticks.get(), Math::max);
+        entries.clear();
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    private static boolean isNewer(Entry cached, Optional<Long> version) {
+        return cached.version.isPresent() && version.isPresent() && cached.version.get() > version.get();
+    }
+
+    private static Map.Entry<Class<?>, Object> key(Class<?> repository, Object id) {
+        return new SimpleImmutableEntry<>(repository, id);
+    }
+
+    private static final class Entry {
+        // null for the invalidated entities
+        final Object dbObject;
+        final Optional<Long> version;
+        final long ticket;
+        final long cachedOn;
+
+        Entry(Object dbObject, Optional<Long> version, long ticket, long cachedOn) {
+            this.dbObject = dbObject;
+            this.version  = version;
+            this.ticket   = ticket;
+            this.cachedOn = cachedOn;
+        }
+    }
+}
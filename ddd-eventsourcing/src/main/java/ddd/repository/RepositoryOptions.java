@@ -0,0 +1,64 @@
+package ddd.repository;
+
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+/**
+ * Optional settings of a repository, which are given to its constructor and fixed afterwards. The repositories ignore
+ * the settings they do not support, e.g. the event sourced repositories have their own options.
+ */
+public class RepositoryOptions {
+
+    private Optional<EntityCache> entityCache = Optional.empty();
+    private boolean dirtyChecking = false;
+    private boolean partialUpdates = false;
+    private Optional<Executor> executor = Optional.empty();
+
+    /**
+     * Sets the second-level cache shared by the units of work, see {@link AbstractRepository#entityCache}.
+     * @return these options
+     */
+    public RepositoryOptions withEntityCache(EntityCache entityCache) {
+        this.entityCache = Optional.of(entityCache);
+        return this;
+    }
+
+    /**
+     * Enables the dirty checking of the entities read into the unit of work, see
+     * {@link AbstractRepository#dirtyChecking}.
+     * @param partialUpdates whether only the changed attributes are written, see
+     *                       {@link AbstractRepository#partialUpdates}
+     * @return these options
+     */
+    public RepositoryOptions withDirtyChecking(boolean partialUpdates) {
+        this.dirtyChecking  = true;
+        this.partialUpdates = partialUpdates;
+        return this;
+    }
+
+    /**
+     * Sets the executor of the blocking requests made concurrently by the repository, e.g. the batch reads of many
+     * entities. The repositories have their own pools by default.
+     * @return these options
+     */
+    public RepositoryOptions withExecutor(Executor executor) {
+        this.executor = Optional.of(executor);
+        return this;
+    }
+
+    public Optional<EntityCache> getEntityCache() {
+        return entityCache;
+    }
+
+    public boolean isDirtyChecking() {
+        return dirtyChecking;
+    }
+
+    public boolean isPartialUpdates() {
+        return partialUpdates;
+    }
+
+    public Optional<Executor> getExecutor() {
+        return executor;
+    }
+}
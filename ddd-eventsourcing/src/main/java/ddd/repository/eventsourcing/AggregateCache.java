@@ -0,0 +1,92 @@
+package ddd.repository.eventsourcing;
+
+import eventstore.util.collection.LruCache;
+import java.util.Optional;
+
+/**
+ * Bounded cache of committed aggregates, which could be shared by all the threads of the process. Every cached
+ * aggregate is kept along with its version, so that the repository needs to read only the events appended after the
+ * cached version. Optionally, the cached aggregates could be trusted without checking the event store at all within
+ * the given staleness bound.
+ * The aggregates are cached in their serialized form, i.e. just like their snapshots, and every reader deserializes
+ * its own instance, so that the <b>when</b> methods mutating "this" (including its collections and nested objects)
+ * could not change the cached one.
+ * @param K type of the aggregates' identifiers.
+ * @param D type of the serialized aggregates.
+ */
+public class AggregateCache<K, D> {
+
+    private final LruCache<K, Cached> aggregates;
+    private final long maxStalenessMillis;
+
+    /**
+     * Creates the cache, which always checks the event store for the new events.
+     * @param maxSize maximum amount of the cached aggregates
+     */
+    public AggregateCache(int maxSize) {
+        this(maxSize, 0);
+    }
+
+    /**
+     * Creates the cache.
+     * @param maxSize maximum amount of the cached aggregates
+     * @param maxStalenessMillis for how long a cached aggregate is returned as is, without reading the new events
+     */
+    public AggregateCache(int maxSize, long maxStalenessMillis) {
+        this.aggregates         = new LruCache<>(maxSize);
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    /**
+     * Returns an {@link Optional} describing the cached aggregate, which could be used for getting the given version,
+     * i.e. its version is not greater than the given one.
+     * @param id identifier of the aggregate
+     * @param version required version of the aggregate, or -1 if the latest one is required
+     */
+    Optional<Cached> get(K id, long version) {
+        return aggregates.get(id).filter(c -> version < 0 || c.version <= version);
+    }
+
+    /**
+     * Puts the serialized committed aggregate into the cache, unless there is already a newer one.
+     * @param id identifier of the aggregate
+     * @param version committed version of the aggregate
+     * @param serialized serialized aggregate, which must not be changed afterwards
+     */
+    void put(K id, long version, D serialized) {
+        long now = System.currentTimeMillis();
+        aggregates.compute(id, (key, cached) ->
+            cached == null || cached.version <= version ?
+                new Cached(serialized, version, now) :
+                cached
+        );
+    }
+
+    void invalidate(K id) {
+        aggregates.remove(id);
+    }
+
+    public void clear() {
+        aggregates.clear();
+    }
+
+    public long size() {
+        return aggregates.size();
+    }
+
+    final class Cached {
+        final D serialized;
+        final long version;
+        final long cachedOn;
+
+        Cached(D serialized, long version, long cachedOn) {
+            this.serialized = serialized;
+            this.version    = version;
+            this.cachedOn   = cachedOn;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() - cachedOn < maxStalenessMillis;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package ddd.repository.eventsourcing;
+
+import ddd.repository.IdentifiedEntity;
+import ddd.repository.exception.OptimisticLockingException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Executor of the commands changing the aggregates of an {@link EventSourcedRepository}, so that there is a single
+ * writer per aggregate within the process. The aggregates are hashed by their identifiers to the serial lanes: the
+ * commands of a lane are executed one by one in the order of submission, while the lanes are executed in parallel.
+ * Every lane keeps the last committed instances of its aggregates, and all the commands of the same aggregate
+ * waiting in the lane are applied together and saved with a single append. If the kept aggregate turns out to be
+ * stale, i.e. saving it conflicts with the changes made elsewhere, the aggregate is reloaded and the commands are
+ * applied again once, so that the commands could be executed more than once.
+ * Note, that the repository should not use a unit of work, since the changes are saved by the lanes' threads.
+ * @param T type of the aggregates.
+ * @param K type of the aggregates' identifiers.
+ */
+public class AggregateCommandExecutor<T extends EventSourcedEntity<T> & IdentifiedEntity<K>, K> {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    public static final int DEFAULT_MAX_CACHED_PER_LANE = 128;
+
+    private final EventSourcedRepository<T, K, ?, ?> repository;
+    private final Executor executor;
+    private final int maxBatchSize;
+    private final int maxCachedPerLane;
+    private final Lane[] lanes;
+
+    /**
+     * Creates the executor with the default amount of the lanes.
+     * @param repository repository of the aggregates
+     * @param executor executor running the lanes, which block while loading and saving the aggregates, so it should
+     *                 be dedicated to the lanes, and have as many threads as there are lanes
+     */
+    public AggregateCommandExecutor(EventSourcedRepository<T, K, ?, ?> repository, Executor executor) {
+        this(
+            repository,
+            executor,
+            Runtime.getRuntime().availableProcessors() * 4,
+            DEFAULT_MAX_BATCH_SIZE,
+            DEFAULT_MAX_CACHED_PER_LANE
+        );
+    }
+
+    /**
+     * Creates the executor.
+     * @param repository repository of the aggregates
+     * @param executor executor running the lanes, which block while loading and saving the aggregates, so it should
+     *                 be dedicated to the lanes, and have as many threads as there are lanes
+     * @param lanesAmount amount of the lanes, i.e. maximum amount of the aggregates being changed at the same time
+     * @param maxBatchSize maximum amount of the commands taken from a lane at once
+     * @param maxCachedPerLane maximum amount of the committed aggregates kept by a lane
+     */
+    @SuppressWarnings("unchecked")
+    public AggregateCommandExecutor(
+            EventSourcedRepository<T, K, ?, ?> repository,
+            Executor executor,
+            int lanesAmount,
+            int maxBatchSize,
+            int maxCachedPerLane) {
+        if (lanesAmount <= 0 || maxBatchSize <= 0 || maxCachedPerLane < 0) {
+            throw new IllegalArgumentException(String.format(
+                        "Invalid lanes amount %s, batch size %s or cache size %s", lanesAmount, maxBatchSize, maxCachedPerLane));
+        }
+        this.repository       = repository;
+        this.executor         = executor;
+        this.maxBatchSize     = maxBatchSize;
+        this.maxCachedPerLane = maxCachedPerLane;
+        this.lanes            = (Lane[]) new AggregateCommandExecutor.Lane[lanesAmount];
+        for (int i = 0; i < lanesAmount; ++i) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * Submits the command changing the given aggregate. The command gets the current aggregate, or empty, if there is
+     * no such aggregate yet, and returns the changed one, e.g. with new events applied. The returned future is
+     * completed with the saved aggregate, once the changes are saved along with the other changes of the same batch,
+     * or exceptionally, if the command or the saving fails.
+     * @param id identifier of the aggregate is to be changed
+     * @param command function applying the changes
+     * @return future of the saved aggregate
+     */
+    public CompletableFuture<T> submit(K id, Function<Optional<T>, T> command) {
+        Command c = new Command(id, command);
+        lane(id).enqueue(c);
+        return c.result;
+    }
+
+    private Lane lane(K id) {
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        return lanes[(h & 0x7fffffff) % lanes.length];
+    }
+
+    private final class Command {
+        final K id;
+        final Function<Optional<T>, T> fn;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Command(K id, Function<Optional<T>, T> fn) {
+            this.id = id;
+            this.fn = fn;
+        }
+    }
+
+    private final class Lane implements Runnable {
+        private final Queue<Command> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        // accessed only by the thread running the lane
+        private final Map<K, T> aggregates = new LinkedHashMap<K, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, T> eldest) {
+                return size() > maxCachedPerLane;
+            }
+        };
+
+        void enqueue(Command command) {
+            mailbox.add(command);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Map<K, List<Command>> batch = new LinkedHashMap<>();
+                Command command;
+                for (int i = 0; i < maxBatchSize && (command = mailbox.poll()) != null; ++i) {
+                    batch.computeIfAbsent(command.id, (id) -> new ArrayList<>()).add(command);
+                }
+                batch.forEach(this::execute);
+            } finally {
+                scheduled.set(false);
+                // the commands might have been added after the last poll
+                if (!mailbox.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private void execute(K id, List<Command> commands) {
+            List<Command> pending = commands;
+            boolean reloaded = false;
+            while (!pending.isEmpty()) {
+                Optional<T> aggregate;
+                try {
+                    aggregate = Optional.ofNullable(aggregates.get(id));
+                    if (!aggregate.isPresent()) {
+                        aggregate = repository.get(id);
+                    }
+                } catch (RuntimeException|Error e) {
+                    pending.forEach(c -> c.result.completeExceptionally(e));
+                    return;
+                }
+                List<Command> applied = new ArrayList<>(pending.size());
+                Command failed = null;
+                for (Command command : pending) {
+                    try {
+                        T changed = command.fn.apply(aggregate);
+                        if (changed == null) {
+                            throw new NullPointerException("The command returned no aggregate " + id);
+                        }
+                        aggregate = Optional.of(changed);
+                        applied.add(command);
+                    } catch (RuntimeException|Error e) {
+                        command.result.completeExceptionally(e);
+                        failed = command;
+                        break;
+                    }
+                }
+                if (failed != null) {
+                    // the failed command might have changed the aggregate in place, so the rest of the commands are
+                    // applied again on the reloaded one
+                    aggregates.remove(id);
+                    Command skipped = failed;
+                    pending = pending.stream().filter(c -> c != skipped).collect(toList());
+                    continue;
+                }
+                try {
+                    T saved = repository.save(aggregate.get());
+                    if (maxCachedPerLane > 0) {
+                        // the saved aggregate is returned to the callers, so the lane keeps its own deep copy
+                        aggregates.put(id, repository.privateCopy(saved));
+                    }
+                    applied.forEach(c -> c.result.complete(saved));
+                    return;
+                } catch (OptimisticLockingException e) {
+                    aggregates.remove(id);
+                    if (reloaded) {
+                        applied.forEach(c -> c.result.completeExceptionally(e));
+                        return;
+                    }
+                    // the kept aggregate was changed elsewhere, so the commands are applied on the reloaded one
+                    reloaded = true;
+                } catch (RuntimeException|Error e) {
+                    aggregates.remove(id);
+                    applied.forEach(c -> c.result.completeExceptionally(e));
+                    return;
+                }
+            }
+        }
+    }
+}
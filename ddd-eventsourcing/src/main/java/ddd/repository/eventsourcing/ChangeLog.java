@@ -0,0 +1,48 @@
+package ddd.repository.eventsourcing;
+
+import eventstore.Event;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Persistent list of the unsaved changes of an entity. Appending a change does not copy the list, but creates a new one
+ * sharing all the previous changes, so that it takes constant time, while every entity still sees its own immutable
+ * list of changes.
+ */
+final class ChangeLog {
+
+    static final ChangeLog EMPTY = new ChangeLog(null, null, 0);
+
+    private final ChangeLog previous;
+    private final Event last;
+    private final int size;
+    // materialized lazily, since most of the logs are never read
+    private volatile List<Event> list;
+
+    private ChangeLog(ChangeLog previous, Event last, int size) {
+        this.previous = previous;
+        this.last     = last;
+        this.size     = size;
+    }
+
+    ChangeLog append(Event event) {
+        return new ChangeLog(this, event, size + 1);
+    }
+
+    int size() { return size; }
+
+    boolean isEmpty() { return size == 0; }
+
+    List<Event> toList() {
+        List<Event> result = list;
+        if (result == null) {
+            Event[] events = new Event[size];
+            for (ChangeLog log = this; log.size > 0; log = log.previous) {
+                events[log.size - 1] = log.last;
+            }
+            list = result = Collections.unmodifiableList(Arrays.asList(events));
+        }
+        return result;
+    }
+}
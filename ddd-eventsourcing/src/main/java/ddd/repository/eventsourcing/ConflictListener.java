@@ -0,0 +1,33 @@
+package ddd.repository.eventsourcing;
+
+import ddd.repository.exception.OptimisticLockingException;
+
+/**
+ * Listener of the concurrent modifications an {@link EventSourcedRepository} runs into while saving the entities, e.g.
+ * for exporting them to the metrics of the application. It is invoked by the saving threads, so it must be
+ * thread-safe and fast. See {@link ConflictStatistics} for the counters kept by the repository itself.
+ * @param K type of the identifiers of the entities
+ */
+public interface ConflictListener<K> {
+
+    /**
+     * Invoked once the changes of the entity are appended.
+     */
+    default void committed(K id) {}
+
+    /**
+     * Invoked every time the changes of the entity are rejected because of a concurrent modification.
+     */
+    default void conflicted(K id) {}
+
+    /**
+     * Invoked once the conflicting changes of the entity are rebased onto the given amount of the concurrently
+     * appended events.
+     */
+    default void rebased(K id, long events) {}
+
+    /**
+     * Invoked when the conflict could not be resolved, right before the given exception is thrown to the caller.
+     */
+    default void failed(K id, OptimisticLockingException e) {}
+}
@@ -0,0 +1,57 @@
+package ddd.repository.eventsourcing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the concurrent modifications an {@link EventSourcedRepository} ran into while saving the entities.
+ * All the counters are cumulative since the repository was created.
+ */
+public class ConflictStatistics {
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong rebasedEvents = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    void committed() { commits.incrementAndGet(); }
+
+    void conflicted() { conflicts.incrementAndGet(); }
+
+    void rebased(long events) { rebasedEvents.addAndGet(events); }
+
+    void failed() { failures.incrementAndGet(); }
+
+    /**
+     * @return amount of the successfully appended changes
+     */
+    public long getCommits() { return commits.get(); }
+
+    /**
+     * @return amount of the appends rejected because of a concurrent modification
+     */
+    public long getConflicts() { return conflicts.get(); }
+
+    /**
+     * @return amount of the concurrently appended events read while rebasing the conflicting changes
+     */
+    public long getRebasedEvents() { return rebasedEvents.get(); }
+
+    /**
+     * @return amount of the saves failed with {@link ddd.repository.exception.OptimisticLockingException}
+     */
+    public long getFailures() { return failures.get(); }
+
+    /**
+     * @return share of the appends rejected because of a concurrent modification
+     */
+    public double getConflictRate() {
+        long conflicts = getConflicts();
+        long attempts  = conflicts + getCommits();
+        return attempts == 0 ? 0.0 : (double) conflicts / attempts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConflictStatistics(commits = %s, conflicts = %s, rebasedEvents = %s, failures = %s)",
+                getCommits(), getConflicts(), getRebasedEvents(), getFailures());
+    }
+}
@@ -0,0 +1,161 @@
+package ddd.repository.eventsourcing;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * Handler of a specific event type: either a <b>when</b> method, or a constructor taking the event. The handler is
+ * spun once per class by {@link LambdaMetafactory}, i.e. it is an instance of a generated class invoking the method
+ * directly, so that dispatching an event is a plain interface call, which the JIT inlines like any other, rather than
+ * a reflective call or an invocation of a non-constant {@link MethodHandle}.
+ */
+final class EventHandler {
+
+    /**
+     * Dispatcher of the 1-parameter <b>when</b> methods returning the changed entity.
+     */
+    @FunctionalInterface
+    public interface When {
+        Object when(Object target, Object event);
+    }
+
+    /**
+     * Dispatcher of the 1-parameter <b>when</b> methods changing the entity in place.
+     */
+    @FunctionalInterface
+    public interface WhenInPlace {
+        void when(Object target, Object event);
+    }
+
+    /**
+     * Dispatcher of the 2-parameter <b>when</b> methods changing the cloned entity, the returned value is ignored.
+     */
+    @FunctionalInterface
+    public interface WhenCloned {
+        void when(Object target, Object event, Object cloned);
+    }
+
+    /**
+     * Dispatcher of the constructors taking the initial event.
+     */
+    @FunctionalInterface
+    public interface Initializer {
+        Object newInstance(Object event);
+    }
+
+    private final When when;
+    private final WhenCloned whenCloned;
+    private final Initializer initializer;
+
+    private EventHandler(When when, WhenCloned whenCloned, Initializer initializer) {
+        this.when        = when;
+        this.whenCloned  = whenCloned;
+        this.initializer = initializer;
+    }
+
+    /**
+     * Compiles the given <b>when</b> method taking either the event, or the event and the cloned entity.
+     */
+    static EventHandler of(Method when) {
+        MethodHandles.Lookup lookup = privateLookupIn(when.getDeclaringClass());
+        try {
+            MethodHandle handle = lookup.unreflect(when);
+            if (when.getParameterTypes().length == 2) {
+                return new EventHandler(null, spin(lookup, WhenCloned.class, handle), null);
+            } else if (when.getReturnType() == void.class) {
+                WhenInPlace inPlace = spin(lookup, WhenInPlace.class, handle);
+                return new EventHandler((target, event) -> { inPlace.when(target, event); return target; }, null, null);
+            } else {
+                return new EventHandler(spin(lookup, When.class, handle), null, null);
+            }
+        } catch (IllegalAccessException e) {
+            throw new AssertionError("This shouldn't happen", e);
+        }
+    }
+
+    /**
+     * Compiles the given constructor taking the initial event.
+     */
+    static EventHandler of(Constructor constructor) {
+        MethodHandles.Lookup lookup = privateLookupIn(constructor.getDeclaringClass());
+        try {
+            return new EventHandler(null, null, spin(lookup, Initializer.class, lookup.unreflectConstructor(constructor)));
+        } catch (IllegalAccessException e) {
+            throw new AssertionError("This shouldn't happen", e);
+        }
+    }
+
+    /**
+     * Generates the implementation of the given functional interface invoking the given method, which is called with
+     * the arguments cast to its own parameter types.
+     */
+    private static <F> F spin(MethodHandles.Lookup lookup, Class<F> functionalInterface, MethodHandle handle) {
+        Method sam = functionalInterface.getMethods()[0];
+        MethodType samType = MethodType.methodType(sam.getReturnType(), sam.getParameterTypes());
+        try {
+            CallSite site = LambdaMetafactory.metafactory(
+                    lookup,
+                    sam.getName(),
+                    MethodType.methodType(functionalInterface),
+                    samType,
+                    handle,
+                    handle.type().changeReturnType(samType.returnType() == void.class ? void.class : handle.type().returnType())
+            );
+            return functionalInterface.cast(site.getTarget().invoke());
+        } catch (Throwable e) {
+            throw new EventSourcingException("Failed to compile the event handler " + handle, e);
+        }
+    }
+
+    /**
+     * Returns the lookup with the private access to the given class, which the lambdas invoking its methods are
+     * defined in, since the <b>when</b> methods are usually not public. There is no public way to get it in Java 8,
+     * so the full-power lookup is created there, while the later versions have
+     * <code>MethodHandles.privateLookupIn</code>.
+     */
+    private static MethodHandles.Lookup privateLookupIn(Class<?> type) {
+        try {
+            try {
+                Method privateLookupIn = MethodHandles.class.getMethod(
+                        "privateLookupIn",
+                        Class.class,
+                        MethodHandles.Lookup.class
+                );
+                return (MethodHandles.Lookup) privateLookupIn.invoke(null, type, MethodHandles.lookup());
+            } catch (NoSuchMethodException e) {
+                Constructor<MethodHandles.Lookup> constructor =
+                    MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+                constructor.setAccessible(true);
+                return constructor.newInstance(
+                        type,
+                        MethodHandles.Lookup.PUBLIC | MethodHandles.Lookup.PRIVATE |
+                            MethodHandles.Lookup.PROTECTED | MethodHandles.Lookup.PACKAGE
+                );
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new EventSourcingException("Failed to get the private access to " + type, e);
+        }
+    }
+
+    /**
+     * @return true if the handler takes a cloned entity, which should be changed, rather than returning a new one
+     */
+    boolean takesClone() { return whenCloned != null; }
+
+    Object handle(Object target, Object event) {
+        return when.when(target, event);
+    }
+
+    void handle(Object target, Object event, Object cloned) {
+        whenCloned.when(target, event, cloned);
+    }
+
+    Object newInstance(Object event) {
+        return initializer.newInstance(event);
+    }
+}
@@ -3,11 +3,8 @@ package ddd.repository.eventsourcing;
 import eventstore.Event;
 import eventstore.PayloadEvent;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -54,14 +51,15 @@ import static java.util.stream.Collectors.collectingAndThen;
 @SuppressWarnings("unchecked")
 public abstract class EventSourcedEntity<T extends EventSourcedEntity<T>> implements Cloneable {
     public static final String MUTATE_METHOD_NAME = "when";
-    private List<Event> _mutatingChanges = new ArrayList<>();
+    // not a part of the snapshots, the saved entity never has unsaved changes
+    private transient ChangeLog _mutatingChanges = ChangeLog.EMPTY;
     private long _version = 1;
     private long _updateDate = System.currentTimeMillis();
     private long _committedVersion = 0;
-    static final ClassValue<Map<Class, Method>> mutatingMethods =
-        new ClassValue<Map<Class, Method>>() {
+    static final ClassValue<Map<Class, EventHandler>> mutatingMethods =
+        new ClassValue<Map<Class, EventHandler>>() {
         @Override
-        protected Map<Class, Method> computeValue(Class<?> type) {
+        protected Map<Class, EventHandler> computeValue(Class<?> type) {
             Stream<Method> whenMethods = Stream.empty();
             Class<?> curClass = type;
             while(curClass != Object.class) {
@@ -71,25 +69,22 @@ public abstract class EventSourcedEntity<T extends EventSourcedEntity<T>> implem
                         curClass.getDeclaredMethods()
                     ).stream().filter(m ->
                         m.getName().equals("when") && (m.getParameterTypes().length == 1 || m.getParameterTypes().length == 2)
-                    ).map(m -> {
-                        m.setAccessible(true);
-                        return m;
-                    })
+                    )
                 );
                 curClass = curClass.getSuperclass();
             }
             return whenMethods.collect(
                 groupingBy((m) -> (Class) m.getParameterTypes()[0],
-                    collectingAndThen(toList(), (list) -> list.get(0))
+                    collectingAndThen(toList(), (list) -> EventHandler.of(list.get(0)))
                 )
             );
         }
     };
 
-    static final ClassValue<Map<Class, Constructor>> constructors =
-        new ClassValue<Map<Class, Constructor>>() {
+    static final ClassValue<Map<Class, EventHandler>> constructors =
+        new ClassValue<Map<Class, EventHandler>>() {
         @Override
-        protected Map<Class, Constructor> computeValue(Class<?> type) {
+        protected Map<Class, EventHandler> computeValue(Class<?> type) {
             Stream<Constructor> constructors = Stream.empty();
             Class<?> curClass = type;
             while(curClass != Object.class) {
@@ -98,12 +93,13 @@ public abstract class EventSourcedEntity<T extends EventSourcedEntity<T>> implem
                     Arrays.asList(curClass.getConstructors())
                     .stream()
                     .filter(c -> c.getParameterTypes().length == 1)
-                    .map(c -> { c.setAccessible(true); return c; })
                 );
                 curClass = curClass.getSuperclass();
             }
             return constructors.collect(
-                groupingBy((m) -> (Class) m.getParameterTypes()[0], collectingAndThen(toList(), (list) -> list.get(0)))
+                groupingBy((m) -> (Class) m.getParameterTypes()[0],
+                    collectingAndThen(toList(), (list) -> EventHandler.of(list.get(0)))
+                )
             );
         }
     };
@@ -114,13 +110,13 @@ public abstract class EventSourcedEntity<T extends EventSourcedEntity<T>> implem
      * @param initialEvent event to be used for the initialization
      */
     protected EventSourcedEntity(Event initialEvent) {
-        Map<Class, Constructor> constructors = EventSourcedEntity.constructors.get(this.getClass());
+        Map<Class, EventHandler> constructors = EventSourcedEntity.constructors.get(this.getClass());
         if (constructors.containsKey(initialEvent.getClass())) {
-            _mutatingChanges.add(initialEvent);
+            _mutatingChanges = ChangeLog.EMPTY.append(initialEvent);
         } else if (initialEvent instanceof PayloadEvent) {
             Object payload = ((PayloadEvent) initialEvent).payload;
             if (constructors.containsKey(payload.getClass())) {
-                _mutatingChanges.add(initialEvent);
+                _mutatingChanges = ChangeLog.EMPTY.append(initialEvent);
             } else {
                 throw new IllegalArgumentException("The entity does not have a constructor for the payload " + payload);
             }
@@ -143,19 +139,10 @@ public abstract class EventSourcedEntity<T extends EventSourcedEntity<T>> implem
      * @return the entity with the applied changes
      */
     public T apply(Event event) {
-        return getMutatingMethod(event.getClass())
-            .map((e) -> {
-                Event occurredEvent = event.occurred(getMutatedVersion() + 1);
-                return appendEvent(mutate(occurredEvent), occurredEvent);
-            })
-            .orElseGet(() -> {
-                if (event instanceof PayloadEvent) {
-                    PayloadEvent occurredEvent = (PayloadEvent) event.occurred(getMutatedVersion() + 1);
-                    return appendEvent(mutate(occurredEvent.payload), occurredEvent);
-                } else {
-                    return (T) this;
-                }
-            });
+        if (!(event instanceof PayloadEvent) && !getMutatingMethod(event.getClass()).isPresent()) {
+            return (T) this;
+        }
+        return applyOccurred(event.occurred(getMutatedVersion() + 1));
     }
 
     /**
@@ -163,14 +150,22 @@ public abstract class EventSourcedEntity<T extends EventSourcedEntity<T>> implem
      * @return the entity with the applied changes
      */
     public T apply(Object event) {
-        return apply(new PayloadEvent(event));
+        // the wrapping event is owned by the entity, so it is created already stamped instead of being cloned
+        return applyOccurred(new PayloadEvent(event, getMutatedVersion() + 1, System.currentTimeMillis()));
+    }
+
+    private T applyOccurred(Event occurredEvent) {
+        if (occurredEvent instanceof PayloadEvent && !getMutatingMethod(PayloadEvent.class).isPresent()) {
+            return appendEvent(mutate(((PayloadEvent) occurredEvent).payload), occurredEvent);
+        }
+        return appendEvent(mutate(occurredEvent), occurredEvent);
     }
 
     private T appendEvent(EventSourcedEntity mutatedEntity, Event event) {
-        mutatedEntity._mutatingChanges  = new ArrayList<Event>(_mutatingChanges.size() + 1) {{ addAll(_mutatingChanges); add(event); }};
+        mutatedEntity._mutatingChanges  = changes().append(event);
         mutatedEntity._version          = event.getStreamVersion();
         mutatedEntity._committedVersion = this._committedVersion;
-        mutatedEntity._updateDate       = System.currentTimeMillis();
+        mutatedEntity._updateDate       = event.getOccurredOn();
         return (T) mutatedEntity;
     }
 
@@ -193,24 +188,61 @@ public abstract class EventSourcedEntity<T extends EventSourcedEntity<T>> implem
      * @return unsaved changes
      */
     public List<Event> getChanges() {
-        return Collections.unmodifiableList(_mutatingChanges);
+        return changes().toList();
+    }
+
+    private ChangeLog changes() {
+        // deserialized entities do not have the transient log initialized
+        return _mutatingChanges != null ? _mutatingChanges : ChangeLog.EMPTY;
     }
 
     private T mutate(Object event) {
         if (event == null) {
             return (T) this;
         }
-        return getMutatingMethod(event.getClass()).map((when) -> doMutate(when, event)).orElse((T) this);
+        return getMutatingMethod(event.getClass()).map((when) -> doMutate(when, event, false)).orElse((T) this);
     }
 
-    private Optional<Method> getMutatingMethod(Class eventClass) {
+    private Optional<EventHandler> getMutatingMethod(Class eventClass) {
         return Optional.ofNullable(mutatingMethods.get(this.getClass()).get(eventClass));
     } 
 
+    /**
+     * Returns a shallow copy of this entity without the unsaved changes, which the stored events could be replayed on
+     * using {@link #replay(Event)}. The copy shares the collections and the nested objects with this entity, so this
+     * entity must be private itself, e.g. just deserialized.
+     * @return the copy of this entity, which could be mutated in place
+     */
+    T replaying() {
+        return commitChanges();
+    }
+
+    /**
+     * Applies the stored event. Unlike {@link #apply(Event)}, this neither stamps the event, nor records it as a
+     * change, and it does not clone the entity for the 2-parameter <b>when</b> methods, but changes it in place.
+     * Thus, it must be invoked only on a private copy of an entity returned by {@link #replaying()}.
+     * @param event stored event with the stream version set
+     * @return the entity with the applied changes
+     */
+    T replay(Event event) {
+        Object actualEvent = event;
+        Optional<EventHandler> when = getMutatingMethod(event.getClass());
+        if (!when.isPresent() && event instanceof PayloadEvent) {
+            actualEvent = ((PayloadEvent) event).payload;
+            when = actualEvent != null ? getMutatingMethod(actualEvent.getClass()) : Optional.empty();
+        }
+        EventSourcedEntity replayed = when.isPresent() ? doMutate(when.get(), actualEvent, true) : this;
+        replayed._mutatingChanges  = ChangeLog.EMPTY;
+        replayed._version          = event.getStreamVersion() > 0 ? event.getStreamVersion() : _version + 1;
+        replayed._committedVersion = replayed._version;
+        replayed._updateDate       = event.getOccurredOn() > 0 ? event.getOccurredOn() : _updateDate;
+        return (T) replayed;
+    }
+
     T commitChanges() {
         try {
             EventSourcedEntity entity = (EventSourcedEntity) this.clone();
-            entity._mutatingChanges = new ArrayList<>();
+            entity._mutatingChanges = ChangeLog.EMPTY;
             entity._version = this._version;
             entity._committedVersion = this._version;
             return (T) entity;
@@ -219,22 +251,19 @@ public abstract class EventSourcedEntity<T extends EventSourcedEntity<T>> implem
         }
     }
 
-    private T doMutate(Method when, Object event) {
+    private T doMutate(EventHandler when, Object event, boolean inPlace) {
         try {
-            if (when.getParameterTypes().length == 1) {
-                return (T) when.invoke(this, event);
+            if (!when.takesClone()) {
+                return (T) when.handle(this, event);
             } else {
-                T cloned = (T) this.clone();
-                when.invoke(this, event, cloned);
+                T cloned = inPlace ? (T) this : (T) this.clone();
+                when.handle(this, event, cloned);
                 return cloned;
             }
-        } catch(IllegalAccessException|CloneNotSupportedException e) {
-            throw new AssertionError("This shouldn't happen");
-        } catch(InvocationTargetException e) {
-            if (e.getCause() instanceof RuntimeException) {
-                throw (RuntimeException) e.getCause();
-            }
-            throw new EventSourcingException(String.format("Exception occurred while applying the event %s on the entity %s.", event, this), e.getCause());
+        } catch(RuntimeException|Error e) {
+            throw e;
+        } catch(Throwable e) {
+            throw new EventSourcingException(String.format("Exception occurred while applying the event %s on the entity %s.", event, this), e);
         }
     }
 }
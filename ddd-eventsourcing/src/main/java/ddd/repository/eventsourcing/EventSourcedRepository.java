@@ -9,17 +9,31 @@ import ddd.repository.exception.OptimisticLockingException;
 import eventstore.Event;
 import eventstore.EventStore;
 import eventstore.PayloadEvent;
+import eventstore.StreamAppend;
 import eventstore.util.DbObjectMapper;
+import eventstore.util.IoExecutors;
 import eventstore.util.RuntimeGeneric;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import eventstore.util.SingleFlight;
+import eventstore.util.collection.Collections;
+import eventstore.util.collection.LruCache;
 import java.lang.reflect.ParameterizedType;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
@@ -42,14 +56,79 @@ public abstract class EventSourcedRepository<T extends EventSourcedEntity<T> & I
     implements TemporalRepository<T, K>, PersistenceOrientedRepository<T, K>, RuntimeGeneric {
 
     protected EventStore eventStore;
+    /**
+     * Optional cache of the committed aggregates. If it is set, reading an aggregate requires only the events appended
+     * after the cached version. The aggregates are cached serialized by the {@link #mapper}, see {@link AggregateCache}.
+     */
+    protected final Optional<AggregateCache<K, D>> aggregateCache;
+    /**
+     * Optional cache of the last known snapshot versions. If it is set, loading an entity reads its snapshot and the
+     * events after the cached snapshot version at the same time, instead of reading the events once the snapshot is
+     * read. The speculatively read events are reconciled with the actual snapshot afterwards.
+     */
+    protected final Optional<LruCache<K, Long>> snapshotVersionHints;
+    /**
+     * How many times the changes conflicting with the concurrently appended events are rebased onto them and saved
+     * again, before giving up with {@link OptimisticLockingException}.
+     */
+    protected final int maxConflictRetries;
+    /**
+     * Counters of the concurrent modifications the repository ran into, see {@link #getConflictStatistics()}.
+     */
+    protected final ConflictStatistics conflictStatistics = new ConflictStatistics();
+    /**
+     * Optional listener of the concurrent modifications, which is notified along with the {@link #conflictStatistics}.
+     */
+    protected final Optional<ConflictListener<K>> conflictListener;
+    /**
+     * Executor reading the event streams and rehydrating the entities, when many entities are loaded at once. The
+     * reads are blocking, so it is a dedicated pool rather than the common one by default, and it could be replaced
+     * with a pool sized for the storage, see {@link EventSourcedRepositoryOptions#withExecutor(Executor)}.
+     */
+    protected final Executor executor;
+    /**
+     * Every how many versions a snapshot of an entity is kept in the history, so that reading a past version of the
+     * entity (see {@link #get(Object, long)}) replays only the events since the nearest historical snapshot. Zero
+     * disables the history.
+     */
+    protected final int snapshotHistoryInterval;
+    /**
+     * How many historical snapshots are kept per entity, the older ones are removed.
+     */
+    protected final int snapshotHistoryDepth;
+    /**
+     * Default maximum amount of the entities being rehydrated at the same time by {@link #rehydrateAll(Stream)}.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    private final SingleFlight<Map.Entry<K, Long>, Loaded> loads = new SingleFlight<>();
 
     public EventSourcedRepository(EventStore eventStore, DbObjectMapper<D> mapper, Optional<Supplier<UnitOfWork>> uow) {
-        super(mapper, uow);
+        this(eventStore, mapper, uow, new EventSourcedRepositoryOptions<>());
+    }
+
+    public EventSourcedRepository(
+            EventStore eventStore,
+            DbObjectMapper<D> mapper,
+            Optional<Supplier<UnitOfWork>> uow,
+            EventSourcedRepositoryOptions<K, D> options) {
+        this(options);
+        this.unitOfWork = uow;
         init(eventStore, mapper);
     }
 
     protected EventSourcedRepository() {
+        this(new EventSourcedRepositoryOptions<>());
+    }
+
+    protected EventSourcedRepository(EventSourcedRepositoryOptions<K, D> options) {
         super(null);
+        this.aggregateCache          = options.getAggregateCache();
+        this.snapshotVersionHints    = options.getSnapshotVersionHints();
+        this.maxConflictRetries      = options.getMaxConflictRetries();
+        this.executor                = options.getExecutor().orElseGet(() -> IoExecutors.newPool("EventSourcedRepository"));
+        this.snapshotHistoryInterval = options.getSnapshotHistoryInterval();
+        this.snapshotHistoryDepth    = options.getSnapshotHistoryDepth();
+        this.conflictListener        = options.getConflictListener();
     }
 
     protected void init(EventStore eventStore, DbObjectMapper<D> mapper) {
@@ -59,97 +138,435 @@ public abstract class EventSourcedRepository<T extends EventSourcedEntity<T> & I
 
     @Override
     public Optional<T> get(K id) {
-        return reading(id, () -> get(id, -1));
+        return reading(id, () -> load(id, -1));
     }
 
-    private Optional<T> get(K id, long version)  {
-        return getByStreamName(streamName(id), version, snapshot(id, version));
+    /**
+     * Loads the entities with the given identifiers. All the snapshots are read with a single bulk request (see
+     * {@link #snapshots(Collection)}), then the event streams are read and the entities are rehydrated concurrently
+     * using the {@link #executor}. Only the rehydrated entities are registered in the unit of work, the snapshots and
+     * the intermediate versions are not.
+     */
+    @Override
+    public Collection<T> findAllByIds(Iterable<K> ids) {
+        // every entity is returned once, whether it is in the unit of work or not
+        Set<K> uniqueIds = new LinkedHashSet<>();
+        ids.forEach(uniqueIds::add);
+        List<T> found = new ArrayList<>();
+        List<K> toLoad = new ArrayList<>();
+        for (K id : uniqueIds) {
+            if (currentUnitOfWork().map(uow -> uow.isRemoved(this, id)).orElse(false)) {
+                continue;
+            }
+            Optional<T> cached = currentUnitOfWork().flatMap(uow -> uow.get(this, id));
+            if (cached.isPresent()) {
+                found.add(cached.get());
+            } else {
+                toLoad.add(id);
+            }
+        }
+        if (toLoad.isEmpty()) {
+            return found;
+        }
+        // the aggregates in the cache are better than the snapshots, since they need fewer events to be read
+        Map<K, T> snapshots = detached(() -> snapshots(toLoad.stream()
+            .filter(id -> !aggregateCache.flatMap(c -> c.get(id, -1)).isPresent())
+            .collect(toList())));
+        List<CompletableFuture<Optional<T>>> loading = toLoad.stream()
+            .map(id -> CompletableFuture.supplyAsync(
+                        () -> detached(() -> load(id, -1, () -> Optional.ofNullable(snapshots.get(id))).aggregate),
+                        executor
+            ))
+            .collect(toList());
+        // the unit of work is not thread-safe, so the loaded entities are registered by the calling thread
+        for (CompletableFuture<Optional<T>> entity : loading) {
+            reading(() -> {
+                try {
+                    return entity.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }).ifPresent(found::add);
+        }
+        return found;
     }
 
-    private Optional<T> getByStreamName(String streamName, long version, Optional<T> snapshot) {
-        return eventStore.streamSince(streamName, snapshot.map((e) -> e.getUnmutatedVersion()).orElse(-1L))
-            .map(e -> e.iterator())
-            .flatMap((events) -> {
-                if (!events.hasNext()) {
-                    return snapshot;
+    /**
+     * Rehydrates the entities with the given identifiers concurrently, see {@link #rehydrateAll(Stream, int, boolean)}.
+     * The entities are returned as soon as they are rehydrated.
+     */
+    public Stream<T> rehydrateAll(Stream<K> ids) {
+        return rehydrateAll(ids, DEFAULT_MAX_IN_FLIGHT, false);
+    }
+
+    /**
+     * Rehydrates the entities with the given identifiers concurrently using the {@link #executor}, one task per
+     * stream. The identifiers are consumed lazily, so that there are never more than the given amount of the
+     * entities being read at the same time. This is intended for processing a large amount of entities, e.g. for
+     * rebuilding the read models, so that the entities bypass the unit of work. The missing entities are skipped.
+     * @param ids identifiers of the entities are to be rehydrated
+     * @param maxInFlight maximum amount of the entities being rehydrated at the same time
+     * @param ordered whether the entities should be returned in the order of the given identifiers
+     * @return the rehydrated entities
+     */
+    public Stream<T> rehydrateAll(Stream<K> ids, int maxInFlight, boolean ordered) {
+        return Collections.mapConcurrently(
+                ids.iterator(),
+                id -> detached(() -> load(id, -1)),
+                executor,
+                maxInFlight,
+                ordered
+            ).filter(Optional::isPresent).map(Optional::get);
+    }
+
+    /**
+     * Returns an {@link Optional} describing the entity as it was at the given version. The past versions are
+     * rehydrated from the nearest historical snapshot (see {@link #snapshotHistoryInterval}), if any, and they
+     * bypass the unit of work.
+     * @param id identifier of the entity
+     * @param version version of the entity, or -1 for the latest one
+     */
+    @Override
+    public Optional<T> get(K id, long version) {
+        return version < 0 ? get(id) : detached(() -> load(id, version));
+    }
+
+    @Override
+    public Optional<T> getAsOf(K id, long timestamp) {
+        long version = eventStore.versionAt(streamName(id), timestamp);
+        return version > 0 ? get(id, version) : Optional.empty();
+    }
+
+    /**
+     * Returns all the events of the entities of the repository occurred within the given period, ordered by time, i.e.
+     * the events of the streams of the {@link #streamType()}.
+     * @param from start of the period in milliseconds (inclusive)
+     * @param to end of the period in milliseconds (exclusive)
+     * @throws UnsupportedOperationException if the event store cannot find the events by time and type, see
+     *         {@link EventStore#eventsBetween(String, long, long)}
+     */
+    public Stream<Event> eventsBetween(long from, long to) {
+        return eventStore.eventsBetween(streamType(), from, to);
+    }
+
+    private Optional<T> load(K id, long version)  {
+        // the concurrent loads of the same version share the reads and the rehydration, every thread gets its own copy,
+        // which is deserialized from the aggregate serialized only if another thread has joined the load
+        return loads.execute(
+                new SimpleImmutableEntry<>(id, version),
+                () -> load(id, version, () -> snapshot(id, version)),
+                Loaded::shareable,
+                Loaded::share
+        ).aggregate;
+    }
+
+    private Loaded load(K id, long version, Supplier<Optional<T>> snapshot)  {
+        Optional<AggregateCache<K, D>.Cached> cached = aggregateCache.flatMap(c -> c.get(id, version));
+        if (cached.isPresent()) {
+            // every caller deserializes its own copy of the cached aggregate
+            T aggregate = copyOf(cached.get().serialized);
+            if (cached.get().version == version || version < 0 && cached.get().isFresh()) {
+                return new Loaded(Optional.of(aggregate), Optional.of(cached.get().serialized));
+            }
+            // the cached aggregate works just like a snapshot, so that only the newer events are read
+            return cached(id, version, getByStreamName(streamName(id), version, Optional.of(aggregate)));
+        }
+        if (version < 0) {
+            return cached(id, version, loadLatest(id, snapshot));
+        }
+        return cached(id, version, getByStreamName(streamName(id), version, snapshot.get()));
+    }
+
+    /**
+     * Loads the latest version of the entity from its snapshot and the events appended after it. Override it, if the
+     * storage can read both of them with a single request, and use {@link #rehydrate(Optional, Optional)} for
+     * replaying the events.
+     * @param id identifier of the entity
+     * @param snapshot reads the latest snapshot of the entity
+     */
+    protected Optional<T> loadLatest(K id, Supplier<Optional<T>> snapshot) {
+        if (snapshotVersionHints.isPresent()) {
+            return loadConcurrently(id, snapshot);
+        }
+        return getByStreamName(streamName(id), -1, snapshot.get());
+    }
+
+    /**
+     * Replays the given events on the snapshot.
+     * @param snapshot snapshot of the entity, or empty, if the events start with the initial one
+     * @param events events appended after the snapshot, or empty, if there is no such stream
+     * @return the latest version of the entity, or empty, if there is no such entity
+     */
+    protected Optional<T> rehydrate(Optional<T> snapshot, Optional<Iterator<Event>> events) {
+        return rehydrate(events, -1, snapshot);
+    }
+
+    /**
+     * Loads the latest version of the entity reading its snapshot and the events after the hinted snapshot version
+     * concurrently. If the actual snapshot turns out to be older than the hint, the missing events are read again.
+     */
+    private Optional<T> loadConcurrently(K id, Supplier<Optional<T>> snapshot) {
+        String streamName = streamName(id);
+        Optional<Long> hint = snapshotVersionHints.get().get(id);
+        if (!hint.isPresent()) {
+            return getByStreamName(streamName, -1, hinted(id, snapshot.get()));
+        }
+        // the snapshot could be read by another thread, so it must not get into the unit of work of that thread
+        CompletableFuture<Optional<T>> reading = new CompletableFuture<>();
+        AtomicBoolean started = new AtomicBoolean(false);
+        Runnable read = () -> {
+            if (started.compareAndSet(false, true)) {
+                try {
+                    reading.complete(detached(snapshot));
+                } catch (RuntimeException|Error e) {
+                    reading.completeExceptionally(e);
                 }
-                T entity = (T) (snapshot.isPresent() ? snapshot.get() : initEntity(events.next()));
-                while (entity.getMutatedVersion() != version && events.hasNext()) {
-                    Event event = events.next();
-                    if (event instanceof RemovedEvent) {
-                        return Optional.empty();
-                    }
-                    entity = entity.apply(event);
+            }
+        };
+        try {
+            executor.execute(read);
+        } catch (RejectedExecutionException e) {
+            // the snapshot is read by this thread below
+        }
+        Optional<List<Event>> tail = eventStore.streamSince(streamName, hint.get()).map(events -> events.collect(toList()));
+        // unless the executor has started reading the snapshot already, this thread reads it, so that the thread never
+        // waits for a task queued behind it, e.g. when this load is a task of the same executor
+        read.run();
+        Optional<T> actual;
+        try {
+            actual = hinted(id, reading.join());
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        long snapshotVersion = actual.map(e -> e.getUnmutatedVersion()).orElse(0L);
+        if (snapshotVersion < hint.get()) {
+            return getByStreamName(streamName, -1, actual);
+        }
+        return rehydrate(
+                tail.map(events -> events.stream().filter(e -> e.getStreamVersion() > snapshotVersion).iterator()),
+                -1,
+                actual
+        );
+    }
+
+    private Optional<T> hinted(K id, Optional<T> snapshot) {
+        snapshotVersionHints.ifPresent(hints -> {
+            if (snapshot.isPresent()) {
+                hints.put(id, snapshot.get().getUnmutatedVersion());
+            } else {
+                hints.remove(id);
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * Puts the loaded aggregate into the cache, if any, serializing it, so that the cache gets its own copy of it,
+     * while the loaded instance is returned to the caller as is.
+     */
+    private Loaded cached(K id, long version, Optional<T> aggregate) {
+        // cache only the latest versions
+        if (version < 0 && aggregateCache.isPresent()) {
+            Optional<D> serialized = aggregate.map(e -> mapper.mapToDbObject(e));
+            if (serialized.isPresent()) {
+                aggregateCache.get().put(id, aggregate.get().getUnmutatedVersion(), serialized.get());
+            } else {
+                aggregateCache.get().invalidate(id);
+            }
+            return new Loaded(aggregate, serialized);
+        }
+        return new Loaded(aggregate, Optional.empty());
+    }
+
+    /**
+     * Returns a private deep copy of the given aggregate, which could be changed in place without affecting the given
+     * one, even if the <b>when</b> methods change the collections or the nested objects of the aggregate.
+     */
+    T privateCopy(T aggregate) {
+        return copyOf(mapper.mapToDbObject(aggregate));
+    }
+
+    private T copyOf(D serialized) {
+        return (T) mapper.mapToObject(serialized);
+    }
+
+    private Optional<T> getByStreamName(String streamName, long version, Optional<T> snapshot) {
+        return rehydrate(
+                eventStore.streamSince(streamName, snapshot.map((e) -> e.getUnmutatedVersion()).orElse(-1L)).map(e -> e.iterator()),
+                version,
+                snapshot
+        );
+    }
+
+    private Optional<T> rehydrate(Optional<Iterator<Event>> stream, long version, Optional<T> snapshot) {
+        return stream.flatMap((events) -> {
+            if (!events.hasNext()) {
+                return snapshot;
+            }
+            // the initialized entity has the initial event as its change, so replay the events on a committed copy
+            T entity = (snapshot.isPresent() ? snapshot.get() : initEntity(events.next())).replaying();
+            while (entity.getMutatedVersion() != version && events.hasNext()) {
+                Event event = events.next();
+                if (event instanceof RemovedEvent) {
+                    return Optional.empty();
                 }
-                return Optional.of(entity.commitChanges());
-            });
+                entity = entity.replay(event);
+            }
+            return Optional.of(entity);
+        });
     }
 
     protected void saveSnapshot(T committed, long unmutatedVersion) {
-        doSave(serialize(committed), Optional.of(unmutatedVersion));
+        D dbObject = serialize(committed);
+        doSave(dbObject, Optional.of(unmutatedVersion));
+        long version = committed.getUnmutatedVersion();
+        snapshotVersionHints.ifPresent(hints -> hints.put(committed.getId(), version));
+        // keep a snapshot every time the entity crosses the interval boundary
+        if (snapshotHistoryInterval > 0 && version / snapshotHistoryInterval > unmutatedVersion / snapshotHistoryInterval) {
+            doSaveHistory(committed.getId(), version, dbObject);
+            doRemoveHistory(committed.getId(), version - (long) snapshotHistoryInterval * snapshotHistoryDepth);
+        }
     }
 
-    protected boolean removeSnapshot(K id) { return doRemove(toDbId(id)); }
+    protected boolean removeSnapshot(K id) {
+        snapshotVersionHints.ifPresent(hints -> hints.remove(id));
+        if (snapshotHistoryInterval > 0) {
+            doRemoveHistory(id, Long.MAX_VALUE);
+        }
+        return doRemove(toDbId(id));
+    }
 
     protected Optional<T> snapshot(K id, long before) {
-        return doGet(toDbId(id)).map((i) -> deserialize(i));
+        Optional<T> snapshot = doGet(toDbId(id)).map((i) -> deserialize(i));
+        if (before < 0 || snapshot.map(s -> s.getUnmutatedVersion() <= before).orElse(true)) {
+            return snapshot;
+        }
+        return historicalSnapshot(id, before);
+    }
+
+    /**
+     * Returns the latest historical snapshot of the given entity not newer than the given version.
+     */
+    protected Optional<T> historicalSnapshot(K id, long before) {
+        return snapshotHistoryInterval > 0 ? doGetHistory(id, before).map((i) -> deserialize(i)) : Optional.empty();
+    }
+
+    /**
+     * Saves the historical snapshot of the entity. The repositories supporting the snapshot history should store it
+     * keyed by both the identifier and the version, so that {@link #doGetHistory(Object, long)} is a single index
+     * lookup.
+     */
+    protected void doSaveHistory(K id, long version, D dbObject) {}
+
+    /**
+     * Returns the latest historical snapshot of the given entity with the version not greater than the given one.
+     */
+    protected Optional<D> doGetHistory(K id, long before) { return Optional.empty(); }
+
+    /**
+     * Removes the historical snapshots of the given entity older than the given version.
+     */
+    protected void doRemoveHistory(K id, long before) {}
+
+    /**
+     * Returns the latest snapshots of the given entities, used for loading many entities at once. Override it, if
+     * the storage is able to read many snapshots with a single request. It is invoked detached from the unit of work
+     * (see {@link #detached(Supplier)}), so that the deserialized snapshots are not registered in it.
+     * @param ids identifiers of the entities
+     * @return the found snapshots by the identifiers of the entities
+     */
+    protected Map<K, T> snapshots(Collection<K> ids) {
+        Map<K, T> snapshots = new HashMap<>();
+        for (K id : ids) {
+            snapshot(id, -1).ifPresent(snapshot -> snapshots.put(id, snapshot));
+        }
+        return snapshots;
     }
 
     private T initEntity(Event initEvent) {
-        try {
-            Map<Class, Constructor> constructors = EventSourcedEntity.constructors.get(entityClass);
-            if (constructors.containsKey(initEvent.getClass())) {
-                return (T) constructors.get(initEvent.getClass()).newInstance(initEvent);
-            } else if (initEvent instanceof PayloadEvent) {
-                Object payload = ((PayloadEvent) initEvent).payload;
-                if (constructors.containsKey(payload.getClass())) {
-                    return (T) constructors.get(payload.getClass()).newInstance(payload);
-                } else {
-                    throw new IllegalArgumentException("The entity does not have a constructor for the payload " + payload);
+        Map<Class, EventHandler> constructors = EventSourcedEntity.constructors.get(entityClass);
+        Object actualEvent = initEvent;
+        if (!constructors.containsKey(initEvent.getClass())) {
+            if (initEvent instanceof PayloadEvent) {
+                actualEvent = ((PayloadEvent) initEvent).payload;
+                if (!constructors.containsKey(actualEvent.getClass())) {
+                    throw new IllegalArgumentException("The entity does not have a constructor for the payload " + actualEvent);
                 }
             } else {
                 throw new IllegalArgumentException("The entity does not have a constructor for the event " + initEvent);
             }
-        } catch (InstantiationException|IllegalAccessException|InvocationTargetException e) {
+        }
+        try {
+            return (T) constructors.get(actualEvent.getClass()).newInstance(actualEvent);
+        } catch (RuntimeException|Error e) {
+            throw e;
+        } catch (Throwable e) {
             throw new EventSourcingException("Couldn't initiate the entity with event " + initEvent, e);
         }
     }
 
-    private Optional<T> getAndApply(K id, long after, Stream<Event> changes) {
+    /**
+     * Moves the unsaved changes of the given entity onto the events appended concurrently. Only the events appended
+     * after the entity's committed version are read, and they are replayed on the committed version of the entity
+     * loaded from the storage, since the <b>when</b> methods could have changed the in-memory one in place. The
+     * changes matching the appended events are considered to be saved already.
+     */
+    private T rebase(T entity) {
+        K id = entity.getId();
+        long after = entity.getUnmutatedVersion();
+        Iterator<Event> changes = entity.getChanges().iterator();
         if (after <= 0) {
-            return getAndApply(id, 1, changes.skip(1));
-        } else {
-            return get(id, after).flatMap((entity) -> {
-                return eventStore.streamSince(streamName(id), after).map((e) -> e.iterator()).map((events) -> {
-                    T mutatedEntity = entity;
-                    int i = 0;
-                    Iterator<Event> changesIterator = changes.iterator();
-                    Event newEvent = null;
-                    Event savedEvent = null;
-                    while(events.hasNext()) {
-                        mutatedEntity = mutatedEntity.apply(savedEvent = events.next());
-                        // Trying to find the event, where the stream starts to differ from the saved one.
-                        if (newEvent == null) {
-                            newEvent = changesIterator.next();
-                            if (newEvent.equals(savedEvent)) {
-                                newEvent = null;
-                            }
-                        }
-                    }
-                    mutatedEntity = mutatedEntity.commitChanges();
-                    // Do not forget to apply the first different event we found,
-                    // since it's already read from the iterator.
-                    if (newEvent != null) {
-                        mutatedEntity = mutatedEntity.apply(newEvent);
-                    }
-                    while(changesIterator.hasNext()) {
-                        Event anotherNewEvent = changesIterator.next();
-                        mutatedEntity = mutatedEntity.apply(anotherNewEvent);
-                    }
-                    return mutatedEntity;
-                });
-            });
+            // the entity was created concurrently, so apply the rest of the changes on the created one
+            changes.next();
+            after = 1;
+        }
+        Optional<T> base = load(id, after);
+        if (!base.isPresent()) {
+            throw new OptimisticLockingException(String.format("The entity %s was removed concurrently", id));
+        }
+        T rebased = base.get().replaying();
+        Iterator<Event> events = eventStore.streamSince(streamName(id), after)
+            .map((e) -> e.iterator())
+            .orElseGet(() -> Stream.<Event>empty().iterator());
+        Event newEvent = null;
+        boolean differs = false;
+        long rebasedEvents = 0;
+        while (events.hasNext()) {
+            Event savedEvent = events.next();
+            if (savedEvent instanceof RemovedEvent) {
+                throw new OptimisticLockingException(String.format("The entity %s was removed concurrently", id));
+            }
+            rebased = rebased.replay(savedEvent);
+            ++rebasedEvents;
+            // Trying to find the event, where the stream starts to differ from the saved one.
+            if (!differs && changes.hasNext()) {
+                newEvent = changes.next();
+                differs  = !newEvent.equals(savedEvent);
+            }
+        }
+        conflictStatistics.rebased(rebasedEvents);
+        if (conflictListener.isPresent()) {
+            conflictListener.get().rebased(id, rebasedEvents);
+        }
+        if (rebased.getUnmutatedVersion() == entity.getUnmutatedVersion()) {
+            throw new IllegalStateException(
+                    String.format(
+                            "Couldn't resolve the conflict, the saved entity %s (%s, %s), but got fresh %s (%s).",
+                            entity,
+                            entity.getUnmutatedVersion(),
+                            entity.getChanges(),
+                            rebased,
+                            eventStore.version(streamName(id))));
+        }
+        // Do not forget to apply the first different event we found,
+        // since it's already read from the iterator.
+        if (differs) {
+            rebased = rebased.apply(newEvent);
         }
+        while (changes.hasNext()) {
+            rebased = rebased.apply(changes.next());
+        }
+        return rebased;
     }
 
     @Override
@@ -159,48 +576,147 @@ public abstract class EventSourcedRepository<T extends EventSourcedEntity<T> & I
         } else {
             return saving(entity, () -> {
                 try {
-                    for (Event event : entity.getChanges()) {
-                        try {
-                            Object actualEvent = event instanceof PayloadEvent ? ((PayloadEvent) event).payload : event;
-                            Method handler = EventSourcedEntity.mutatingMethods.get(this.getClass()).get(
-                                    actualEvent.getClass()
-                            );
-                            if (handler != null && handler.getParameterTypes().length == 2) {
-                                handler.invoke(this, actualEvent, entity);
-                            }
-                        } catch (IllegalAccessException e) {
-                            throw new AssertionError("This shouldn't happen");
-                        } catch (InvocationTargetException e) {
-                            throw new EventSourcingException(
-                                    String.format("Exception occurred while handling the event %s.", event), e.getCause());
-                        }
-                    }
-                    eventStore.append(streamName(entity.getId()), entity.getUnmutatedVersion(), entity.getChanges());
-                    T committed = entity.commitChanges();
-                    saveSnapshot(committed, entity.getUnmutatedVersion());
-                    return committed;
+                    return commit(entity);
                 } catch (ConcurrentModificationException e) {
-                    try {
-                        T freshEntity = getAndApply(entity.getId(), entity.getUnmutatedVersion(), entity.getChanges().stream()).get();
-                        if (freshEntity.getUnmutatedVersion() == entity.getUnmutatedVersion()) {
-                            throw new IllegalStateException(
-                                    String.format(
-                                            "Couldn't resolve the conflict, the saved entity %s (%s, %s), but got fresh %s (%s).",
-                                            entity,
-                                            entity.getUnmutatedVersion(),
-                                            entity.getChanges(),
-                                            freshEntity,
-                                            eventStore.version(streamName(entity.getId()))), e);
-                        }
-                        return save(freshEntity);
-                    } catch (Exception esException) {
-                        throw new OptimisticLockingException("Couldn't resolve the conflict", esException);
-                    }
+                    return resolve(entity, e);
                 }
             });
         }
     }
 
+    /**
+     * The aggregates record their changes as the events, so that the unchanged ones are never written anyway, see
+     * {@link #save(EventSourcedEntity)}. Hence they are never fingerprinted, whatever {@link #dirtyChecking} is.
+     */
+    @Override
+    protected final boolean isDirtyChecking() {
+        return false;
+    }
+
+    /**
+     * Appends the changes of all the entities with a single {@link EventStore#appendAll(List)}. The entities
+     * conflicting with the concurrent changes are rebased and saved one by one, just like by {@link #save(Object)}.
+     */
+    @Override
+    protected Map<K, OptimisticLockingException> doSaveAll(List<T> entities) {
+        List<T> changed = entities.stream().filter(e -> !e.getChanges().isEmpty()).collect(toList());
+        List<StreamAppend> appends = new ArrayList<>(changed.size());
+        for (T entity : changed) {
+            handle(entity);
+            appends.add(new StreamAppend(streamType(), streamName(entity.getId()), entity.getUnmutatedVersion(), entity.getChanges()));
+        }
+        Set<String> conflicts = eventStore.appendAll(appends);
+        Map<K, OptimisticLockingException> failures = new LinkedHashMap<>();
+        for (T entity : changed) {
+            if (!conflicts.contains(streamName(entity.getId()))) {
+                committed(entity);
+                continue;
+            }
+            try {
+                resolve(entity, new ConcurrentModificationException("The stream " + streamName(entity.getId()) + " was modified concurrently"));
+            } catch (OptimisticLockingException e) {
+                failures.put(entity.getId(), e);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Rebases the conflicting entity onto the concurrently appended events and commits it again, until it succeeds
+     * or the {@link #maxConflictRetries} are exhausted.
+     */
+    private T resolve(T entity, ConcurrentModificationException conflict) {
+        K id = entity.getId();
+        T pending = entity;
+        for (int retries = 0; ; ++retries) {
+            conflictStatistics.conflicted();
+            conflictListener.ifPresent(l -> l.conflicted(id));
+            aggregateCache.ifPresent(c -> c.invalidate(id));
+            if (retries >= maxConflictRetries) {
+                throw failed(id, new OptimisticLockingException(
+                        String.format("Couldn't resolve the conflict after %s retries", retries), conflict));
+            }
+            try {
+                pending = rebase(pending);
+            } catch (OptimisticLockingException olException) {
+                throw failed(id, olException);
+            } catch (Exception esException) {
+                throw failed(id, new OptimisticLockingException("Couldn't resolve the conflict", esException));
+            }
+            try {
+                return commit(pending);
+            } catch (ConcurrentModificationException e) {
+                conflict = e;
+            }
+        }
+    }
+
+    private OptimisticLockingException failed(K id, OptimisticLockingException e) {
+        conflictStatistics.failed();
+        conflictListener.ifPresent(l -> l.failed(id, e));
+        return e;
+    }
+
+    private T commit(T entity) {
+        if (entity.getChanges().isEmpty()) {
+            // all the changes turned out to be saved already
+            return entity;
+        }
+        handle(entity);
+        eventStore.append(streamType(), streamName(entity.getId()), entity.getUnmutatedVersion(), entity.getChanges());
+        return committed(entity);
+    }
+
+    /**
+     * Passes the changes of the entity to the repository's own <b>when</b> methods, if any.
+     */
+    private void handle(T entity) {
+        for (Event event : entity.getChanges()) {
+            Object actualEvent = event instanceof PayloadEvent ? ((PayloadEvent) event).payload : event;
+            EventHandler handler = EventSourcedEntity.mutatingMethods.get(this.getClass()).get(
+                    actualEvent.getClass()
+            );
+            if (handler != null && handler.takesClone()) {
+                try {
+                    handler.handle(this, actualEvent, entity);
+                } catch (Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new EventSourcingException(
+                            String.format("Exception occurred while handling the event %s.", event), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Completes saving the entity, once its changes are appended.
+     */
+    private T committed(T entity) {
+        conflictStatistics.committed();
+        conflictListener.ifPresent(l -> l.committed(entity.getId()));
+        T committed = entity.commitChanges();
+        saveSnapshot(committed, entity.getUnmutatedVersion());
+        aggregateCache.ifPresent(c -> c.put(committed.getId(), committed.getUnmutatedVersion(), mapper.mapToDbObject(committed)));
+        invalidateLoads(committed.getId());
+        return committed;
+    }
+
+    /**
+     * Makes the loads of the latest version of the entity started afterwards read it again, rather than join the load
+     * in flight, which could have started before the entity was changed.
+     */
+    private void invalidateLoads(K id) {
+        loads.invalidate(new SimpleImmutableEntry<>(id, -1L));
+    }
+
+    /**
+     * @return statistics of the concurrent modifications the repository ran into while saving the entities
+     */
+    public ConflictStatistics getConflictStatistics() {
+        return conflictStatistics;
+    }
+
     @Override
     public long size() {
         flush();
@@ -210,19 +726,49 @@ public abstract class EventSourcedRepository<T extends EventSourcedEntity<T> & I
     @Override
     public boolean remove(K id) {
         return removing(id, () -> {
-            if (!contains(id)) {
-                return false;
-            }
-            try {
-                eventStore.append(streamName(id), new RemovedEvent<K>(id));
-                removeSnapshot(id);
-                return true;
-            } catch (ConcurrentModificationException e) {
-                return remove(id);
+            while (true) {
+                long version = eventStore.version(streamName(id));
+                if (!exists(id, version)) {
+                    return false;
+                }
+                try {
+                    eventStore.append(streamType(), streamName(id), version, java.util.Collections.singletonList(new RemovedEvent<K>(id)));
+                    aggregateCache.ifPresent(c -> c.invalidate(id));
+                    removeSnapshot(id);
+                    invalidateLoads(id);
+                    return true;
+                } catch (ConcurrentModificationException e) {
+                    // try again with the new version
+                }
             }
         });
     }
 
+    @Override
+    public boolean contains(K id) {
+        if (currentUnitOfWork().map(uow -> uow.isRemoved(this, id)).orElse(false)) {
+            return false;
+        }
+        if (currentUnitOfWork().flatMap(uow -> uow.get(this, id)).isPresent()) {
+            return true;
+        }
+        return exists(id, eventStore.version(streamName(id)));
+    }
+
+    /**
+     * Checks whether the entity exists without rehydrating it: the stream must exist, and its last event must not be
+     * the tombstone {@link RemovedEvent}, since the removed entities cannot be changed anymore.
+     */
+    private boolean exists(K id, long version) {
+        if (version <= 0) {
+            return false;
+        }
+        return eventStore.streamSince(streamName(id), version - 1)
+            .flatMap((events) -> events.findFirst())
+            .map((event) -> !(event instanceof RemovedEvent))
+            .orElse(false);
+    }
+
     /**
      * Whether the repository had the given entity.
      * @param id id of the entity.
@@ -232,6 +778,42 @@ public abstract class EventSourcedRepository<T extends EventSourcedEntity<T> & I
     public boolean contained(K id) { flush(); return eventStore.contains(streamName(id)); }
 
     protected String streamName(K id) {
-        return this.entityClass.getSimpleName() + id;
+        return streamType() + id;
+    }
+
+    /**
+     * Returns the type of the streams of the entities, which the events are appended with, see
+     * {@link EventStore#append(String, String, long, List)}.
+     */
+    protected String streamType() {
+        return this.entityClass.getSimpleName();
+    }
+
+    /**
+     * Loaded aggregate along with its serialized form, if it is serialized already, e.g. cached. The concurrent loads
+     * of the same aggregate share the serialized form, so that every one of them deserializes its own copy, while the
+     * loading thread gets the loaded instance.
+     */
+    private final class Loaded {
+        final Optional<T> aggregate;
+        final Optional<D> serialized;
+
+        Loaded(Optional<T> aggregate, Optional<D> serialized) {
+            this.aggregate  = aggregate;
+            this.serialized = serialized;
+        }
+
+        /**
+         * Serializes the aggregate for the concurrent loads, unless it is serialized already.
+         */
+        Loaded shareable() {
+            return aggregate.isPresent() && !serialized.isPresent() ?
+                new Loaded(aggregate, aggregate.map(e -> mapper.mapToDbObject(e))) :
+                this;
+        }
+
+        Loaded share() {
+            return new Loaded(serialized.map(s -> copyOf(s)), serialized);
+        }
     }
 }
@@ -0,0 +1,114 @@
+package ddd.repository.eventsourcing;
+
+import eventstore.util.collection.LruCache;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+/**
+ * Optional settings of an {@link EventSourcedRepository}, which are given to its constructor and fixed afterwards.
+ * @param K type of the identifiers of the entities
+ * @param D type of the serialized entities
+ */
+public class EventSourcedRepositoryOptions<K, D> {
+
+    private Optional<AggregateCache<K, D>> aggregateCache = Optional.empty();
+    private Optional<LruCache<K, Long>> snapshotVersionHints = Optional.empty();
+    private int maxConflictRetries = 10;
+    private Optional<Executor> executor = Optional.empty();
+    private int snapshotHistoryInterval = 0;
+    private int snapshotHistoryDepth = 16;
+    private Optional<ConflictListener<K>> conflictListener = Optional.empty();
+
+    /**
+     * Sets the cache of the committed aggregates, see {@link EventSourcedRepository#aggregateCache}.
+     * @return these options
+     */
+    public EventSourcedRepositoryOptions<K, D> withAggregateCache(AggregateCache<K, D> aggregateCache) {
+        this.aggregateCache = Optional.of(aggregateCache);
+        return this;
+    }
+
+    /**
+     * Sets the cache of the last known snapshot versions, see {@link EventSourcedRepository#snapshotVersionHints}.
+     * @return these options
+     */
+    public EventSourcedRepositoryOptions<K, D> withSnapshotVersionHints(LruCache<K, Long> snapshotVersionHints) {
+        this.snapshotVersionHints = Optional.of(snapshotVersionHints);
+        return this;
+    }
+
+    /**
+     * Sets how many times the conflicting changes are rebased and saved again, see
+     * {@link EventSourcedRepository#maxConflictRetries}.
+     * @return these options
+     */
+    public EventSourcedRepositoryOptions<K, D> withMaxConflictRetries(int maxConflictRetries) {
+        if (maxConflictRetries < 0) {
+            throw new IllegalArgumentException("Invalid amount of the conflict retries " + maxConflictRetries);
+        }
+        this.maxConflictRetries = maxConflictRetries;
+        return this;
+    }
+
+    /**
+     * Sets the executor rehydrating many entities at once, see {@link EventSourcedRepository#executor}.
+     * @return these options
+     */
+    public EventSourcedRepositoryOptions<K, D> withExecutor(Executor executor) {
+        this.executor = Optional.of(executor);
+        return this;
+    }
+
+    /**
+     * Enables the history of the snapshots, see {@link EventSourcedRepository#snapshotHistoryInterval}.
+     * @param interval every how many versions a snapshot is kept in the history
+     * @param depth how many historical snapshots are kept per entity
+     * @return these options
+     */
+    public EventSourcedRepositoryOptions<K, D> withSnapshotHistory(int interval, int depth) {
+        if (interval <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Invalid snapshot history " + interval + "/" + depth);
+        }
+        this.snapshotHistoryInterval = interval;
+        this.snapshotHistoryDepth    = depth;
+        return this;
+    }
+
+    /**
+     * Sets the listener of the concurrent modifications the repository runs into while saving the entities, see
+     * {@link ConflictListener}.
+     * @return these options
+     */
+    public EventSourcedRepositoryOptions<K, D> withConflictListener(ConflictListener<K> conflictListener) {
+        this.conflictListener = Optional.of(conflictListener);
+        return this;
+    }
+
+    public Optional<AggregateCache<K, D>> getAggregateCache() {
+        return aggregateCache;
+    }
+
+    public Optional<LruCache<K, Long>> getSnapshotVersionHints() {
+        return snapshotVersionHints;
+    }
+
+    public int getMaxConflictRetries() {
+        return maxConflictRetries;
+    }
+
+    public Optional<Executor> getExecutor() {
+        return executor;
+    }
+
+    public int getSnapshotHistoryInterval() {
+        return snapshotHistoryInterval;
+    }
+
+    public int getSnapshotHistoryDepth() {
+        return snapshotHistoryDepth;
+    }
+
+    public Optional<ConflictListener<K>> getConflictListener() {
+        return conflictListener;
+    }
+}
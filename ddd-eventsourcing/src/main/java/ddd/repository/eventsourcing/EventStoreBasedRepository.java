@@ -5,13 +5,28 @@ import ddd.repository.IdentifiedEntity;
 import ddd.repository.UnitOfWork;
 import ddd.repository.eventsourcing.EventSourcedEntity;
 import eventstore.EventStore;
+import eventstore.util.json.GsonJsonSerde;
+import eventstore.util.json.JsonDbObjectMapper;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Supplier;
 
+/**
+ * Event sourced repository without the snapshots, i.e. the entities are always rehydrated from their events. The
+ * entities are serialized to JSON only for copying them, e.g. by the {@link AggregateCache}.
+ */
 public abstract class EventStoreBasedRepository<T extends EventSourcedEntity<T> & IdentifiedEntity<K>, K>
     extends EventSourcedRepository<T, K, Object, Object> {
     public EventStoreBasedRepository(EventStore eventStore, Optional<Supplier<UnitOfWork>> uow) {
-        super(eventStore, null, uow);
+        this(eventStore, uow, new EventSourcedRepositoryOptions<>());
+    }
+
+    public EventStoreBasedRepository(
+            EventStore eventStore,
+            Optional<Supplier<UnitOfWork>> uow,
+            EventSourcedRepositoryOptions<K, Object> options) {
+        super(eventStore, new JsonDbObjectMapper<Object>(new GsonJsonSerde(), json -> (String) json, json -> json), uow, options);
     }
 
     protected boolean removeSnapshot(K id) { return false; }
@@ -24,5 +39,7 @@ public abstract class EventStoreBasedRepository<T extends EventSourcedEntity<T>
 
     protected Optional<Object> doGet(Object id) { return Optional.empty(); }
 
+    protected Map<String, ?> attributes(Object dbObject) { return Collections.emptyMap(); }
+
     protected Object toDbId(Object id) { return null; }
 }
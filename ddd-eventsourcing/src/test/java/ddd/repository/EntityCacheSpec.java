@@ -0,0 +1,38 @@
+package ddd.repository;
+
+import java.util.Optional;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class EntityCacheSpec {
+
+    @Test
+    public void staleReadIsNotCachedAfterTheInvalidationIsEvicted() {
+        // a single entry, so that caching another entity evicts the invalidated one
+        EntityCache cache = new EntityCache(1);
+        long ticket = cache.ticket();
+        // the entity is written while it is being read
+        cache.invalidate(String.class, "1");
+        cache.put(String.class, "2", "other", Optional.empty(), cache.ticket());
+        assertEquals(Optional.of("other"), cache.get(String.class, "2"));
+
+        cache.put(String.class, "1", "stale", Optional.empty(), ticket);
+        assertFalse(cache.get(String.class, "1").isPresent());
+        // the reads started afterwards are cached
+        cache.put(String.class, "1", "fresh", Optional.empty(), cache.ticket());
+        assertEquals(Optional.of("fresh"), cache.get(String.class, "1"));
+    }
+
+    @Test
+    public void staleReadIsNotCachedAfterClear() {
+        EntityCache cache = new EntityCache(100);
+        long ticket = cache.ticket();
+        cache.invalidate(String.class, "1");
+        cache.clear();
+
+        cache.put(String.class, "1", "stale", Optional.empty(), ticket);
+        assertFalse(cache.get(String.class, "1").isPresent());
+    }
+}
@@ -0,0 +1,94 @@
+package ddd.repository.eventsourcing;
+
+import eventstore.EventStore;
+import eventstore.impl.InMemoryEventStore;
+import ddd.repository.AbstractHouseRepositorySpec;
+import ddd.repository.eventsourcing.example.domain.EventSourcedAvenue;
+import ddd.repository.eventsourcing.example.domain.EventSourcedHouse;
+import ddd.repository.eventsourcing.example.domain.EventSourcedStreet;
+import ddd.repository.eventsourcing.example.domain.StreetBuilt;
+import java.util.Arrays;
+import java.util.Optional;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+
+public class CachedEventSourcedRepositorySpec
+    extends AbstractHouseRepositorySpec<EventSourcedHouse, EventStoreBasedRepository<EventSourcedHouse, String>> {
+
+    public CachedEventSourcedRepositorySpec() {
+        super(cachedRepository(new InMemoryEventStore()), new EventSourcedHouse("100500 Awesome str., Chicago, USA", 100500, "Alexey Balchunas"));
+    }
+
+    @Test
+    public void catchUp() {
+        EventStoreBasedRepository<EventSourcedHouse, String> otherRepository =
+            new EventStoreBasedRepository<EventSourcedHouse, String>(houseRepository.eventStore, Optional.empty()) {};
+        EventSourcedHouse house = houseRepository.save(new EventSourcedHouse("Cached str., Chicago, USA", 100, "Alexey Balchunas"));
+        EventSourcedHouse cached = houseRepository.get(house.getAddress()).get();
+        assertNotSame(house, cached);
+        assertEquals(house.getOwner(), cached.getOwner());
+        // every reader gets its own copy of the cached aggregate
+        assertNotSame(cached, houseRepository.get(house.getAddress()).get());
+        assertNotSame(cached, houseRepository.findAllByIds(Arrays.asList(house.getAddress())).iterator().next());
+
+        otherRepository.save((EventSourcedHouse) otherRepository.get(house.getAddress()).get().buy("Stepan Stepanov"));
+        assertEquals("Stepan Stepanov", houseRepository.get(house.getAddress()).get().getOwner());
+
+        otherRepository.remove(house.getAddress());
+        assertFalse(houseRepository.get(house.getAddress()).isPresent());
+    }
+
+    @Test
+    public void mutatingWhenMethods() {
+        EventStoreBasedRepository<EventSourcedStreet, String> streets =
+            new EventStoreBasedRepository<EventSourcedStreet, String>(
+                new InMemoryEventStore(),
+                Optional.empty(),
+                new EventSourcedRepositoryOptions<String, Object>().withAggregateCache(new AggregateCache<>(100))
+            ) {};
+        String name = "Cached str., Chicago, USA";
+        streets.save(new EventSourcedStreet(new StreetBuilt(name)).build("1 Cached str."));
+        // the when method adds to the list of the copy in place, which must change neither the cached aggregate, nor
+        // the other copies
+        EventSourcedStreet changed = streets.get(name).get().build("2 Cached str.");
+        assertEquals(Arrays.asList("1 Cached str.", "2 Cached str."), changed.addresses);
+        assertEquals(Arrays.asList("1 Cached str."), streets.get(name).get().addresses);
+
+        streets.save(changed);
+        assertEquals(Arrays.asList("1 Cached str.", "2 Cached str."), streets.get(name).get().addresses);
+        changed.build("3 Cached str.");
+        assertEquals(Arrays.asList("1 Cached str.", "2 Cached str."), streets.get(name).get().addresses);
+    }
+
+    @Test
+    public void rebaseMutatingWhenMethods() {
+        EventStoreBasedRepository<EventSourcedAvenue, String> avenues =
+            new EventStoreBasedRepository<EventSourcedAvenue, String>(
+                new InMemoryEventStore(),
+                Optional.empty(),
+                new EventSourcedRepositoryOptions<String, Object>().withAggregateCache(new AggregateCache<>(100))
+            ) {};
+        String name = "Rebased ave., Chicago, USA";
+        avenues.save(new EventSourcedAvenue(new StreetBuilt(name)));
+        EventSourcedAvenue first = avenues.get(name).get();
+        EventSourcedAvenue second = avenues.get(name).get();
+        avenues.save(first.build("1 Rebased ave."));
+        // the when method adds to the list shared by the clone, so the conflicting changes are rebased on the stored
+        // version rather than on the changed in-memory one
+        EventSourcedAvenue rebased = avenues.save(second.build("2 Rebased ave."));
+        assertEquals(3, rebased.getUnmutatedVersion());
+        assertEquals(Arrays.asList("1 Rebased ave.", "2 Rebased ave."), rebased.addresses);
+        assertEquals(Arrays.asList("1 Rebased ave.", "2 Rebased ave."), avenues.get(name).get().addresses);
+    }
+
+    private static EventStoreBasedRepository<EventSourcedHouse, String> cachedRepository(EventStore eventStore) {
+        return new EventStoreBasedRepository<EventSourcedHouse, String>(
+            eventStore,
+            Optional.empty(),
+            new EventSourcedRepositoryOptions<String, Object>().withAggregateCache(new AggregateCache<>(100))
+        ) {};
+    }
+}
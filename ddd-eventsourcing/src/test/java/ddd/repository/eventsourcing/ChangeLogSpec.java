@@ -0,0 +1,70 @@
+package ddd.repository.eventsourcing;
+
+import ddd.repository.eventsourcing.example.domain.HouseDestroyed;
+import eventstore.Event;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChangeLogSpec {
+
+    @Test
+    public void empty() {
+        assertTrue(ChangeLog.EMPTY.isEmpty());
+        assertEquals(0, ChangeLog.EMPTY.size());
+        assertEquals(Collections.emptyList(), ChangeLog.EMPTY.toList());
+    }
+
+    @Test
+    public void append() {
+        Event first  = new HouseDestroyed();
+        Event second = new HouseDestroyed();
+        Event third  = new HouseDestroyed();
+        ChangeLog log = ChangeLog.EMPTY.append(first).append(second).append(third);
+        assertFalse(log.isEmpty());
+        assertEquals(3, log.size());
+        // the events are kept in the order of appending
+        List<Event> events = log.toList();
+        assertSame(first, events.get(0));
+        assertSame(second, events.get(1));
+        assertSame(third, events.get(2));
+    }
+
+    @Test
+    public void share() {
+        Event first  = new HouseDestroyed();
+        Event second = new HouseDestroyed();
+        Event third  = new HouseDestroyed();
+        ChangeLog shared = ChangeLog.EMPTY.append(first);
+        ChangeLog left   = shared.append(second);
+        ChangeLog right  = shared.append(third);
+        // appending to the shared log changes neither it, nor the other logs sharing it
+        assertEquals(Arrays.asList(first), shared.toList());
+        assertEquals(Arrays.asList(first, second), left.toList());
+        assertEquals(Arrays.asList(first, third), right.toList());
+        assertSame(first, left.toList().get(0));
+        assertSame(first, right.toList().get(0));
+        assertTrue(ChangeLog.EMPTY.isEmpty());
+    }
+
+    @Test
+    public void toList() {
+        ChangeLog log = ChangeLog.EMPTY.append(new HouseDestroyed()).append(new HouseDestroyed());
+        List<Event> events = log.toList();
+        // the list is materialized once
+        assertSame(events, log.toList());
+        try {
+            events.add(new HouseDestroyed());
+            fail("The changes should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(2, log.toList().size());
+        }
+    }
+}
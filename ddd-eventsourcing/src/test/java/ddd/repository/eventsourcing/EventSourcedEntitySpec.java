@@ -0,0 +1,91 @@
+package ddd.repository.eventsourcing;
+
+import ddd.repository.eventsourcing.example.domain.EventSourcedAvenue;
+import ddd.repository.eventsourcing.example.domain.EventSourcedHouse;
+import ddd.repository.eventsourcing.example.domain.HouseBought;
+import ddd.repository.eventsourcing.example.domain.HouseBuilt;
+import ddd.repository.eventsourcing.example.domain.HouseDestroyed;
+import ddd.repository.eventsourcing.example.domain.StreetBuilt;
+import eventstore.Event;
+import eventstore.PayloadEvent;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EventSourcedEntitySpec {
+
+    @Test
+    public void replayWhenReturningEntity() {
+        EventSourcedHouse house =
+            replaying(new EventSourcedHouse("100500 Awesome str., Chicago, USA", 100500, "Alexey Balchunas"));
+        // the payload of the stored event is unwrapped for the when method taking it
+        EventSourcedHouse bought = replay(house, new PayloadEvent<>(new HouseBought("Stepan Stepanov"), 2, 1000));
+        assertNotSame(house, bought);
+        assertEquals("Stepan Stepanov", bought.getOwner());
+        assertFalse(bought.isDestroyed());
+        assertEquals(2, bought.getMutatedVersion());
+        assertEquals(2, bought.getUnmutatedVersion());
+        assertEquals(1000, bought.getUpdateDate());
+        assertTrue(bought.getChanges().isEmpty());
+
+        EventSourcedHouse destroyed = replay(bought, new HouseDestroyed().occurred(3, 2000));
+        assertTrue(destroyed.isDestroyed());
+        assertEquals("Stepan Stepanov", destroyed.getOwner());
+        assertEquals(3, destroyed.getUnmutatedVersion());
+        assertEquals(2000, destroyed.getUpdateDate());
+        assertTrue(destroyed.getChanges().isEmpty());
+    }
+
+    @Test
+    public void replayWhenChangingClone() {
+        EventSourcedAvenue avenue = new EventSourcedAvenue(new StreetBuilt("Michigan Ave., Chicago, USA"));
+        EventSourcedAvenue replaying = replaying(avenue);
+        // the 2-parameter when method changes the private copy instead of its clone
+        EventSourcedAvenue replayed = replay(
+            replay(replaying, new PayloadEvent<>(new HouseBuilt("1 Michigan Ave., Chicago, USA", 0, null), 2, 1000)),
+            new PayloadEvent<>(new HouseBuilt("2 Michigan Ave., Chicago, USA", 0, null), 3, 2000)
+        );
+        assertSame(replaying, replayed);
+        assertEquals(Arrays.asList("1 Michigan Ave., Chicago, USA", "2 Michigan Ave., Chicago, USA"), replayed.addresses);
+        assertEquals(3, replayed.getUnmutatedVersion());
+        assertEquals(2000, replayed.getUpdateDate());
+        assertTrue(replayed.getChanges().isEmpty());
+        // the replaying copy does not carry the unsaved changes of the original entity
+        assertEquals(1, avenue.getChanges().size());
+    }
+
+    @Test
+    public void replayUnstampedEvent() {
+        EventSourcedHouse house =
+            replaying(new EventSourcedHouse("100500 Awesome str., Chicago, USA", 100500, "Alexey Balchunas"));
+        long updateDate = house.getUpdateDate();
+        EventSourcedHouse destroyed = replay(house, new HouseDestroyed());
+        assertTrue(destroyed.isDestroyed());
+        assertEquals(2, destroyed.getUnmutatedVersion());
+        assertEquals(updateDate, destroyed.getUpdateDate());
+    }
+
+    @Test
+    public void replayUnhandledEvent() {
+        EventSourcedAvenue avenue = replaying(new EventSourcedAvenue(new StreetBuilt("Michigan Ave., Chicago, USA")));
+        // the event without a when method still counts in the version
+        EventSourcedAvenue replayed = replay(avenue, new PayloadEvent<>(new HouseBought("Stepan Stepanov"), 2, 1000));
+        assertSame(avenue, replayed);
+        assertTrue(replayed.addresses.isEmpty());
+        assertEquals(2, replayed.getUnmutatedVersion());
+    }
+
+    // the replay methods are package-private, so they are not inherited by the entities of the other packages
+    private static <T extends EventSourcedEntity<T>> T replaying(T entity) {
+        return entity.replaying();
+    }
+
+    private static <T extends EventSourcedEntity<T>> T replay(T entity, Event event) {
+        return entity.replay(event);
+    }
+}
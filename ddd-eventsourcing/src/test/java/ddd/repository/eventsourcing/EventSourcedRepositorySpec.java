@@ -1,10 +1,40 @@
 package ddd.repository.eventsourcing;
 
+import eventstore.Event;
 import eventstore.impl.InMemoryEventStore;
 import ddd.repository.AbstractHouseRepositorySpec;
 import ddd.repository.eventsourcing.example.domain.EventSourcedHouse;
+import ddd.repository.eventsourcing.example.domain.HouseDestroyed;
+import ddd.repository.exception.OptimisticLockingException;
 import ddd.repository.UnitOfWork;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 public class EventSourcedRepositorySpec
     extends AbstractHouseRepositorySpec<EventSourcedHouse, EventStoreBasedRepository<EventSourcedHouse, String>> {
@@ -14,4 +44,332 @@ public class EventSourcedRepositorySpec
                 new EventSourcedHouse("100500 Awesome str., Chicago, USA", 100500, "Alexey Balchunas")
         );
     }
+
+    @Test
+    public void rebase() {
+        EventSourcedHouse house = houseRepository.save(awesomeHouse);
+        houseRepository.save((EventSourcedHouse) house.buy("Stepan Stepanov"));
+        houseRepository.save((EventSourcedHouse) house.buy("Ivan Ivanov"));
+
+        EventSourcedHouse destroyed = houseRepository.save((EventSourcedHouse) house.destroy());
+        assertEquals(4, destroyed.getUnmutatedVersion());
+        assertTrue(destroyed.isDestroyed());
+        assertEquals("Ivan Ivanov", destroyed.getOwner());
+        assertEquals(destroyed.getOwner(), houseRepository.get(house.getAddress()).get().getOwner());
+
+        ConflictStatistics statistics = houseRepository.getConflictStatistics();
+        assertEquals(4, statistics.getCommits());
+        assertEquals(2, statistics.getConflicts());
+        assertEquals(3, statistics.getRebasedEvents());
+        assertEquals(0, statistics.getFailures());
+    }
+
+    @Test
+    public void conflictListener() {
+        List<String> notifications = new CopyOnWriteArrayList<>();
+        EventStoreBasedRepository<EventSourcedHouse, String> repository =
+            new EventStoreBasedRepository<EventSourcedHouse, String>(
+                new InMemoryEventStore(),
+                Optional.empty(),
+                new EventSourcedRepositoryOptions<String, Object>().withConflictListener(new ConflictListener<String>() {
+                    @Override
+                    public void committed(String id) { notifications.add("committed"); }
+
+                    @Override
+                    public void conflicted(String id) { notifications.add("conflicted"); }
+
+                    @Override
+                    public void rebased(String id, long events) { notifications.add("rebased " + events); }
+
+                    @Override
+                    public void failed(String id, OptimisticLockingException e) { notifications.add("failed"); }
+                })
+            ) {};
+        EventSourcedHouse house = repository.save(awesomeHouse);
+        repository.save((EventSourcedHouse) house.buy("Stepan Stepanov"));
+        house = repository.save((EventSourcedHouse) house.buy("Ivan Ivanov"));
+        repository.remove(house.getAddress());
+        try {
+            repository.save((EventSourcedHouse) house.buy("Nobody"));
+            fail("The removed house should not be bought");
+        } catch (OptimisticLockingException e) {
+            // the house was removed concurrently
+        }
+
+        assertEquals(
+            Arrays.asList("committed", "committed", "conflicted", "rebased 1", "committed", "conflicted", "failed"),
+            notifications
+        );
+        ConflictStatistics statistics = repository.getConflictStatistics();
+        assertEquals(3, statistics.getCommits());
+        assertEquals(2, statistics.getConflicts());
+        assertEquals(1, statistics.getRebasedEvents());
+        assertEquals(1, statistics.getFailures());
+        assertEquals(0.4, statistics.getConflictRate(), 1e-9);
+    }
+
+    @Test
+    public void commandExecutor() {
+        ExecutorService lanes = Executors.newFixedThreadPool(4);
+        AggregateCommandExecutor<EventSourcedHouse, String> executor =
+            new AggregateCommandExecutor<>(houseRepository, lanes, 4, 16, 16);
+        List<String> addresses = IntStream.range(0, 10).mapToObj(i -> i + " Serial str., Chicago, USA").collect(toList());
+        List<CompletableFuture<EventSourcedHouse>> results = IntStream.range(0, 50)
+            .boxed()
+            .flatMap(i -> addresses.stream().map(address -> executor.submit(address, house ->
+                house.isPresent() ?
+                    (EventSourcedHouse) house.get().buy("Owner " + i) :
+                    new EventSourcedHouse(address, 100, "Owner " + i)
+            )))
+            .collect(toList());
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()])).join();
+
+        addresses.forEach(address -> {
+            EventSourcedHouse house = houseRepository.get(address).get();
+            assertEquals(50, house.getUnmutatedVersion());
+            assertEquals("Owner 49", house.getOwner());
+        });
+        assertEquals(0, houseRepository.getConflictStatistics().getConflicts());
+        assertTrue(houseRepository.getConflictStatistics().getCommits() <= 500);
+
+        EventSourcedHouse destroyed = executor.submit(addresses.get(0), house -> (EventSourcedHouse) house.get().destroy()).join();
+        assertTrue(destroyed.isDestroyed());
+        try {
+            executor.submit(addresses.get(0), house -> (EventSourcedHouse) house.get().buy("Nobody")).join();
+            fail("The destroyed house should not be bought");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            lanes.shutdown();
+        }
+        assertEquals(51, houseRepository.get(addresses.get(0)).get().getUnmutatedVersion());
+    }
+
+    @Test
+    public void commandExecutorReloadsStaleAggregates() {
+        EventStoreBasedRepository<EventSourcedHouse, String> repository =
+            new EventStoreBasedRepository<EventSourcedHouse, String>(
+                new InMemoryEventStore(),
+                Optional.empty(),
+                new EventSourcedRepositoryOptions<String, Object>().withMaxConflictRetries(0)
+            ) {};
+        ExecutorService lanes = Executors.newFixedThreadPool(1);
+        AggregateCommandExecutor<EventSourcedHouse, String> executor = new AggregateCommandExecutor<>(repository, lanes, 1, 16, 16);
+        try {
+            String address = awesomeHouse.getAddress();
+            executor.submit(address, house -> awesomeHouse).join();
+            // the aggregate kept by the lane gets stale
+            repository.save((EventSourcedHouse) repository.get(address).get().buy("Stepan Stepanov"));
+            EventSourcedHouse bought = executor.submit(address, house -> (EventSourcedHouse) house.get().buy("Ivan Ivanov")).join();
+            assertEquals(3, bought.getUnmutatedVersion());
+            assertEquals("Ivan Ivanov", repository.get(address).get().getOwner());
+        } finally {
+            lanes.shutdown();
+        }
+    }
+
+    @Test
+    public void coalesceLoads() throws Exception {
+        AtomicBoolean blocking = new AtomicBoolean(false);
+        AtomicInteger reads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        EventStoreBasedRepository<EventSourcedHouse, String> repository =
+            new EventStoreBasedRepository<EventSourcedHouse, String>(new InMemoryEventStore() {
+                @Override
+                public Optional<Stream<Event>> streamSince(String streamName, long lastReceivedEvent) {
+                    if (blocking.get()) {
+                        reads.incrementAndGet();
+                        loading.countDown();
+                        await(release);
+                    }
+                    return super.streamSince(streamName, lastReceivedEvent);
+                }
+            }, Optional.empty()) {};
+        repository.save(awesomeHouse);
+        blocking.set(true);
+
+        List<FutureTask<EventSourcedHouse>> gets = IntStream.range(0, 8)
+            .mapToObj(i -> new FutureTask<>(() -> repository.get(awesomeHouse.getAddress()).get()))
+            .collect(toList());
+        List<Thread> readers = gets.stream().map(Thread::new).collect(toList());
+        // the first reader loads the house, and it is blocked until the others join the load
+        readers.get(0).start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        readers.subList(1, readers.size()).forEach(Thread::start);
+        waitUntilWaiting(readers.subList(1, readers.size()));
+        release.countDown();
+        List<EventSourcedHouse> houses = new ArrayList<>();
+        for (FutureTask<EventSourcedHouse> get : gets) {
+            houses.add(get.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, reads.get());
+        assertEquals(houses.size(), houses.stream().map(System::identityHashCode).distinct().count());
+        houses.forEach(house -> assertEquals(awesomeHouse.getOwner(), house.getOwner()));
+    }
+
+    @Test
+    public void readYourWritesWhileLoading() throws Exception {
+        AtomicBoolean blocking = new AtomicBoolean(false);
+        CountDownLatch loaded = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        EventStoreBasedRepository<EventSourcedHouse, String> repository =
+            new EventStoreBasedRepository<EventSourcedHouse, String>(new InMemoryEventStore() {
+                @Override
+                public Optional<Stream<Event>> streamSince(String streamName, long lastReceivedEvent) {
+                    Optional<List<Event>> events = super.streamSince(streamName, lastReceivedEvent).map(e -> e.collect(toList()));
+                    // only the first load is blocked
+                    if (blocking.compareAndSet(true, false)) {
+                        loaded.countDown();
+                        await(release);
+                    }
+                    return events.map(List::stream);
+                }
+            }, Optional.empty()) {};
+        EventSourcedHouse house = repository.save(awesomeHouse);
+        blocking.set(true);
+        CompletableFuture<Optional<EventSourcedHouse>> loading =
+            CompletableFuture.supplyAsync(() -> repository.get(awesomeHouse.getAddress()));
+        // the load reads the events before the change, and it is still in flight while the change is saved
+        assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        try {
+            repository.save((EventSourcedHouse) house.buy("Stepan Stepanov"));
+            // the read joining the in-flight load would wait for the release
+            CompletableFuture<Optional<EventSourcedHouse>> reading =
+                CompletableFuture.supplyAsync(() -> repository.get(awesomeHouse.getAddress()));
+            assertEquals("Stepan Stepanov", reading.get(5, TimeUnit.SECONDS).get().getOwner());
+        } finally {
+            release.countDown();
+        }
+        assertEquals(awesomeHouse.getOwner(), loading.get(5, TimeUnit.SECONDS).get().getOwner());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("The latch was not released");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until the given threads are parked, e.g. waiting for a load they joined.
+     */
+    private static void waitUntilWaiting(List<Thread> threads) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!threads.stream().allMatch(t -> t.getState() == Thread.State.WAITING)) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("The threads did not join the load");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void saveAll() {
+        EventSourcedHouse house = houseRepository.save(awesomeHouse);
+        houseRepository.save((EventSourcedHouse) house.buy("Stepan Stepanov"));
+        EventSourcedHouse otherHouse = new EventSourcedHouse("Other str., Chicago, USA", 100, "Alexey Balchunas");
+
+        houseRepository.saveAll(Arrays.asList((EventSourcedHouse) house.buy("Ivan Ivanov"), otherHouse));
+        assertEquals("Ivan Ivanov", houseRepository.get(house.getAddress()).get().getOwner());
+        assertEquals(3, houseRepository.get(house.getAddress()).get().getUnmutatedVersion());
+        assertEquals(otherHouse.getOwner(), houseRepository.get(otherHouse.getAddress()).get().getOwner());
+        assertEquals(1, houseRepository.getConflictStatistics().getConflicts());
+
+        houseRepository.removeAll(Arrays.asList(house.getAddress(), otherHouse.getAddress()));
+        assertFalse(houseRepository.contains(house.getAddress()));
+        assertFalse(houseRepository.contains(otherHouse.getAddress()));
+    }
+
+    @Test
+    public void rehydrateAll() {
+        List<String> addresses = IntStream.range(0, 100).mapToObj(i -> i + " Parallel str., Chicago, USA").collect(toList());
+        addresses.forEach(address ->
+            houseRepository.save((EventSourcedHouse) houseRepository.save(new EventSourcedHouse(address, 100, "Alexey Balchunas")).buy(address))
+        );
+
+        List<EventSourcedHouse> houses = houseRepository.rehydrateAll(Stream.concat(addresses.stream(), Stream.of("Nowhere")), 8, true)
+            .collect(toList());
+        assertEquals(addresses, houses.stream().map(EventSourcedHouse::getOwner).collect(toList()));
+        assertEquals(
+            new HashSet<>(addresses),
+            houseRepository.rehydrateAll(addresses.stream()).map(EventSourcedHouse::getOwner).collect(toSet())
+        );
+    }
+
+    @Test
+    public void getAsOf() {
+        ManualClock clock = new ManualClock(1000);
+        EventStoreBasedRepository<EventSourcedHouse, String> houseRepository =
+            new EventStoreBasedRepository<EventSourcedHouse, String>(new InMemoryEventStore(clock), Optional.empty()) {};
+        EventSourcedHouse house = houseRepository.save(awesomeHouse);
+        clock.set(2000);
+        house = houseRepository.save((EventSourcedHouse) house.buy("Stepan Stepanov"));
+        clock.set(2500);
+        // the events of the streams of other types are not returned, even if the house type is a prefix of them
+        houseRepository.eventStore.append(
+            "EventSourcedHouseHold",
+            "EventSourcedHouseHold" + awesomeHouse.getAddress(),
+            0,
+            Arrays.asList(new HouseDestroyed())
+        );
+        clock.set(3000);
+        houseRepository.save((EventSourcedHouse) house.destroy());
+        assertFalse(houseRepository.getAsOf(awesomeHouse.getAddress(), 999).isPresent());
+        assertEquals(awesomeHouse.getOwner(), houseRepository.getAsOf(awesomeHouse.getAddress(), 1999).get().getOwner());
+        EventSourcedHouse bought = houseRepository.getAsOf(awesomeHouse.getAddress(), 2999).get();
+        assertEquals("Stepan Stepanov", bought.getOwner());
+        assertFalse(bought.isDestroyed());
+        assertTrue(houseRepository.getAsOf(awesomeHouse.getAddress(), 3000).get().isDestroyed());
+        assertEquals(
+            Arrays.asList(2000L, 3000L),
+            houseRepository.eventsBetween(1001, 3001).map(Event::getOccurredOn).collect(toList())
+        );
+        assertEquals(3, houseRepository.eventStore.eventsBetween(1001, 3001).count());
+    }
+
+    @Test
+    public void stampWithStoreClock() {
+        EventStoreBasedRepository<EventSourcedHouse, String> houseRepository =
+            new EventStoreBasedRepository<EventSourcedHouse, String>(
+                new InMemoryEventStore(Clock.fixed(Instant.ofEpochMilli(1000), ZoneOffset.UTC)),
+                Optional.empty()
+            ) {};
+        houseRepository.save((EventSourcedHouse) ((EventSourcedHouse) awesomeHouse.buy("Stepan Stepanov")).destroy());
+        // the appended events share the time of the store, and are numbered in the order of appending
+        List<Event> events = houseRepository.eventStore.stream(houseRepository.streamName(awesomeHouse.getAddress()))
+            .get()
+            .collect(toList());
+        assertEquals(Arrays.asList(1L, 2L, 3L), events.stream().map(Event::getStreamVersion).collect(toList()));
+        assertEquals(Arrays.asList(1000L, 1000L, 1000L), events.stream().map(Event::getOccurredOn).collect(toList()));
+        EventSourcedHouse house = houseRepository.get(awesomeHouse.getAddress()).get();
+        assertTrue(house.isDestroyed());
+        assertEquals(1000, house.getUpdateDate());
+    }
+
+    @Test
+    public void removeTwice() {
+        houseRepository.save(awesomeHouse);
+        assertTrue(houseRepository.contains(awesomeHouse.getAddress()));
+        assertTrue(houseRepository.remove(awesomeHouse.getAddress()));
+        assertFalse(houseRepository.contains(awesomeHouse.getAddress()));
+        assertFalse(houseRepository.remove(awesomeHouse.getAddress()));
+        assertTrue(houseRepository.contained(awesomeHouse.getAddress()));
+    }
+
+    @Test(expected = OptimisticLockingException.class)
+    public void rebaseRetries() {
+        EventStoreBasedRepository<EventSourcedHouse, String> repository =
+            new EventStoreBasedRepository<EventSourcedHouse, String>(
+                new InMemoryEventStore(),
+                Optional.empty(),
+                new EventSourcedRepositoryOptions<String, Object>().withMaxConflictRetries(0)
+            ) {};
+        EventSourcedHouse house = repository.save(awesomeHouse);
+        repository.save((EventSourcedHouse) house.buy("Stepan Stepanov"));
+        repository.save((EventSourcedHouse) house.buy("Ivan Ivanov"));
+    }
 }
@@ -0,0 +1,57 @@
+package ddd.repository.eventsourcing;
+
+import eventstore.impl.InMemoryEventStore;
+import ddd.repository.AbstractHouseRepositorySpec;
+import ddd.repository.ConcurrentUnitOfWork;
+import ddd.repository.UnitOfWork;
+import ddd.repository.eventsourcing.example.domain.EventSourcedHouse;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+
+public class EventSourcedRepositoryWithConcurrentUowSpec
+    extends AbstractHouseRepositorySpec<EventSourcedHouse, EventStoreBasedRepository<EventSourcedHouse, String>> {
+    public EventSourcedRepositoryWithConcurrentUowSpec() {
+        super(
+                new EventStoreBasedRepository<EventSourcedHouse, String>(new InMemoryEventStore(), Optional.of(concurrentUowSupplier())) {},
+                new EventSourcedHouse("100500 Awesome str., Chicago, USA", 100500, "Alexey Balchunas")
+        );
+    }
+
+    @Test
+    public void concurrentChanges() {
+        ExecutorService workers = Executors.newFixedThreadPool(8);
+        List<String> addresses = IntStream.range(0, 100).mapToObj(i -> i + " Concurrent str., Chicago, USA").collect(toList());
+        try {
+            CompletableFuture.allOf(addresses.stream()
+                .map(address -> CompletableFuture.runAsync(() -> {
+                    houseRepository.save(new EventSourcedHouse(address, 100, "Alexey Balchunas"));
+                    if (address.startsWith("1")) {
+                        houseRepository.remove(address);
+                    }
+                }, workers))
+                .toArray(CompletableFuture[]::new)
+            ).join();
+            // the changes are visible to every thread before the flush
+            addresses.forEach(address -> assertEquals(!address.startsWith("1"), houseRepository.get(address).isPresent()));
+
+            houseRepository.flush();
+            addresses.forEach(address -> assertEquals(!address.startsWith("1"), houseRepository.contains(address)));
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private static Supplier<UnitOfWork> concurrentUowSupplier() {
+        UnitOfWork uow = new ConcurrentUnitOfWork();
+        return () -> uow;
+    }
+}
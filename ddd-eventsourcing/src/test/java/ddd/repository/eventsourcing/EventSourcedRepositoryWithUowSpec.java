@@ -1,10 +1,26 @@
 package ddd.repository.eventsourcing;
 
+import eventstore.Event;
+import eventstore.EventStore;
 import eventstore.impl.InMemoryEventStore;
 import ddd.repository.AbstractHouseRepositorySpec;
+import ddd.repository.FlushException;
 import ddd.repository.eventsourcing.example.domain.EventSourcedHouse;
 import ddd.repository.UnitOfWork;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class EventSourcedRepositoryWithUowSpec
     extends AbstractHouseRepositorySpec<EventSourcedHouse, EventStoreBasedRepository<EventSourcedHouse, String>> {
@@ -14,4 +30,101 @@ public class EventSourcedRepositoryWithUowSpec
                 new EventSourcedHouse("100500 Awesome str., Chicago, USA", 100500, "Alexey Balchunas")
         );
     }
+
+    @Test
+    public void findAllByIdsOnce() {
+        houseRepository.save(awesomeHouse);
+        houseRepository.flush();
+        List<String> ids = Arrays.asList(awesomeHouse.getAddress(), "Nowhere", awesomeHouse.getAddress());
+        // the first time the house is loaded, the second time it is in the unit of work already
+        assertEquals(1, houseRepository.findAllByIds(ids).size());
+        assertEquals(1, houseRepository.findAllByIds(ids).size());
+    }
+
+    @Test
+    public void flushConcurrently() {
+        ExecutorService flushers = Executors.newFixedThreadPool(4);
+        UnitOfWork uow = new UnitOfWork(flushers);
+        List<String> appended = Collections.synchronizedList(new ArrayList<>());
+        EventStoreBasedRepository<EventSourcedHouse, String> first  = new FirstRepository(recording("first", appended, false), uow);
+        EventStoreBasedRepository<EventSourcedHouse, String> second = new SecondRepository(recording("second", appended, false), uow);
+        uow.flushAfter(FirstRepository.class, SecondRepository.class);
+
+        first.save(awesomeHouse);
+        second.save(awesomeHouse);
+        uow.flush();
+        assertEquals(Arrays.asList("second", "first"), appended);
+        assertTrue(first.contains(awesomeHouse.getAddress()));
+        assertTrue(second.contains(awesomeHouse.getAddress()));
+
+        // both failures are reported, while the dependent repository is not flushed at all
+        UnitOfWork failing = new UnitOfWork(flushers).flushAfter(ThirdRepository.class, FirstRepository.class);
+        new FirstRepository(recording("first", appended, true), failing).save(awesomeHouse);
+        new SecondRepository(recording("second", appended, true), failing).save(awesomeHouse);
+        new ThirdRepository(recording("third", appended, false), failing).save(awesomeHouse);
+        try {
+            failing.flush();
+            fail("The failures should be reported");
+        } catch (FlushException e) {
+            assertEquals(new HashSet<>(Arrays.asList(FirstRepository.class, SecondRepository.class)), e.getFailures().keySet());
+            assertEquals(Collections.singleton(ThirdRepository.class), e.getSkipped());
+        } finally {
+            flushers.shutdown();
+        }
+    }
+
+    @Test
+    public void flushConcurrentlyWithThreadLocalUow() {
+        ExecutorService flushers = Executors.newFixedThreadPool(4);
+        ThreadLocal<UnitOfWork> threadUow = new ThreadLocal<>();
+        threadUow.set(new UnitOfWork(flushers));
+        List<String> appended = Collections.synchronizedList(new ArrayList<>());
+        EventStoreBasedRepository<EventSourcedHouse, String> first  = new FirstRepository(recording("first", appended, false), threadUow::get);
+        EventStoreBasedRepository<EventSourcedHouse, String> second = new SecondRepository(recording("second", appended, false), threadUow::get);
+        try {
+            first.save(awesomeHouse);
+            second.save(awesomeHouse);
+            // the flushing threads have no unit of work of their own, but write the changes of the flushed one
+            threadUow.get().flush();
+            assertEquals(new HashSet<>(Arrays.asList("first", "second")), new HashSet<>(appended));
+            assertTrue(first.contains(awesomeHouse.getAddress()));
+            assertTrue(second.contains(awesomeHouse.getAddress()));
+        } finally {
+            threadUow.remove();
+            flushers.shutdown();
+        }
+    }
+
+    private static EventStore recording(String name, List<String> appended, boolean failing) {
+        return new InMemoryEventStore() {
+            @Override
+            public void append(String streamName, long currentVersion, List<? extends Event> newEvents) {
+                if (failing) {
+                    throw new IllegalStateException("The " + name + " store is down");
+                }
+                try {
+                    // give the other repositories a chance to be flushed first
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                appended.add(name);
+                super.append(streamName, currentVersion, newEvents);
+            }
+        };
+    }
+
+    private static class FirstRepository extends EventStoreBasedRepository<EventSourcedHouse, String> {
+        FirstRepository(EventStore eventStore, UnitOfWork uow) { super(eventStore, Optional.of(() -> uow)); }
+        FirstRepository(EventStore eventStore, Supplier<UnitOfWork> uow) { super(eventStore, Optional.of(uow)); }
+    }
+
+    private static class SecondRepository extends EventStoreBasedRepository<EventSourcedHouse, String> {
+        SecondRepository(EventStore eventStore, UnitOfWork uow) { super(eventStore, Optional.of(() -> uow)); }
+        SecondRepository(EventStore eventStore, Supplier<UnitOfWork> uow) { super(eventStore, Optional.of(uow)); }
+    }
+
+    private static class ThirdRepository extends EventStoreBasedRepository<EventSourcedHouse, String> {
+        ThirdRepository(EventStore eventStore, UnitOfWork uow) { super(eventStore, Optional.of(() -> uow)); }
+    }
 }
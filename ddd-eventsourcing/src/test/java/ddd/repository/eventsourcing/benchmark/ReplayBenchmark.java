@@ -0,0 +1,72 @@
+package ddd.repository.eventsourcing.benchmark;
+
+import ddd.repository.eventsourcing.EventStoreBasedRepository;
+import ddd.repository.eventsourcing.example.domain.EventSourcedHouse;
+import ddd.repository.eventsourcing.example.domain.HouseBought;
+import eventstore.Event;
+import eventstore.PayloadEvent;
+import eventstore.impl.InMemoryEventStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how fast an aggregate is rehydrated from its events, and how fast the events are applied to a new one,
+ * which is mostly the dispatch of the events to the <b>when</b> methods. Run it with <code>sbt jmh:run</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+
+    private static final String ADDRESS = "100500 Awesome str., Chicago, USA";
+
+    @Param({"100", "10000"})
+    public int events;
+
+    private EventStoreBasedRepository<EventSourcedHouse, String> repository;
+    private String[] owners;
+
+    @Setup
+    public void setUp() {
+        InMemoryEventStore eventStore = new InMemoryEventStore();
+        repository = new EventStoreBasedRepository<EventSourcedHouse, String>(eventStore, Optional.empty()) {};
+        EventSourcedHouse house = repository.save(new EventSourcedHouse(ADDRESS, 100500, "Alexey Balchunas"));
+        List<Event> changes = new ArrayList<>(events);
+        owners = new String[events];
+        for (int i = 1; i < events; ++i) {
+            owners[i] = "Owner " + i;
+            changes.add(new PayloadEvent<>(new HouseBought(owners[i])));
+        }
+        eventStore.append("EventSourcedHouse" + ADDRESS, house.getUnmutatedVersion(), changes);
+    }
+
+    @Benchmark
+    public EventSourcedHouse replay() {
+        return repository.get(ADDRESS).get();
+    }
+
+    @Benchmark
+    public EventSourcedHouse apply() {
+        EventSourcedHouse house = new EventSourcedHouse(ADDRESS, 100500, "Alexey Balchunas");
+        for (int i = 1; i < events; ++i) {
+            house = (EventSourcedHouse) house.buy(owners[i]);
+        }
+        return house;
+    }
+}
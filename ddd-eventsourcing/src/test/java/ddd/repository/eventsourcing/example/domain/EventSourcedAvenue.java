@@ -0,0 +1,28 @@
+package ddd.repository.eventsourcing.example.domain;
+
+import ddd.repository.eventsourcing.IdentifiedEventSourcedEntity;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mutable entity, whose 2-parameter <b>when</b> method adds to the list of the houses of the shallow clone, i.e. to
+ * the list shared with the original entity.
+ */
+public class EventSourcedAvenue extends IdentifiedEventSourcedEntity<EventSourcedAvenue, String> {
+
+    public final String name;
+    public final List<String> addresses = new ArrayList<>();
+
+    public EventSourcedAvenue(StreetBuilt streetBuilt) {
+        super(streetBuilt.name, streetBuilt);
+        this.name = streetBuilt.name;
+    }
+
+    public EventSourcedAvenue build(String address) {
+        return apply(new HouseBuilt(address, 0, null));
+    }
+
+    protected void when(HouseBuilt event, EventSourcedAvenue cloned) {
+        cloned.addresses.add(event.address);
+    }
+}
@@ -0,0 +1,28 @@
+package ddd.repository.eventsourcing.example.domain;
+
+import ddd.repository.eventsourcing.IdentifiedEventSourcedEntity;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mutable entity, whose <b>when</b> method changes its list of the houses in place.
+ */
+public class EventSourcedStreet extends IdentifiedEventSourcedEntity<EventSourcedStreet, String> {
+
+    public final String name;
+    public final List<String> addresses = new ArrayList<>();
+
+    public EventSourcedStreet(StreetBuilt streetBuilt) {
+        super(streetBuilt.name, streetBuilt);
+        this.name = streetBuilt.name;
+    }
+
+    public EventSourcedStreet build(String address) {
+        return apply(new HouseBuilt(address, 0, null));
+    }
+
+    protected EventSourcedStreet when(HouseBuilt event) {
+        addresses.add(event.address);
+        return this;
+    }
+}
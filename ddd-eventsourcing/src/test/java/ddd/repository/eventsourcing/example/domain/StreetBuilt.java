@@ -0,0 +1,8 @@
+package ddd.repository.eventsourcing.example.domain;
+
+public class StreetBuilt {
+    public final String name;
+    public StreetBuilt(String name) {
+        this.name = name;
+    }
+}
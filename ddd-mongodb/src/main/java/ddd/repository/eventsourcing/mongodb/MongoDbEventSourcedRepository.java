@@ -9,14 +9,19 @@ import com.mongodb.MongoCommandException;
 import ddd.repository.IdentifiedEntity;
 import ddd.repository.eventsourcing.EventSourcedEntity;
 import ddd.repository.eventsourcing.EventSourcedRepository;
+import ddd.repository.eventsourcing.EventSourcedRepositoryOptions;
 import eventstore.EventStore;
 import eventstore.mongodb.MongoDbEventStore;
 import eventstore.util.collection.Collections;
 import eventstore.util.mongodb.GsonMongoDbObjectMapper;
+import eventstore.util.mongodb.KeysetPaging;
 import eventstore.util.mongodb.Migration;
 import eventstore.util.DbObjectMapper;
 import java.lang.reflect.Field;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -30,25 +35,51 @@ public abstract class MongoDbEventSourcedRepository<T extends EventSourcedEntity
     extends EventSourcedRepository<T, K, DBObject, Object> {
 
     protected DBCollection snapshots;
+    // historical snapshots keyed by both the id and the version, see snapshotHistoryInterval
+    protected DBCollection snapshotHistory;
 
     public MongoDbEventSourcedRepository(DBCollection snapshots, EventStore eventStore, DbObjectMapper<DBObject> mapper) {
+        this(snapshots, eventStore, mapper, new EventSourcedRepositoryOptions<>());
+    }
+
+    public MongoDbEventSourcedRepository(
+            DBCollection snapshots,
+            EventStore eventStore,
+            DbObjectMapper<DBObject> mapper,
+            EventSourcedRepositoryOptions<K, DBObject> options) {
+        super(options);
         init(snapshots, eventStore, mapper);
     }
 
     public MongoDbEventSourcedRepository(DB db, EventStore eventStore) {
+        this(db, eventStore, new EventSourcedRepositoryOptions<>());
+    }
+
+    public MongoDbEventSourcedRepository(DB db, EventStore eventStore, EventSourcedRepositoryOptions<K, DBObject> options) {
+        super(options);
         init(db.getCollection(entityClass.getSimpleName()), eventStore, new GsonMongoDbObjectMapper());
     }
 
     public MongoDbEventSourcedRepository(DB db) {
+        this(db, new EventSourcedRepositoryOptions<>());
+    }
+
+    public MongoDbEventSourcedRepository(DB db, EventSourcedRepositoryOptions<K, DBObject> options) {
+        super(options);
         init(db.getCollection(entityClass.getSimpleName()), new MongoDbEventStore(db.getCollection(entityClass.getSimpleName() + "Events")), new GsonMongoDbObjectMapper());
     }
 
     protected void init(DBCollection snapshots, EventStore eventStore, DbObjectMapper<DBObject> mapper) {
         init(eventStore, mapper);
-        this.snapshots = snapshots;
-        this.mapper    = mapper;
+        this.snapshots       = snapshots;
+        this.snapshotHistory = snapshots.getDB().getCollection(snapshots.getName() + "History");
+        this.mapper          = mapper;
         Migration.migrate(() -> {
             snapshots.createIndex(new BasicDBObject("id", 1), new BasicDBObject("unique", true));
+            snapshotHistory.createIndex(
+                    new BasicDBObject("id", 1).append("_version", -1),
+                    new BasicDBObject("unique", true)
+            );
             migrate();
         });
     }
@@ -84,14 +115,55 @@ public abstract class MongoDbEventSourcedRepository<T extends EventSourcedEntity
     @Override
     protected Optional<DBObject> doGet(Object id) { return Optional.empty(); }
 
+    @Override
+    protected Map<String, ?> attributes(DBObject dbObject) {
+        return dbObject.toMap();
+    }
+
     @Override
     protected Optional<T> snapshot(K id, long before) {
         DBObject dbObject = snapshots.findOne(
             new BasicDBObject("_version", new BasicDBObject("$lte", before < 0 ? Long.MAX_VALUE : before)).append("id", toDbId(id))
         );
+        if (dbObject == null && before >= 0) {
+            return historicalSnapshot(id, before);
+        }
         return Optional.ofNullable(deserialize(dbObject));
     }
 
+    @Override
+    protected void doSaveHistory(K id, long version, DBObject dbObject) {
+        DBObject historical = new BasicDBObject(dbObject.toMap());
+        historical.removeField("_id");
+        snapshotHistory.update(
+                new BasicDBObject("id", toDbId(id)).append("_version", version),
+                historical,
+                true,
+                false
+        );
+    }
+
+    @Override
+    protected Optional<DBObject> doGetHistory(K id, long before) {
+        return Collections.stream((Iterator<DBObject>) snapshotHistory.find(
+                    new BasicDBObject("id", toDbId(id)).append("_version", new BasicDBObject("$lte", before))
+                ).sort(new BasicDBObject("_version", -1)).limit(1)
+        ).findFirst();
+    }
+
+    @Override
+    protected void doRemoveHistory(K id, long before) {
+        snapshotHistory.remove(new BasicDBObject("id", toDbId(id)).append("_version", new BasicDBObject("$lt", before)));
+    }
+
+    @Override
+    protected Map<K, T> snapshots(Collection<K> ids) {
+        List<Object> dbIds = ids.stream().map(this::toDbId).collect(Collectors.toList());
+        return Collections.stream(
+                (Iterator<DBObject>) snapshots.find(new BasicDBObject("id", new BasicDBObject("$in", dbIds)))
+        ).map(e -> deserialize(e)).collect(Collectors.toMap(e -> e.getId(), e -> e));
+    }
+
     @Override
     protected Object toDbId(K id) { return id; }
 
@@ -119,6 +191,16 @@ public abstract class MongoDbEventSourcedRepository<T extends EventSourcedEntity
         ).map(e -> deserialize(e));
     }
 
+    /**
+     * Returns the entities, whose snapshots match the given query, as a lazy stream sorted by the identifiers. Unlike
+     * {@link #find(DBObject, DBObject, int, int)}, the snapshots are read page by page by the range of the identifiers,
+     * so that every page costs the same. The entities are as of their snapshots, and bypass the unit of work.
+     */
+    protected Stream<T> stream(DBObject query, int pageSize) {
+        return KeysetPaging.stream(snapshots, query, "id", pageSize, executor)
+            .map(dbObject -> detached(() -> deserialize(dbObject)));
+    }
+
     protected Optional<T> findOne(DBObject query) {
         return Optional.ofNullable(snapshots.findOne(query)).map((e) -> deserialize(e));
     }
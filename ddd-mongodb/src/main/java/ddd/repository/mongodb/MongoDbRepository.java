@@ -1,6 +1,9 @@
 package ddd.repository.mongodb;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
@@ -9,22 +12,32 @@ import com.mongodb.MongoCommandException;
 import ddd.repository.AbstractRepository;
 import ddd.repository.IdentifiedEntity;
 import ddd.repository.PersistenceOrientedRepository;
+import ddd.repository.RepositoryOptions;
 import ddd.repository.UnitOfWork;
 import ddd.repository.exception.OptimisticLockingException;
 import eventstore.util.DbObjectMapper;
+import eventstore.util.IoExecutors;
 import eventstore.util.RuntimeGeneric;
 import eventstore.util.collection.Collections;
 import eventstore.util.mongodb.GsonMongoDbObjectMapper;
+import eventstore.util.mongodb.KeysetPaging;
 import eventstore.util.mongodb.Migration;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import static java.util.stream.Collectors.toList;
+
 /**
  * Simple MongoDB based repository. It just does the POJO mapping and puts it into the DB.
  */
@@ -33,14 +46,32 @@ public abstract class MongoDbRepository<T extends IdentifiedEntity<K>, K>
     extends AbstractRepository<T, K, DBObject, Object> {
 
     protected DBCollection entityCollection;
+    /**
+     * Executor prefetching the pages of {@link #streamAll(int)}.
+     */
+    protected final Executor executor;
 
     public MongoDbRepository(DBCollection entityCollection, DbObjectMapper<DBObject> mapper, Optional<Supplier<UnitOfWork>> uow) {
-        super(mapper, uow);
+        this(entityCollection, mapper, uow, new RepositoryOptions());
+    }
+
+    public MongoDbRepository(
+            DBCollection entityCollection,
+            DbObjectMapper<DBObject> mapper,
+            Optional<Supplier<UnitOfWork>> uow,
+            RepositoryOptions options) {
+        super(mapper, uow, options);
+        this.executor = executor(options);
         init(entityCollection, mapper);
     }
 
     public MongoDbRepository(DB db, DbObjectMapper<DBObject> mapper, Optional<Supplier<UnitOfWork>> uow) {
-        super(mapper, uow);
+        this(db, mapper, uow, new RepositoryOptions());
+    }
+
+    public MongoDbRepository(DB db, DbObjectMapper<DBObject> mapper, Optional<Supplier<UnitOfWork>> uow, RepositoryOptions options) {
+        super(mapper, uow, options);
+        this.executor = executor(options);
         init(db.getCollection(((Class<T>) getClassArgument(0)).getSimpleName()), mapper);
     }
 
@@ -48,6 +79,14 @@ public abstract class MongoDbRepository<T extends IdentifiedEntity<K>, K>
         this(db, new GsonMongoDbObjectMapper(), uow);
     }
 
+    public MongoDbRepository(DB db, Optional<Supplier<UnitOfWork>> uow, RepositoryOptions options) {
+        this(db, new GsonMongoDbObjectMapper(), uow, options);
+    }
+
+    private static Executor executor(RepositoryOptions options) {
+        return options.getExecutor().orElseGet(() -> IoExecutors.newPool("MongoDbRepository"));
+    }
+
     protected void init(DBCollection entityCollection, DbObjectMapper<DBObject> mapper) {
         this.entityCollection = entityCollection;
 
@@ -65,6 +104,42 @@ public abstract class MongoDbRepository<T extends IdentifiedEntity<K>, K>
     @Override
     protected Object toDbId(K id) { return id; }
 
+    /**
+     * Reads the entities with a single $in query on the unique index of the identifiers.
+     */
+    @Override
+    protected Collection<DBObject> doGetAll(List<K> ids) {
+        return entityCollection.find(
+            new BasicDBObject("id", new BasicDBObject("$in", ids.stream().map(this::toDbId).collect(toList())))
+        ).toArray();
+    }
+
+    /**
+     * Returns all the entities, see {@link #streamAll(int)}.
+     */
+    public Stream<T> streamAll() {
+        return streamAll(DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Returns all the entities as a lazy stream, which reads them page by page with the keyset pagination, so that the
+     * whole repository could be walked with the bounded memory. This is intended for the batch jobs, so that the
+     * entities bypass the unit of work, i.e. neither are registered in it, nor reflect its changes.
+     * @param pageSize maximum amount of the entities read at once
+     */
+    public Stream<T> streamAll(int pageSize) {
+        return stream(new BasicDBObject(), pageSize);
+    }
+
+    /**
+     * Returns the entities matching the given query as a lazy stream sorted by the identifiers, which reads them page
+     * by page, see {@link #streamAll(int)}.
+     */
+    protected Stream<T> stream(DBObject query, int pageSize) {
+        return KeysetPaging.stream(entityCollection, query, "id", pageSize, executor)
+            .map(dbObject -> detached(() -> deserialize(dbObject)));
+    }
+
     @Override
     public long size() { flush(); return entityCollection.count(); }
 
@@ -74,11 +149,7 @@ public abstract class MongoDbRepository<T extends IdentifiedEntity<K>, K>
             final Object id = dbObject.get("id");
             currentVersion.ifPresent((version) -> dbObject.put("version", version + 1));
             entityCollection.findAndModify(
-                    currentVersion.map(
-                        (v) -> new BasicDBObject("version", v).append("id", id)
-                    ).orElse(
-                        new BasicDBObject("id", id)
-                    ),
+                    selector(id, currentVersion),
                     null,
                     null,
                     false,
@@ -96,10 +167,90 @@ public abstract class MongoDbRepository<T extends IdentifiedEntity<K>, K>
         }
     }
 
+    /**
+     * Saves the entities with a single unordered bulk write. Every entity is upserted only if it has the expected
+     * version, otherwise the unique index of the identifiers rejects it.
+     */
+    @Override
+    protected Map<K, OptimisticLockingException> doSaveAll(List<T> entities) {
+        Map<K, OptimisticLockingException> failures = new LinkedHashMap<>();
+        if (entities.isEmpty()) {
+            return failures;
+        }
+        BulkWriteOperation operation = entityCollection.initializeUnorderedBulkOperation();
+        List<DBObject> dbObjects = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            DBObject dbObject = serialize(entity);
+            Optional<Long> currentVersion = version(entity);
+            currentVersion.ifPresent((version) -> dbObject.put("version", version + 1));
+            operation.find(selector(dbObject.get("id"), currentVersion)).upsert().replaceOne(dbObject);
+            dbObjects.add(dbObject);
+        }
+        try {
+            operation.execute();
+        } catch (BulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCode() != 11000) {
+                    throw e;
+                }
+                failures.put(
+                    entities.get(error.getIndex()).getId(),
+                    new OptimisticLockingException("The document " + dbObjects.get(error.getIndex()) + " was already changed.", e)
+                );
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    protected Map<String, ?> attributes(DBObject dbObject) {
+        return dbObject.toMap();
+    }
+
+    @Override
+    protected DBObject copy(DBObject dbObject) {
+        return (DBObject) new BasicDBObject(dbObject.toMap()).copy();
+    }
+
+    /**
+     * Updates the changed fields with $set.
+     */
+    @Override
+    protected void doUpdate(DBObject dbObject, Map<String, Object> changed, Optional<Long> currentVersion) {
+        BasicDBObject set = new BasicDBObject(changed);
+        currentVersion.ifPresent((version) -> set.put("version", version + 1));
+        BasicDBObject update = new BasicDBObject();
+        if (!set.isEmpty()) {
+            update.put("$set", set);
+        }
+        if (entityCollection.update(selector(dbObject.get("id"), currentVersion), update).getN() == 0) {
+            if (currentVersion.isPresent()) {
+                throw new OptimisticLockingException("The document " + dbObject + " was already changed.");
+            }
+            // the document was removed concurrently, so it is written as a whole
+            doSave(dbObject, currentVersion);
+        }
+    }
+
+    private DBObject selector(Object id, Optional<Long> currentVersion) {
+        return currentVersion.map(
+            (v) -> new BasicDBObject("version", v).append("id", id)
+        ).orElse(
+            new BasicDBObject("id", id)
+        );
+    }
+
     @Override
     protected boolean doRemove(Object id) {
         return entityCollection.remove(new BasicDBObject("id", id)).getN() > 0;
     }
 
+    @Override
+    protected void doRemoveAll(List<K> ids) {
+        if (!ids.isEmpty()) {
+            entityCollection.remove(new BasicDBObject("id", new BasicDBObject("$in", ids.stream().map(this::toDbId).collect(toList()))));
+        }
+    }
+
     protected void migrate() {}
 }
@@ -1,15 +1,168 @@
 package ddd.repository.eventsourcing.mongodb;
 
-import com.github.fakemongo.Fongo;
+import com.mongodb.BulkWriteFongo;
 import ddd.repository.example.domain.House;
 import ddd.repository.eventsourcing.example.domain.EventSourcedHouse;
+import ddd.repository.eventsourcing.example.domain.HouseBuilt;
+import ddd.repository.eventsourcing.example.domain.HouseDestroyed;
 import ddd.repository.AbstractHouseRepositorySpec;
+import ddd.repository.eventsourcing.EventSourcedRepositoryOptions;
+import ddd.repository.eventsourcing.ManualClock;
+import com.mongodb.DB;
+import com.mongodb.DBObject;
+import eventstore.PayloadEvent;
+import eventstore.mongodb.MongoDbEventStore;
+import eventstore.util.mongodb.GsonMongoDbObjectMapper;
+import eventstore.util.collection.LruCache;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
 
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@SuppressWarnings("unchecked")
 public class MongoDbEventSourcedRepositorySpec extends AbstractHouseRepositorySpec<EventSourcedHouse, MongoDbEventSourcedRepository<EventSourcedHouse, String>> {
     public MongoDbEventSourcedRepositorySpec() {
         super(
-                new MongoDbEventSourcedRepository<EventSourcedHouse, String>(new Fongo("Mongo").getDB("Mongo")){},
+                new MongoDbEventSourcedRepository<EventSourcedHouse, String>(new BulkWriteFongo("Mongo").getDB("Mongo")){},
                 new EventSourcedHouse("100500 Awesome str., Chicago, USA", 100500, "Alexey Balchunas")
         );
     }
+
+    @Test
+    public void snapshotHistory() {
+        MongoDbEventSourcedRepository<EventSourcedHouse, String> repository =
+            new MongoDbEventSourcedRepository<EventSourcedHouse, String>(
+                new BulkWriteFongo("History").getDB("History"),
+                new EventSourcedRepositoryOptions<String, DBObject>().withSnapshotHistory(2, 2)
+            ){};
+        EventSourcedHouse house = repository.save(awesomeHouse);
+        for (int version = 2; version <= 10; ++version) {
+            house = repository.save((EventSourcedHouse) house.buy("Owner " + version));
+        }
+        assertEquals("Owner 10", repository.get(house.getAddress(), -1).get().getOwner());
+        assertEquals("Owner 7", repository.get(house.getAddress(), 7).get().getOwner());
+        assertEquals("Owner 6", repository.get(house.getAddress(), 6).get().getOwner());
+        assertEquals(awesomeHouse.getOwner(), repository.get(house.getAddress(), 1).get().getOwner());
+        // only the snapshots of the versions 6, 8 and 10 are kept
+        assertEquals(Arrays.asList(6L, 8L, 10L), 
+            ((List<Number>) repository.snapshotHistory.distinct("_version")).stream().map(Number::longValue).collect(toList()));
+    }
+
+    @Test
+    public void snapshotVersionHintsOnSingleThread() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        MongoDbEventSourcedRepository<EventSourcedHouse, String> repository =
+            new MongoDbEventSourcedRepository<EventSourcedHouse, String>(
+                new BulkWriteFongo("Single").getDB("Single"),
+                new EventSourcedRepositoryOptions<String, DBObject>()
+                    .withSnapshotVersionHints(new LruCache<>(100))
+                    .withExecutor(single)
+            ){};
+        try {
+            List<String> addresses = Arrays.asList("1 Single str.", "2 Single str.", "3 Single str.");
+            addresses.forEach(address -> repository.save(new EventSourcedHouse(address, 100, "Alexey Balchunas")));
+            // the loads run on the only thread of the executor, so they must not wait for the snapshots queued behind
+            assertEquals(3, CompletableFuture.supplyAsync(() -> repository.findAllByIds(addresses).size()).get(10, TimeUnit.SECONDS).intValue());
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void snapshotVersionHints() {
+        LruCache<String, Long> hints = new LruCache<>(100);
+        MongoDbEventSourcedRepository<EventSourcedHouse, String> repository =
+            new MongoDbEventSourcedRepository<EventSourcedHouse, String>(
+                new BulkWriteFongo("Hints").getDB("Hints"),
+                new EventSourcedRepositoryOptions<String, DBObject>().withSnapshotVersionHints(hints)
+            ){};
+        EventSourcedHouse house = repository.save(awesomeHouse);
+        house = repository.save((EventSourcedHouse) house.buy("Stepan Stepanov"));
+        house = repository.save((EventSourcedHouse) house.buy("Ivan Ivanov"));
+        assertEquals(Optional.of(3L), hints.get(house.getAddress()));
+        assertEquals("Ivan Ivanov", repository.get(house.getAddress()).get().getOwner());
+
+        // the speculatively read events older than the snapshot are skipped
+        hints.put(house.getAddress(), 1L);
+        assertEquals("Ivan Ivanov", repository.get(house.getAddress()).get().getOwner());
+        assertEquals(3, repository.get(house.getAddress()).get().getUnmutatedVersion());
+
+        // the snapshot is older than expected, so the missing events are read again
+        hints.put(house.getAddress(), 100L);
+        assertEquals("Ivan Ivanov", repository.get(house.getAddress()).get().getOwner());
+        assertEquals(Optional.of(3L), hints.get(house.getAddress()));
+
+        repository.remove(house.getAddress());
+        assertFalse(repository.get(house.getAddress()).isPresent());
+        assertFalse(hints.get(house.getAddress()).isPresent());
+    }
+
+    @Test
+    public void saveAll() {
+        EventSourcedHouse house = houseRepository.save(awesomeHouse);
+        houseRepository.save((EventSourcedHouse) house.buy("Stepan Stepanov"));
+        List<EventSourcedHouse> otherHouses = Arrays.asList(
+            new EventSourcedHouse("Other str., Chicago, USA", 100, "Alexey Balchunas"),
+            (EventSourcedHouse) new EventSourcedHouse("Another str., Chicago, USA", 100, "Alexey Balchunas").buy("Ivan Ivanov")
+        );
+
+        houseRepository.saveAll(Arrays.asList((EventSourcedHouse) house.buy("Ivan Ivanov"), otherHouses.get(0), otherHouses.get(1)));
+        assertEquals("Ivan Ivanov", houseRepository.get(house.getAddress()).get().getOwner());
+        assertEquals(3, houseRepository.get(house.getAddress()).get().getUnmutatedVersion());
+        assertEquals("Alexey Balchunas", houseRepository.get(otherHouses.get(0).getAddress()).get().getOwner());
+        assertEquals("Ivan Ivanov", houseRepository.get(otherHouses.get(1).getAddress()).get().getOwner());
+        assertEquals(2, houseRepository.get(otherHouses.get(1).getAddress()).get().getUnmutatedVersion());
+    }
+
+    @Test
+    public void getAsOf() {
+        DB db = new BulkWriteFongo("Temporal").getDB("Temporal");
+        ManualClock clock = new ManualClock(1000);
+        MongoDbEventStore eventStore = new MongoDbEventStore(db.getCollection("Events"), new GsonMongoDbObjectMapper(), clock);
+        MongoDbEventSourcedRepository<EventSourcedHouse, String> repository =
+            new MongoDbEventSourcedRepository<EventSourcedHouse, String>(db, eventStore){};
+        EventSourcedHouse house = repository.save(awesomeHouse);
+        clock.set(2000);
+        repository.save((EventSourcedHouse) house.buy("Stepan Stepanov"));
+        // the events of the streams of other types are not returned by the repository, even if the house type is
+        // a prefix of them
+        eventStore.append(
+            "EventSourcedHouseHold",
+            "EventSourcedHouseHold" + awesomeHouse.getAddress(),
+            0,
+            Arrays.asList(new HouseDestroyed())
+        );
+        assertFalse(repository.getAsOf(awesomeHouse.getAddress(), 999).isPresent());
+        assertEquals(awesomeHouse.getOwner(), repository.getAsOf(awesomeHouse.getAddress(), 1999).get().getOwner());
+        assertEquals("Stepan Stepanov", repository.getAsOf(awesomeHouse.getAddress(), 2000).get().getOwner());
+        assertEquals(1, repository.eventsBetween(1001, 2001).count());
+        assertEquals(2, eventStore.eventsBetween(1001, 2001).count());
+    }
+
+    @Test
+    public void migrateStreamTypes() {
+        DB db = new BulkWriteFongo("StreamTypes").getDB("StreamTypes");
+        MongoDbEventStore eventStore = new MongoDbEventStore(db.getCollection("Events"));
+        MongoDbEventSourcedRepository<EventSourcedHouse, String> repository =
+            new MongoDbEventSourcedRepository<EventSourcedHouse, String>(db, eventStore){};
+        // the events appended before the types of the streams were stored
+        eventStore.append("EventSourcedHouse" + awesomeHouse.getAddress(), Arrays.asList(
+            new PayloadEvent(new HouseBuilt(awesomeHouse.getAddress(), 0, awesomeHouse.getOwner()))
+        ));
+        eventStore.append("EventSourcedHouseHold" + awesomeHouse.getAddress(), Arrays.asList(new HouseDestroyed()));
+        assertEquals(0, repository.eventsBetween(0, Long.MAX_VALUE).count());
+        assertEquals(2, eventStore.migrateStreamTypes(Arrays.asList("EventSourcedHouse", "EventSourcedHouseHold")));
+        assertEquals(0, eventStore.migrateStreamTypes(Arrays.asList("EventSourcedHouse", "EventSourcedHouseHold")));
+        assertEquals(1, repository.eventsBetween(0, Long.MAX_VALUE).count());
+        assertEquals(1, eventStore.eventsBetween("EventSourcedHouseHold", 0, Long.MAX_VALUE).count());
+        assertEquals(awesomeHouse.getOwner(), repository.get(awesomeHouse.getAddress()).get().getOwner());
+    }
 }
@@ -1,15 +1,130 @@
 package ddd.repository.mongodb;
 
-import com.github.fakemongo.Fongo;
+import com.mongodb.BulkWriteFongo;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 import ddd.repository.AbstractHouseRepositorySpec;
+import ddd.repository.EntityCache;
+import ddd.repository.RepositoryOptions;
 import ddd.repository.example.domain.ImmutableHouse;
+import ddd.repository.exception.BulkOptimisticLockingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static java.util.stream.Collectors.toList;
 
 public class MongoDbRepositorySpec extends AbstractHouseRepositorySpec<ImmutableHouse, MongoDbRepository<ImmutableHouse, String>> {
     public MongoDbRepositorySpec() {
         super(
-                new MongoDbRepository<ImmutableHouse, String>(new Fongo("Mongo").getDB("Mongo"), Optional.empty()){},
+                new MongoDbRepository<ImmutableHouse, String>(new BulkWriteFongo("Mongo").getDB("Mongo"), Optional.empty()){},
                 new ImmutableHouse("100500 Awesome str., Chicago, USA", 100500, "Alexey Balchunas")
         );
     }
+
+    @Test
+    public void saveAll() {
+        houseRepository.save(awesomeHouse);
+        ImmutableHouse otherHouse = new ImmutableHouse("Other str., Chicago, USA", 100, "Alexey Balchunas");
+        try {
+            houseRepository.saveAll(Arrays.asList((ImmutableHouse) awesomeHouse.buy("Stepan Stepanov"), otherHouse));
+            fail("The concurrently modified house should not be saved");
+        } catch (BulkOptimisticLockingException e) {
+            assertEquals(Collections.singleton(awesomeHouse.getAddress()), e.getFailures().keySet());
+        }
+        assertEquals(awesomeHouse.getOwner(), houseRepository.get(awesomeHouse.getAddress()).get().getOwner());
+        assertEquals(otherHouse.getOwner(), houseRepository.get(otherHouse.getAddress()).get().getOwner());
+
+        houseRepository.removeAll(Arrays.asList(awesomeHouse.getAddress(), otherHouse.getAddress()));
+        assertFalse(houseRepository.contains(awesomeHouse.getAddress()));
+        assertFalse(houseRepository.contains(otherHouse.getAddress()));
+    }
+
+    @Test
+    public void secondLevelCache() {
+        EntityCache cache = new EntityCache(100);
+        MongoDbRepository<ImmutableHouse, String> cachedRepository =
+            new MongoDbRepository<ImmutableHouse, String>(
+                houseRepository.entityCollection.getDB(),
+                Optional.empty(),
+                new RepositoryOptions().withEntityCache(cache)
+            ){};
+        cachedRepository.save(awesomeHouse);
+        assertEquals(awesomeHouse.getOwner(), cachedRepository.get(awesomeHouse.getAddress()).get().getOwner());
+        assertEquals(1, cache.size());
+
+        // the changes made behind the repository are not seen until the entry is invalidated
+        houseRepository.entityCollection.update(
+                new BasicDBObject("id", awesomeHouse.getAddress()),
+                new BasicDBObject("$set", new BasicDBObject("owner", "Stepan Stepanov"))
+        );
+        assertEquals(awesomeHouse.getOwner(), cachedRepository.get(awesomeHouse.getAddress()).get().getOwner());
+
+        ImmutableHouse bought = (ImmutableHouse) cachedRepository.get(awesomeHouse.getAddress()).get().buy("Ivan Ivanov");
+        cachedRepository.save(bought);
+        assertEquals("Ivan Ivanov", cachedRepository.get(awesomeHouse.getAddress()).get().getOwner());
+
+        cachedRepository.remove(awesomeHouse.getAddress());
+        assertFalse(cachedRepository.get(awesomeHouse.getAddress()).isPresent());
+        assertEquals(0, houseRepository.size());
+    }
+
+    @Test
+    public void secondLevelCacheKeepsCopies() {
+        List<DBObject> read = new ArrayList<>();
+        MongoDbRepository<ImmutableHouse, String> cachedRepository =
+            new MongoDbRepository<ImmutableHouse, String>(
+                houseRepository.entityCollection.getDB(),
+                Optional.empty(),
+                new RepositoryOptions().withEntityCache(new EntityCache(100))
+            ){
+                @Override
+                protected Optional<DBObject> doGet(Object id) {
+                    Optional<DBObject> dbObject = super.doGet(id);
+                    dbObject.ifPresent(read::add);
+                    return dbObject;
+                }
+
+                @Override
+                protected Collection<DBObject> doGetAll(List<String> ids) {
+                    Collection<DBObject> dbObjects = super.doGetAll(ids);
+                    read.addAll(dbObjects);
+                    return dbObjects;
+                }
+            };
+        ImmutableHouse otherHouse = new ImmutableHouse("Other str., Chicago, USA", 100, "Alexey Balchunas");
+        cachedRepository.save(awesomeHouse);
+        cachedRepository.save(otherHouse);
+        cachedRepository.get(awesomeHouse.getAddress());
+        cachedRepository.findAllByIds(Arrays.asList(awesomeHouse.getAddress(), otherHouse.getAddress()));
+        assertEquals(2, read.size());
+
+        // the objects given to the readers are not the cached ones
+        read.forEach(dbObject -> dbObject.put("owner", "Stepan Stepanov"));
+        assertEquals("Alexey Balchunas", cachedRepository.get(awesomeHouse.getAddress()).get().getOwner());
+        assertEquals("Alexey Balchunas", cachedRepository.get(otherHouse.getAddress()).get().getOwner());
+        assertEquals(2, read.size());
+    }
+
+    @Test
+    public void streamAll() {
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < 7; ++i) {
+            addresses.add(houseRepository.save(new ImmutableHouse("Street " + i + ", Chicago, USA", i, "Alexey Balchunas")).getAddress());
+        }
+        assertEquals(addresses, houseRepository.streamAll(3).map(ImmutableHouse::getAddress).collect(toList()));
+        assertEquals(
+            Arrays.asList(addresses.get(5), addresses.get(6)),
+            houseRepository.stream(new BasicDBObject("priceInCents", new BasicDBObject("$gte", 5)), 1)
+                .map(ImmutableHouse::getAddress)
+                .collect(toList())
+        );
+    }
 }
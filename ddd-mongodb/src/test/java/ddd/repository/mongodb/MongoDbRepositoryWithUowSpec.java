@@ -1,16 +1,133 @@
 package ddd.repository.mongodb;
 
-import com.github.fakemongo.Fongo;
+import com.mongodb.BulkWriteFongo;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 import ddd.repository.AbstractHouseRepositorySpec;
+import ddd.repository.RepositoryOptions;
 import ddd.repository.UnitOfWork;
 import ddd.repository.example.domain.ImmutableHouse;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Optional;
+import java.util.function.Supplier;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class MongoDbRepositoryWithUowSpec extends AbstractHouseRepositorySpec<ImmutableHouse, MongoDbRepository<ImmutableHouse, String>> {
     public MongoDbRepositoryWithUowSpec() {
         super(
-                new MongoDbRepository<ImmutableHouse, String>(new Fongo("Mongo").getDB("Mongo"), Optional.of(uowSupplier())){},
+                new MongoDbRepository<ImmutableHouse, String>(new BulkWriteFongo("Mongo").getDB("Mongo"), Optional.of(uowSupplier())){},
                 new ImmutableHouse("100500 Awesome str., Chicago, USA", 100500, "Alexey Balchunas")
         );
     }
+
+    @Test
+    public void dirtyChecking() {
+        Supplier<UnitOfWork> uow = uowSupplier();
+        MongoDbRepository<ImmutableHouse, String> checkingRepository =
+            new MongoDbRepository<ImmutableHouse, String>(
+                houseRepository.entityCollection.getDB(),
+                Optional.of(uow),
+                new RepositoryOptions().withDirtyChecking(true)
+            ){};
+        checkingRepository.save(awesomeHouse);
+        checkingRepository.flush();
+        BasicDBObject selector = new BasicDBObject("id", awesomeHouse.getAddress());
+        // the field unknown to the entity survives only the partial updates
+        houseRepository.entityCollection.update(selector, new BasicDBObject("$set", new BasicDBObject("marker", true)));
+
+        ImmutableHouse house = checkingRepository.get(awesomeHouse.getAddress()).get();
+        checkingRepository.save((ImmutableHouse) house.buy(house.getOwner()));
+        checkingRepository.flush();
+        DBObject stored = houseRepository.entityCollection.findOne(selector);
+        assertEquals(1L, stored.get("version"));
+        assertEquals(true, stored.get("marker"));
+
+        house = checkingRepository.get(awesomeHouse.getAddress()).get();
+        checkingRepository.save((ImmutableHouse) house.buy("Stepan Stepanov"));
+        checkingRepository.flush();
+        stored = houseRepository.entityCollection.findOne(selector);
+        assertEquals("Stepan Stepanov", stored.get("owner"));
+        assertEquals(2L, stored.get("version"));
+        assertEquals(true, stored.get("marker"));
+        assertEquals("Stepan Stepanov", checkingRepository.get(awesomeHouse.getAddress()).get().getOwner());
+        uow.get().end();
+    }
+
+    @Test
+    public void dirtyCheckingComparesValues() {
+        Supplier<UnitOfWork> uow = uowSupplier();
+        MongoDbRepository<ImmutableHouse, String> checkingRepository =
+            new MongoDbRepository<ImmutableHouse, String>(
+                houseRepository.entityCollection.getDB(),
+                Optional.of(uow),
+                new RepositoryOptions().withDirtyChecking(true)
+            ){};
+        checkingRepository.save(new ImmutableHouse(awesomeHouse.getAddress(), 100500, "Aa"));
+        checkingRepository.flush();
+
+        // the owners have the same hash code
+        ImmutableHouse house = checkingRepository.get(awesomeHouse.getAddress()).get();
+        checkingRepository.save((ImmutableHouse) house.buy("BB"));
+        checkingRepository.flush();
+        assertEquals("BB", houseRepository.entityCollection.findOne(new BasicDBObject("id", awesomeHouse.getAddress())).get("owner"));
+        uow.get().end();
+    }
+
+    @Test
+    public void dirtyCheckingComparesStoredNumbers() {
+        Supplier<UnitOfWork> uow = uowSupplier();
+        MongoDbRepository<ImmutableHouse, String> checkingRepository =
+            new MongoDbRepository<ImmutableHouse, String>(
+                houseRepository.entityCollection.getDB(),
+                Optional.of(uow),
+                new RepositoryOptions().withDirtyChecking(true)
+            ){};
+        checkingRepository.save(awesomeHouse);
+        checkingRepository.flush();
+        BasicDBObject selector = new BasicDBObject("id", awesomeHouse.getAddress());
+        // the stored number is read as an integer, while the entity serializes a long
+        houseRepository.entityCollection.update(selector, new BasicDBObject("$set", new BasicDBObject("priceInCents", 100500)));
+
+        ImmutableHouse house = checkingRepository.get(awesomeHouse.getAddress()).get();
+        checkingRepository.save((ImmutableHouse) house.buy(house.getOwner()));
+        checkingRepository.flush();
+        assertEquals(1L, houseRepository.entityCollection.findOne(selector).get("version"));
+
+        // the cleared attribute is written as null
+        house = checkingRepository.get(awesomeHouse.getAddress()).get();
+        checkingRepository.save((ImmutableHouse) house.buy(null));
+        checkingRepository.flush();
+        DBObject stored = houseRepository.entityCollection.findOne(selector);
+        assertEquals(2L, stored.get("version"));
+        assertTrue(stored.containsField("owner"));
+        assertEquals(null, stored.get("owner"));
+        uow.get().end();
+    }
+
+    @Test
+    public void findAllByIdsWithinUow() {
+        ImmutableHouse otherHouse = new ImmutableHouse("Other str., Chicago, USA", 100, "Alexey Balchunas");
+        ImmutableHouse removedHouse = new ImmutableHouse("Removed str., Chicago, USA", 100, "Alexey Balchunas");
+        houseRepository.saveAll(Arrays.asList(awesomeHouse, otherHouse, removedHouse));
+        houseRepository.flush();
+
+        ImmutableHouse cached = houseRepository.get(awesomeHouse.getAddress()).get();
+        houseRepository.remove(removedHouse.getAddress());
+        // every entity is found once, whether it is registered or read
+        Collection<ImmutableHouse> found = houseRepository.findAllByIds(Arrays.asList(
+            awesomeHouse.getAddress(), otherHouse.getAddress(), removedHouse.getAddress(), "Nowhere",
+            awesomeHouse.getAddress(), otherHouse.getAddress()
+        ));
+        assertEquals(2, found.size());
+        assertTrue(found.stream().anyMatch(house -> house == cached));
+        // the read entities are registered in the unit of work
+        ImmutableHouse read = found.stream().filter(house -> house != cached).findFirst().get();
+        assertSame(read, houseRepository.get(otherHouse.getAddress()).get());
+        houseRepository.flush();
+    }
 }
@@ -2,6 +2,7 @@ package eventstore;
 
 import eventstore.util.DbObjectMapper;
 import eventstore.util.collection.Collections;
+import java.time.Clock;
 import java.util.Iterator;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -9,9 +10,16 @@ import java.util.stream.Stream;
 public abstract class AbstractEventStore<T> implements EventStore {
 
     protected final DbObjectMapper<T> mapper;
+    // clock the appended events are stamped with
+    protected final Clock clock;
 
     protected AbstractEventStore(DbObjectMapper<T> mapper) {
+        this(mapper, Clock.systemUTC());
+    }
+
+    protected AbstractEventStore(DbObjectMapper<T> mapper, Clock clock) {
         this.mapper = mapper;
+        this.clock  = clock;
     }
 
     @Override
@@ -24,8 +24,20 @@ public abstract class Event<T extends Event> implements CloneWith<T> {
      * @return same event, but with the version of the corresponding stream set
      */
     public T occurred(long streamVersion) {
+        return occurred(streamVersion, System.currentTimeMillis());
+    }
+
+    /**
+     * Return same event, but with the version of the corresponding stream and the time of the event set.
+     * This method is intended to be used by the event store implementations, which read their clock once for all the
+     * appended events.
+     * @param streamVersion version of the corresponding event stream
+     * @param occurredOn time of the event
+     * @return same event, but with the version of the corresponding stream and the time of the event set
+     */
+    public T occurred(long streamVersion, long occurredOn) {
         return cloneWith(e -> {
-            e.occurredOn    = System.currentTimeMillis();
+            e.occurredOn    = occurredOn;
             e.streamVersion = streamVersion;
         });
     }
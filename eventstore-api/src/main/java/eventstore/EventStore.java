@@ -2,6 +2,7 @@ package eventstore;
 
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -37,6 +38,41 @@ public interface EventStore extends AutoCloseable {
      * @throws ConcurrentModificationException if the caller's version != the actual stream version
      */
     void append(String streamName, long currentVersion, List<? extends Event> events);
+    /**
+     * Same as {@link #append(String, long, List)}, but the events are stored along with the type of the stream, so
+     * that they could be found by {@link #eventsBetween(String, long, long)}. The type is kept apart from the name of
+     * the stream, so that the names do not need any format. The stores, which do not keep the types, ignore it.
+     * @param streamType type of the stream, e.g. the type of the entity the stream belongs to
+     * @param streamName name of the stream is to be appended to
+     * @param currentVersion current caller's version
+     * @param events list of events is to be appended
+     * @throws ConcurrentModificationException if the caller's version != the actual stream version
+     */
+    default void append(String streamType, String streamName, long currentVersion, List<? extends Event> events) {
+        append(streamName, currentVersion, events);
+    }
+    /**
+     * Appends new events to many streams, checking the current version of every stream just like
+     * {@link #append(String, long, List)}. The streams are appended independently, i.e. a conflict in one stream does
+     * not prevent the other ones from being appended. Override it, if the store can append many streams at once.
+     * @param appends new events of the streams
+     * @return names of the streams, which were not appended because of the concurrent modifications
+     */
+    default Set<String> appendAll(List<StreamAppend> appends) {
+        Set<String> conflicts = new LinkedHashSet<>();
+        for (StreamAppend append : appends) {
+            try {
+                if (append.streamType.isPresent()) {
+                    append(append.streamType.get(), append.streamName, append.currentVersion, append.events);
+                } else {
+                    append(append.streamName, append.currentVersion, append.events);
+                }
+            } catch (ConcurrentModificationException e) {
+                conflicts.add(append.streamName);
+            }
+        }
+        return conflicts;
+    }
     /**
      * Atomically appends new events.
      * @param streamName name of the stream is to be appended to
@@ -70,11 +106,46 @@ public interface EventStore extends AutoCloseable {
      * @param streamName name of the stream whose version is to be retrieved
      */
     long version(String streamName);
+    /**
+     * Returns the version the stream had at the specified time, i.e. the number of its events occurred not later than
+     * the time, or 0 if the stream did not exist yet.
+     * @param streamName name of the stream whose version is to be retrieved
+     * @param timestamp time in milliseconds
+     */
+    default long versionAt(String streamName, long timestamp) {
+        return stream(streamName).map((s) -> s.filter((e) -> e.getOccurredOn() <= timestamp).count()).orElse(0L);
+    }
+    /**
+     * Returns all the events of this event store occurred within the specified period, ordered by the time of the
+     * events. The stores, which have no index of the events by time, do not support it.
+     * @param from start of the period in milliseconds (inclusive)
+     * @param to end of the period in milliseconds (exclusive)
+     * @return the events occurred within the period
+     * @throws UnsupportedOperationException if the store cannot find the events by time
+     */
+    default Stream<Event> eventsBetween(long from, long to) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot find the events by time");
+    }
+    /**
+     * Returns the events of the streams of the given type occurred within the specified period, ordered by the time of
+     * the events. The type is the one the events were appended with (see
+     * {@link #append(String, String, long, List)}), and it is matched exactly, so that the streams of the types like
+     * "House" and "HouseHold" are told apart. The events appended without a type are not returned. The stores, which
+     * do not keep the types, do not support it.
+     * @param streamType type of the streams
+     * @param from start of the period in milliseconds (inclusive)
+     * @param to end of the period in milliseconds (exclusive)
+     * @return the events of the streams of the type occurred within the period
+     * @throws UnsupportedOperationException if the store cannot find the events by time and type
+     */
+    default Stream<Event> eventsBetween(String streamType, long from, long to) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot find the events by stream type");
+    }
     /**
      * Returns <tt>true</tt> if this event store contains the stream with the specified name.
      * @param streamName name of the stream whose presence in this collection is to be tested
      */
-    default boolean contains(String streamName) { return stream(streamName).map((s) -> s.iterator().hasNext()).orElse(false); }
+    default boolean contains(String streamName) { return version(streamName) > 0; }
     /**
      * Returns the number of streams in this event store.
      * @return the number of streams in this event store 
@@ -21,6 +21,17 @@ public class PayloadEvent<T> extends Event<PayloadEvent> {
     public PayloadEvent(T payload) { 
 		this.payload = payload;
     }
+    /**
+     * Creates an already stamped event, so that it does not need to be cloned by {@link #occurred(long)}.
+     * @param payload the wrapped object
+     * @param streamVersion version of the corresponding event stream
+     * @param occurredOn time of the event
+     */
+    public PayloadEvent(T payload, long streamVersion, long occurredOn) {
+        this(payload);
+        this.streamVersion = streamVersion;
+        this.occurredOn    = occurredOn;
+    }
     @Override
     public boolean equals(Object obj) {
         return obj != null &&
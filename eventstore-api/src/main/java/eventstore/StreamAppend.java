@@ -0,0 +1,38 @@
+package eventstore;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * New events of a stream along with the version of the stream the events were produced for, see
+ * {@link EventStore#appendAll(List)}.
+ */
+public class StreamAppend {
+    /**
+     * Type of the stream, see {@link EventStore#append(String, String, long, List)}.
+     */
+    public final Optional<String> streamType;
+    public final String streamName;
+    public final long currentVersion;
+    public final List<? extends Event> events;
+
+    public StreamAppend(String streamName, long currentVersion, List<? extends Event> events) {
+        this(Optional.empty(), streamName, currentVersion, events);
+    }
+
+    public StreamAppend(String streamType, String streamName, long currentVersion, List<? extends Event> events) {
+        this(Optional.of(streamType), streamName, currentVersion, events);
+    }
+
+    private StreamAppend(Optional<String> streamType, String streamName, long currentVersion, List<? extends Event> events) {
+        this.streamType     = streamType;
+        this.streamName     = streamName;
+        this.currentVersion = currentVersion;
+        this.events         = events;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamAppend(" + streamType.map(type -> type + ", ").orElse("") + streamName + ", " + currentVersion + ", " + events + ")";
+    }
+}
@@ -1,6 +1,8 @@
 package eventstore.impl;
 
+import java.time.Clock;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.stream.Stream;
@@ -21,13 +23,28 @@ import static java.util.stream.Collectors.toList;
 public class InMemoryEventStore implements EventStore {
 
     private final ConcurrentMap<String, List<Event>> streams;
+    private final Clock clock;
+    // the types of the streams appended with one, see append(String, String, long, List)
+    private final ConcurrentMap<String, String> streamTypes = new ConcurrentHashMap<>();
 
     public InMemoryEventStore() {
         this(new ConcurrentHashMap<>());
     }
 
     public InMemoryEventStore(ConcurrentMap<String, List<Event>> streams) {
+        this(streams, Clock.systemUTC());
+    }
+
+    /**
+     * @param clock clock the appended events are stamped with, e.g. a fixed one for tests
+     */
+    public InMemoryEventStore(Clock clock) {
+        this(new ConcurrentHashMap<>(), clock);
+    }
+
+    public InMemoryEventStore(ConcurrentMap<String, List<Event>> streams, Clock clock) {
         this.streams = streams;
+        this.clock   = clock;
     }
 
     @Override
@@ -57,15 +74,63 @@ public class InMemoryEventStore implements EventStore {
             if (version(streamName) != currentVersion) {
                 throw new ConcurrentModificationException();
             }
+            long now = clock.millis();
             streams.put(streamName, new ArrayList<Event>() {{
                 addAll(curEvents);
                 for (int i = 0, n = newEvents.size(); i < n; ++i) {
-                    add(newEvents.get(i).occurred(currentVersion + i + 1));
+                    add(newEvents.get(i).occurred(currentVersion + i + 1, now));
                 }
             }});
         }
     }
 
+    @Override
+    public void append(String streamType, String streamName, long currentVersion, List<? extends Event> newEvents) {
+        synchronized(streams) {
+            append(streamName, currentVersion, newEvents);
+            streamTypes.put(streamName, streamType);
+        }
+    }
+
+    @Override
+    public long versionAt(String streamName, long timestamp) {
+        List<Event> events = Optional.ofNullable(streams.get(streamName)).orElse(Collections.emptyList());
+        // the events of a stream are ordered by time, so find the last one occurred not later than the given time
+        int low = 0, high = events.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (events.get(mid).getOccurredOn() <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public Stream<Event> eventsBetween(long from, long to) {
+        return eventsBetween(streams.values().stream(), from, to);
+    }
+
+    @Override
+    public Stream<Event> eventsBetween(String streamType, long from, long to) {
+        return eventsBetween(
+            streams.entrySet().stream()
+                .filter((stream) -> streamType.equals(streamTypes.get(stream.getKey())))
+                .map((stream) -> stream.getValue()),
+            from,
+            to
+        );
+    }
+
+    private Stream<Event> eventsBetween(Stream<List<Event>> streams, long from, long to) {
+        return streams
+            .flatMap((stream) -> stream.stream())
+            .filter((e) -> e.getOccurredOn() >= from && e.getOccurredOn() < to)
+            .sorted(Comparator.comparingLong(Event::getOccurredOn));
+    }
+
     @Override
     public long size() {
         return streams.size();
@@ -1,6 +1,7 @@
 package eventstore.util;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.util.Optional;
 import java.util.function.BiFunction;
@@ -46,16 +47,20 @@ public interface CloneWith<T extends CloneWith> extends Cloneable {
 @SuppressWarnings("unchecked")
 final class CloneWithHelper {
     private CloneWithHelper() {}
-    static final Method cloneMethod;
+    // a method handle rather than the reflective call, since cloning happens for every stamped event
+    static final MethodHandle cloneMethod;
     static {
         try {
-            cloneMethod = Object.class.getDeclaredMethod("clone");
-            cloneMethod.setAccessible(true);
-        } catch (NoSuchMethodException e) { throw new AssertionError("This shouldn't happen"); }
+            Method method = Object.class.getDeclaredMethod("clone");
+            method.setAccessible(true);
+            cloneMethod = MethodHandles.lookup().unreflect(method);
+        } catch (NoSuchMethodException|IllegalAccessException e) { throw new AssertionError("This shouldn't happen"); }
     } 
     static <T> T invokeClone(T obj) {
         try {
-            return (T) cloneMethod.invoke(obj);
-        } catch (IllegalAccessException|InvocationTargetException e) { throw new AssertionError("This shouldn't happen"); }
+            return (T) (Object) cloneMethod.invokeExact((Object) obj);
+        } catch (RuntimeException|Error e) {
+            throw e;
+        } catch (Throwable e) { throw new AssertionError("This shouldn't happen", e); }
     }
 }
@@ -0,0 +1,58 @@
+package eventstore.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors running the blocking requests to the storages, e.g. reading many entities concurrently. Unlike the
+ * {@link java.util.concurrent.ForkJoinPool#commonPool()}, which is sized for the computations and shared by the whole
+ * process (e.g. by the parallel streams), these are the dedicated bounded pools of the daemon threads, which are
+ * stopped once they are idle.
+ */
+public final class IoExecutors {
+    private IoExecutors() {}
+
+    /**
+     * Default amount of the threads of a pool.
+     */
+    public static final int DEFAULT_THREADS = 16;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Creates a pool with the default amount of the threads, see {@link #newPool(String, int)}.
+     */
+    public static ExecutorService newPool(String name) {
+        return newPool(name, DEFAULT_THREADS);
+    }
+
+    /**
+     * Creates a pool of up to the given amount of the daemon threads, the tasks beyond that wait in the queue.
+     * @param name prefix of the names of the threads
+     * @param threads maximum amount of the threads
+     */
+    public static ExecutorService newPool(String name, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid amount of the threads " + threads);
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = (task) -> {
+            Thread thread = new Thread(task, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads,
+                threads,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                factory
+        );
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
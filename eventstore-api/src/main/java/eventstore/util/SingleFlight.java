@@ -0,0 +1,138 @@
+package eventstore.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Coalesces the concurrent computations of the same key: while a computation is in flight, the other threads asking
+ * for the same key wait for its result instead of starting their own one. Nothing is cached, i.e. the key is computed
+ * again as soon as the in-flight computation completes.
+ * A computation started before a change of the key could miss the change, so the writers must {@link #invalidate} the
+ * key once the change is made, so that the threads asking for the key afterwards (e.g. the writer reading its own
+ * write) do not join that computation, but start a new one.
+ * @param K type of the keys
+ * @param V type of the computed values
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Flight> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Computes the value of the given key, or waits for the in-flight computation of the same key.
+     */
+    public V execute(K key, Supplier<V> fn) {
+        return execute(key, fn, UnaryOperator.identity());
+    }
+
+    /**
+     * Computes the value of the given key, or waits for the in-flight computation of the same key.
+     * @param key key of the value
+     * @param fn computation of the value
+     * @param share function applied to the value computed by another thread, e.g. copying it, if the value is mutable
+     * @return the value
+     */
+    public V execute(K key, Supplier<V> fn, UnaryOperator<V> share) {
+        return execute(key, fn, UnaryOperator.identity(), share);
+    }
+
+    /**
+     * Computes the value of the given key, or waits for the in-flight computation of the same key. The computing thread
+     * gets the computed value as is, and it prepares the value for the other threads only if any of them has joined
+     * the computation, e.g. serializes it, so that the value is not copied in vain without the concurrent callers.
+     * @param key key of the value
+     * @param fn computation of the value
+     * @param shareable function applied to the computed value once, if another thread has joined the computation,
+     *                  which must not change the computed value
+     * @param share function applied to the shareable value by every thread, which has joined the computation
+     * @return the value
+     */
+    public V execute(K key, Supplier<V> fn, UnaryOperator<V> shareable, UnaryOperator<V> share) {
+        while (true) {
+            Flight flight = new Flight();
+            Flight existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                return compute(key, flight, fn, shareable);
+            }
+            if (existing.join()) {
+                try {
+                    return share.apply(existing.result.join());
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            // the computation has completed meanwhile, so the value is computed again
+        }
+    }
+
+    private V compute(K key, Flight flight, Supplier<V> fn, UnaryOperator<V> shareable) {
+        V value;
+        try {
+            value = fn.get();
+        } catch (RuntimeException|Error e) {
+            inFlight.remove(key, flight);
+            flight.close();
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(key, flight);
+        if (flight.close()) {
+            try {
+                flight.result.complete(shareable.apply(value));
+            } catch (RuntimeException|Error e) {
+                flight.result.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Detaches the in-flight computation of the given key, if any, so that the threads asking for the key afterwards
+     * start a new computation. The threads already waiting for the detached computation still get its result.
+     */
+    public void invalidate(K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * @return amount of the keys being computed right now
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    /**
+     * In-flight computation along with the amount of the threads, which joined it. Once the computation completes, the
+     * flight is closed, so that the computing thread knows whether the value should be shared, and the threads, which
+     * come later, do not join it anymore.
+     */
+    private final class Flight {
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        private final AtomicInteger joined = new AtomicInteger();
+
+        /**
+         * @return true, if the thread has joined the computation, false, if it has been closed
+         */
+        boolean join() {
+            return joined.getAndUpdate(n -> n < 0 ? n : n + 1) >= 0;
+        }
+
+        /**
+         * @return true, if any thread has joined the computation
+         */
+        boolean close() {
+            return joined.getAndSet(-1) > 0;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package eventstore.util.collection;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.stream.*;
 
 import static java.util.stream.Collectors.toList;
@@ -20,12 +22,63 @@ public final class Collections {
         return StreamSupport.stream(iterable.spliterator(), false);
     }
 
+    /**
+     * Maps the given elements concurrently on the given executor, see {@link ConcurrentMappingIterator}.
+     * @param maxInFlight maximum amount of the elements being mapped at the same time
+     * @param ordered whether the mapped elements should be returned in the order of the given ones
+     */
+    public static <T, R> Stream<R> mapConcurrently(
+            Iterator<T> it,
+            Function<? super T, ? extends R> fn,
+            Executor executor,
+            int maxInFlight,
+            boolean ordered) {
+        return stream(new ConcurrentMappingIterator<T, R>(it, fn, executor, maxInFlight, ordered));
+    }
+
+    /**
+     * Reads the elements page by page prefetching the next page on the given executor, see {@link PagingIterator}.
+     * @param fetch function getting the cursor, which is empty for the first page, and returning the page
+     */
+    public static <T, C> Stream<T> paged(Function<Optional<C>, PagingIterator.Page<T, C>> fetch, Executor executor) {
+        return stream(new PagingIterator<T, C>(fetch, executor));
+    }
+
+    /**
+     * Merges the given sorted iterators into a single sorted stream, see {@link MergingIterator}.
+     */
+    public static <T> Stream<T> merged(List<? extends Iterator<T>> sorted, Comparator<? super T> order) {
+        return stream(new MergingIterator<T>(sorted, order));
+    }
+
     public static <T> Stream<List<T>> batched(Iterable<T> iterable, int size) {
         return iterable instanceof List ?
                 batched((List<T>) iterable, size) :
                 batched(stream(iterable).collect(toList()), size);
     }
 
+    /**
+     * Splits the given elements into the lists of the given size (the last one could be shorter) lazily, i.e. the
+     * elements of a list are consumed only when it is requested.
+     */
+    public static <T> Stream<List<T>> batched(Iterator<T> it, int size) {
+        return stream(new Iterator<List<T>>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public List<T> next() {
+                List<T> batch = new ArrayList<>(size);
+                do {
+                    batch.add(it.next());
+                } while (batch.size() < size && it.hasNext());
+                return batch;
+            }
+        });
+    }
+
     public static <T> Stream<List<T>> batched(List<T> list, int size) {
         return IntStream.range(0, (list.size()+size-1)/size)
             .mapToObj(i -> list.subList(i*size, Math.min(list.size(), (i+1)*size)));
@@ -0,0 +1,97 @@
+package eventstore.util.collection;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+/**
+ * Iterator mapping the elements of the source iterator concurrently on the given executor. The source is read lazily
+ * by the consuming thread, so that no more than the given amount of elements is being mapped at the same time.
+ * The mapped elements are returned either in the order of the source, or as soon as they are mapped.
+ * @param T type of the source elements
+ * @param R type of the mapped elements
+ */
+public class ConcurrentMappingIterator<T, R> implements Iterator<R> {
+
+    private final Iterator<T> source;
+    private final Function<? super T, ? extends R> fn;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final boolean ordered;
+    // submitted tasks in the order of the source, if the order is preserved
+    private final Queue<CompletableFuture<R>> submitted = new ArrayDeque<>();
+    // completed tasks in the order of completion, otherwise
+    private final BlockingQueue<CompletableFuture<R>> completed = new LinkedBlockingQueue<>();
+    private int inFlight = 0;
+
+    public ConcurrentMappingIterator(
+            Iterator<T> source,
+            Function<? super T, ? extends R> fn,
+            Executor executor,
+            int maxInFlight,
+            boolean ordered) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Invalid amount of the concurrent tasks " + maxInFlight);
+        }
+        this.source      = source;
+        this.fn          = fn;
+        this.executor    = executor;
+        this.maxInFlight = maxInFlight;
+        this.ordered     = ordered;
+    }
+
+    @Override
+    public boolean hasNext() {
+        submit();
+        return inFlight > 0;
+    }
+
+    @Override
+    public R next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        CompletableFuture<R> task;
+        if (ordered) {
+            task = submitted.poll();
+        } else {
+            try {
+                task = completed.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the mapped elements", e);
+            }
+        }
+        --inFlight;
+        try {
+            return task.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void submit() {
+        while (inFlight < maxInFlight && source.hasNext()) {
+            T element = source.next();
+            CompletableFuture<R> task = CompletableFuture.supplyAsync(() -> fn.apply(element), executor);
+            if (ordered) {
+                submitted.add(task);
+            } else {
+                task.whenComplete((result, e) -> completed.add(task));
+            }
+            ++inFlight;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package eventstore.util.collection;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Thread-safe bounded map evicting the least recently used entries. The entries are split into several segments, each
+ * one guarded by its own lock, so that concurrent readers of different keys do not contend on a single lock.
+ * @param K type of the keys
+ * @param V type of the values
+ */
+public class LruCache<K, V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+
+    public LruCache(int maxSize) {
+        this(maxSize, (key, value) -> {});
+    }
+
+    /**
+     * Creates the cache notifying about the evicted entries.
+     * @param maxSize maximum amount of the entries
+     * @param onEviction called with the key and the value of every entry evicted because of the size limit, while the
+     *                   lock of its segment is held
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(int maxSize, BiConsumer<? super K, ? super V> onEviction) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid cache size " + maxSize);
+        }
+        int segmentsAmount = Math.min(SEGMENTS, maxSize);
+        this.segments = new Segment[segmentsAmount];
+        for (int i = 0; i < segmentsAmount; ++i) {
+            // spread the remainder, so that the total capacity is exactly maxSize
+            segments[i] = new Segment<>(maxSize / segmentsAmount + (i < maxSize % segmentsAmount ? 1 : 0), onEviction);
+        }
+    }
+
+    public Optional<V> get(K key) {
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            return Optional.ofNullable(segment.get(key));
+        }
+    }
+
+    public void put(K key, V value) {
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    /**
+     * Atomically replaces the value of the given key with the result of the given function.
+     * @param key key of the value is to be computed
+     * @param fn function getting the key and the current value (or null), and returning the new value (or null to
+     *           remove the entry)
+     * @return the new value
+     */
+    public Optional<V> compute(K key, BiFunction<? super K, ? super V, ? extends V> fn) {
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            return Optional.ofNullable(segment.compute(key, fn));
+        }
+    }
+
+    public void remove(K key) {
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment<K, V> segment(K key) {
+        int h = key.hashCode();
+        // spread the higher bits, because the segments amount is small
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+        private final int maxSize;
+        private final BiConsumer<? super K, ? super V> onEviction;
+
+        Segment(int maxSize, BiConsumer<? super K, ? super V> onEviction) {
+            super(16, 0.75f, true);
+            this.maxSize    = maxSize;
+            this.onEviction = onEviction;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > maxSize) {
+                onEviction.accept(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    }
+}
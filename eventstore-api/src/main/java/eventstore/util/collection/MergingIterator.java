@@ -0,0 +1,57 @@
+package eventstore.util.collection;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Iterator merging the given sorted iterators into a single sorted one. The sources are read lazily, only the current
+ * element of every source is held in memory.
+ * @param T type of the elements
+ */
+public class MergingIterator<T> implements Iterator<T> {
+
+    private final PriorityQueue<Head<T>> heads;
+
+    /**
+     * @param sources iterators sorted by the given order
+     * @param order order of the elements
+     */
+    public MergingIterator(List<? extends Iterator<T>> sources, Comparator<? super T> order) {
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> order.compare(a.element, b.element));
+        sources.forEach(this::advance);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        Head<T> head = heads.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        advance(head.source);
+        return head.element;
+    }
+
+    private void advance(Iterator<T> source) {
+        if (source.hasNext()) {
+            heads.add(new Head<>(source.next(), source));
+        }
+    }
+
+    private static final class Head<T> {
+        final T element;
+        final Iterator<T> source;
+
+        Head(T element, Iterator<T> source) {
+            this.element = element;
+            this.source  = source;
+        }
+    }
+}
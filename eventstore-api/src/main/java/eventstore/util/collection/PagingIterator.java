@@ -0,0 +1,120 @@
+package eventstore.util.collection;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Iterator reading the elements page by page using the keyset (cursor) pagination, i.e. every page is requested by
+ * the cursor pointing right after the last element of the previous page, rather than by the offset. The next pages are
+ * prefetched on the given executor, while the current one is consumed, up to the given read-ahead depth, so that no
+ * more than the depth plus one pages are held in memory at the same time.
+ * @param T type of the elements
+ * @param C type of the cursors
+ */
+public class PagingIterator<T, C> implements Iterator<T> {
+
+    private final Function<Optional<C>, Page<T, C>> fetch;
+    private final Executor executor;
+    private final int readAhead;
+    private Iterator<T> current = java.util.Collections.emptyIterator();
+    // the requested pages in their order, the page after the last one is null
+    private final Deque<CompletableFuture<Page<T, C>>> ahead = new ArrayDeque<>();
+    // the last requested page, or null, if the last page was reached already
+    private CompletableFuture<Page<T, C>> tail;
+
+    /**
+     * Creates the iterator prefetching a single page.
+     * @param fetch function getting the cursor, which is empty for the first page, and returning the page
+     * @param executor executor prefetching the pages
+     */
+    public PagingIterator(Function<Optional<C>, Page<T, C>> fetch, Executor executor) {
+        this(fetch, executor, 1);
+    }
+
+    /**
+     * Creates the iterator.
+     * @param fetch function getting the cursor, which is empty for the first page, and returning the page
+     * @param executor executor prefetching the pages
+     * @param readAhead maximum amount of the pages requested ahead of the consumed one
+     */
+    public PagingIterator(Function<Optional<C>, Page<T, C>> fetch, Executor executor, int readAhead) {
+        if (readAhead <= 0) {
+            throw new IllegalArgumentException("Invalid read-ahead depth " + readAhead);
+        }
+        this.fetch     = fetch;
+        this.executor  = executor;
+        this.readAhead = readAhead;
+        // the first page is read by the consuming thread
+        this.tail      = CompletableFuture.completedFuture(fetch.apply(Optional.empty()));
+        ahead.add(tail);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext() && !ahead.isEmpty()) {
+            Page<T, C> page = join(ahead.poll());
+            if (page == null) {
+                ahead.clear();
+                tail = null;
+                break;
+            }
+            current = page.elements.iterator();
+            requestAhead();
+        }
+        return current.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    private void requestAhead() {
+        while (tail != null && ahead.size() < readAhead) {
+            // every page is requested by the cursor of the previous one, so the pages are chained
+            tail = tail.thenApplyAsync((page) -> page == null || !page.next.isPresent() ? null : fetch.apply(page.next), executor);
+            ahead.add(tail);
+        }
+    }
+
+    private Page<T, C> join(CompletableFuture<Page<T, C>> page) {
+        try {
+            return page.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Page of the elements along with the cursor of the next page.
+     */
+    public static final class Page<T, C> {
+        final List<T> elements;
+        final Optional<C> next;
+
+        /**
+         * @param elements elements of the page
+         * @param next cursor of the next page, or empty, if this page is the last one
+         */
+        public Page(List<T> elements, Optional<C> next) {
+            this.elements = elements;
+            this.next     = next;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import eventstore.Event;
 import eventstore.EventStore;
 import eventstore.PayloadEvent;
 import java.lang.Runnable;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
@@ -88,6 +89,43 @@ public abstract class AbstractEventStoreSpec {
         });
     }
 
+    @Test
+    public void eventsBetween() throws Exception {
+        currentTest.set(name.getMethodName());
+        eventStoreSuppliers.forEach((eventStoreSupplier) -> {
+            try (EventStore eventStore = eventStoreSupplier.get()) {
+                long from = System.currentTimeMillis();
+                // the one type is a prefix of the other one
+                eventStore.append("House", "House1", 0, Arrays.asList(new PayloadEvent(1L)));
+                eventStore.append("HouseHold", "HouseHold1", 0, Arrays.asList(new PayloadEvent(2L)));
+                eventStore.append("House", "House2", 0, Arrays.asList(new PayloadEvent(3L)));
+                // the type is not kept without being given
+                eventStore.append("House3", new PayloadEvent(4L));
+                long to = System.currentTimeMillis() + 1;
+                waitFor(5000, (() -> assertTrue(
+                    eventStore.eventsBetween(from, to).collect(Collectors.toList()).containsAll(
+                        Arrays.asList(new PayloadEvent(1L), new PayloadEvent(2L), new PayloadEvent(3L), new PayloadEvent(4L))
+                    )
+                )));
+                try {
+                    eventStore.eventsBetween("House", from, to);
+                } catch (UnsupportedOperationException e) {
+                    logger.info("{} does not keep the types of the streams", eventStore);
+                    return;
+                }
+                waitFor(5000, (() -> {
+                    List<Event> events = eventStore.eventsBetween("House", from, to).collect(Collectors.toList());
+                    assertEquals(2, events.size());
+                    assertTrue(events.containsAll(Arrays.asList(new PayloadEvent(1L), new PayloadEvent(3L))));
+                }));
+                waitFor(5000, (() -> assertEquals(
+                    Collections.singletonList(new PayloadEvent(2L)),
+                    eventStore.eventsBetween("HouseHold", from, to).collect(Collectors.toList())
+                )));
+            }
+        });
+    }
+
     protected void waitFor(long timeout, Runnable assertion) {
         long timeExpired = 0;
         while ((timeExpired += 100) <= timeout) {
@@ -0,0 +1,92 @@
+package eventstore.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightSpec {
+
+    @Test
+    public void doesNotShareWithoutWaiters() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger computed  = new AtomicInteger();
+        AtomicInteger shareable = new AtomicInteger();
+        for (int i = 0; i < 3; ++i) {
+            assertEquals("value", flight.execute("key", () -> {
+                computed.incrementAndGet();
+                return "value";
+            }, (value) -> {
+                shareable.incrementAndGet();
+                return "shareable " + value;
+            }, (value) -> "shared " + value));
+        }
+        assertEquals(3, computed.get());
+        assertEquals(0, shareable.get());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    public void sharesWithWaiters() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger computed  = new AtomicInteger();
+        AtomicInteger shareable = new AtomicInteger();
+        CountDownLatch computing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<FutureTask<String>> executions = IntStream.range(0, 4)
+            .mapToObj(i -> new FutureTask<>(() -> flight.execute("key", () -> {
+                computed.incrementAndGet();
+                computing.countDown();
+                await(release);
+                return "value";
+            }, (value) -> {
+                shareable.incrementAndGet();
+                return "shareable " + value;
+            }, (value) -> "shared " + value)))
+            .collect(Collectors.toList());
+        List<Thread> threads = executions.stream().map(Thread::new).collect(Collectors.toList());
+        // the first thread computes the value, and it is blocked until the others join the computation
+        threads.get(0).start();
+        assertTrue(computing.await(5, TimeUnit.SECONDS));
+        threads.subList(1, threads.size()).forEach(Thread::start);
+        waitUntilWaiting(threads.subList(1, threads.size()));
+        release.countDown();
+        List<String> values = new ArrayList<>();
+        for (FutureTask<String> execution : executions) {
+            values.add(execution.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, computed.get());
+        assertEquals(1, shareable.get());
+        assertEquals("value", values.get(0));
+        values.subList(1, values.size()).forEach(value -> assertEquals("shared shareable value", value));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("The latch was not released");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntilWaiting(List<Thread> threads) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!threads.stream().allMatch(t -> t.getState() == Thread.State.WAITING)) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("The threads did not join the computation");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package eventstore.util.collection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PagingIteratorSpec {
+    private static final int PAGES     = 20;
+    private static final int PAGE_SIZE = 3;
+
+    @Test
+    public void prefetchesThePagesInOrder() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicInteger fetched  = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        try {
+            PagingIterator<Integer, Integer> elements = new PagingIterator<>(pages((page) -> {
+                // the later pages come sooner, if they were not chained
+                sleep(ThreadLocalRandom.current().nextInt(5));
+                int ahead = fetched.incrementAndGet() - consumed.get() / PAGE_SIZE;
+                maxAhead.accumulateAndGet(ahead, Math::max);
+            }), executor, 2);
+            List<Integer> read = new ArrayList<>();
+            elements.forEachRemaining((element) -> {
+                read.add(element);
+                consumed.incrementAndGet();
+            });
+            assertEquals(IntStream.range(0, PAGES * PAGE_SIZE).boxed().collect(Collectors.toList()), read);
+            assertEquals(PAGES, fetched.get());
+            // the current page along with the prefetched ones
+            assertTrue("Read " + maxAhead.get() + " pages ahead", maxAhead.get() <= 3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void propagatesTheFailures() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            PagingIterator<Integer, Integer> elements = new PagingIterator<>(pages((page) -> {
+                if (page == 5) {
+                    throw new IllegalStateException("The page " + page + " failed");
+                }
+            }), executor, 3);
+            List<Integer> read = new ArrayList<>();
+            try {
+                elements.forEachRemaining(read::add);
+                fail("The failure of the page should be propagated");
+            } catch (IllegalStateException e) {
+                assertEquals("The page 5 failed", e.getMessage());
+            }
+            // the pages before the failed one are consumed
+            assertEquals(IntStream.range(0, 5 * PAGE_SIZE).boxed().collect(Collectors.toList()), read);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the function fetching the pages of the consecutive numbers, the cursor is the number of the page.
+     */
+    private static Function<Optional<Integer>, PagingIterator.Page<Integer, Integer>> pages(IntConsumer onFetch) {
+        return (cursor) -> {
+            int page = cursor.orElse(0);
+            onFetch.accept(page);
+            List<Integer> elements = IntStream.range(page * PAGE_SIZE, (page + 1) * PAGE_SIZE).boxed().collect(Collectors.toList());
+            return new PagingIterator.Page<>(elements, page + 1 < PAGES ? Optional.of(page + 1) : Optional.empty());
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
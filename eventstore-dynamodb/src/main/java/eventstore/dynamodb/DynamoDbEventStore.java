@@ -1,41 +1,62 @@
 package eventstore.dynamodb;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.AttributeUpdate;
 import com.amazonaws.services.dynamodbv2.document.Expected;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.ItemCollection;
 import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
+import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
 import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
 import com.amazonaws.services.dynamodbv2.document.RangeKeyCondition;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
-import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateTableSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.CreateGlobalSecondaryIndexAction;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexUpdate;
+import com.amazonaws.services.dynamodbv2.model.IndexStatus;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
 import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
 import eventstore.AbstractEventStore;
 import eventstore.Event;
-import eventstore.EventStore;
 import eventstore.EventStoreException;
 import eventstore.util.DbObjectMapper;
+import eventstore.util.IoExecutors;
 import eventstore.util.collection.Collections;
 import eventstore.util.dynamodb.ExtendedTable;
 import eventstore.util.dynamodb.GsonDynamoDbObjectMapper;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -45,7 +66,53 @@ import java.util.stream.StreamSupport;
 @SuppressWarnings("unchecked")
 public class DynamoDbEventStore extends AbstractEventStore<Item> {
 
+    /**
+     * Global secondary index of the events by time. Its hash key is the day the event occurred on along with one of the
+     * {@link #TIME_INDEX_SHARDS} shards chosen by the stream name, so that the events written within a day are spread
+     * over several partitions of the index, and the events of a period are read by a query per day and shard. The
+     * index projects only the keys and the type of the stream, so the queried events are read from the table by batch
+     * gets. It is maintained only if it is enabled by {@link DynamoDbEventStoreOptions#withTimeIndex()}, and the tables
+     * created before it was enabled are migrated with {@link #migrateTimeIndex()}.
+     */
+    public static final String OCCURRED_ON_INDEX = "occurredOn-index";
+    /**
+     * Amount of the shards of every day in {@link #OCCURRED_ON_INDEX}.
+     */
+    public static final int TIME_INDEX_SHARDS = 16;
+    /**
+     * Stream version reserved for an item stored along with the events of the stream, e.g. a snapshot, so that a
+     * single query could read both of them. Such items are never returned as events.
+     */
+    public static final long RESERVED_VERSION = Long.MAX_VALUE;
+    /**
+     * Default amount of the pages of a stream requested ahead of the consumed one, see
+     * {@link #DynamoDbEventStore(Table, DbObjectMapper, int, Executor)}.
+     */
+    public static final int DEFAULT_READ_AHEAD = 2;
+    /**
+     * Default amount of the segments the full table scans are split into.
+     */
+    public static final int DEFAULT_SCAN_SEGMENTS = 4;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
     private final ExtendedTable table;
+    private final boolean timeIndex;
+    // set once the index of the events by time is known to be active
+    private volatile boolean timeIndexed = false;
+    /**
+     * Amount of the segments the full table scans (e.g. {@link #size()}) are split into, see
+     * {@link ExtendedTable#parallelScanStream(ScanRequest, int, Executor, double)}.
+     */
+    protected final int scanSegments;
+    /**
+     * Executor scanning the segments of the full table scans, which should have at least {@link #scanSegments} threads.
+     * It is a dedicated pool by default, so that the blocking scans do not starve the common pool.
+     */
+    protected final Executor scanExecutor;
+    /**
+     * Read capacity units per second a full table scan is allowed to consume, or 0, if the scans are not limited.
+     */
+    protected final double scanReadCapacityPerSecond;
 
     public DynamoDbEventStore(
             AmazonDynamoDB client,
@@ -61,47 +128,193 @@ public class DynamoDbEventStore extends AbstractEventStore<Item> {
             long readCapacityUnits,
             long writeCapacityUnits,
             DbObjectMapper<Item> mapper) {
+        this(client, tableName, readCapacityUnits, writeCapacityUnits, mapper, new DynamoDbEventStoreOptions());
+    }
+
+    public DynamoDbEventStore(
+            AmazonDynamoDB client,
+            String tableName,
+            long readCapacityUnits,
+            long writeCapacityUnits,
+            DbObjectMapper<Item> mapper,
+            DynamoDbEventStoreOptions options) {
+        this(
+            createTable(client, tableName, new ProvisionedThroughput(readCapacityUnits, writeCapacityUnits), options),
+            mapper,
+            options
+        );
+    }
+
+    public DynamoDbEventStore(
+            AmazonDynamoDB client,
+            String tableName,
+            long readCapacityUnits,
+            long writeCapacityUnits,
+            DbObjectMapper<Item> mapper,
+            int readAhead,
+            Executor readAheadExecutor) {
         this(
-                new ExtendedTable(
-                    client,
-                    tableName,
-                    Arrays.asList(
-                        new AttributeDefinition("streamName", "S"),
-                        new AttributeDefinition("streamVersion", "N")
-                    ),
-                    Arrays.asList(
-                        new KeySchemaElement("streamName", KeyType.HASH),
-                        new KeySchemaElement("streamVersion", KeyType.RANGE)
-                    ),
-                    new ProvisionedThroughput(readCapacityUnits, writeCapacityUnits)
-                ),
-                mapper
+            createTable(client, tableName, new ProvisionedThroughput(readCapacityUnits, writeCapacityUnits), new DynamoDbEventStoreOptions()),
+            mapper,
+            readAhead,
+            readAheadExecutor
         );
     }
 
+    /**
+     * Creates the event store reading the streams {@link #DEFAULT_READ_AHEAD} pages ahead on a dedicated pool.
+     */
     public DynamoDbEventStore(Table table, DbObjectMapper<Item> mapper) { 
-        super(mapper);
-        this.table  = new ExtendedTable(table);
+        this(table, mapper, new DynamoDbEventStoreOptions());
+    }
+
+    /**
+     * Creates the event store with the given options, reading the streams {@link #DEFAULT_READ_AHEAD} pages ahead on a
+     * dedicated pool.
+     */
+    public DynamoDbEventStore(Table table, DbObjectMapper<Item> mapper, DynamoDbEventStoreOptions options) {
+        this(
+            table,
+            mapper,
+            DEFAULT_READ_AHEAD,
+            IoExecutors.newPool("DynamoDbEventStore-readAhead"),
+            DEFAULT_SCAN_SEGMENTS,
+            IoExecutors.newPool("DynamoDbEventStore-scan"),
+            0,
+            options
+        );
+    }
+
+    /**
+     * Creates the event store.
+     * @param readAhead how many pages of a stream are requested ahead of the consumed one, so that reading a long
+     *                  stream mostly does not wait for DynamoDB, or 0 to disable prefetching
+     * @param readAheadExecutor executor requesting the pages ahead, which should not be shared with the computations,
+     *                          since the requests block
+     */
+    public DynamoDbEventStore(Table table, DbObjectMapper<Item> mapper, int readAhead, Executor readAheadExecutor) {
+        this(
+            table,
+            mapper,
+            readAhead,
+            readAheadExecutor,
+            DEFAULT_SCAN_SEGMENTS,
+            IoExecutors.newPool("DynamoDbEventStore-scan"),
+            0,
+            new DynamoDbEventStoreOptions()
+        );
+    }
+
+    /**
+     * Creates the event store.
+     * @param readAhead how many pages of a stream are requested ahead of the consumed one, or 0 to disable prefetching
+     * @param readAheadExecutor executor requesting the pages ahead
+     * @param scanSegments amount of the segments the full table scans are split into, see {@link #scanSegments}
+     * @param scanExecutor executor scanning the segments, see {@link #scanExecutor}
+     * @param scanReadCapacityPerSecond read capacity units per second a full table scan is allowed to consume, or 0,
+     *                                  if the scans are not limited
+     * @param options optional settings of the event store
+     */
+    public DynamoDbEventStore(
+            Table table,
+            DbObjectMapper<Item> mapper,
+            int readAhead,
+            Executor readAheadExecutor,
+            int scanSegments,
+            Executor scanExecutor,
+            double scanReadCapacityPerSecond,
+            DynamoDbEventStoreOptions options) {
+        super(mapper, options.getClock());
+        if (scanSegments <= 0) {
+            throw new IllegalArgumentException("Invalid amount of the scan segments " + scanSegments);
+        }
+        if (scanReadCapacityPerSecond < 0) {
+            throw new IllegalArgumentException("Invalid scan read capacity " + scanReadCapacityPerSecond);
+        }
+        this.table                     = new ExtendedTable(table).withReadAhead(readAhead, readAheadExecutor);
+        this.scanSegments              = scanSegments;
+        this.scanExecutor              = scanExecutor;
+        this.scanReadCapacityPerSecond = scanReadCapacityPerSecond;
+        this.timeIndex                 = options.isTimeIndex();
+    }
+
+    private static ExtendedTable createTable(
+            AmazonDynamoDB client,
+            String tableName,
+            ProvisionedThroughput t,
+            DynamoDbEventStoreOptions options) {
+        ExtendedTable table = new ExtendedTable(client, tableName);
+        CreateTableRequest request = new CreateTableRequest(
+            Arrays.asList(
+                new AttributeDefinition("streamName", "S"),
+                new AttributeDefinition("streamVersion", "N")
+            ),
+            tableName,
+            Arrays.asList(
+                new KeySchemaElement("streamName", KeyType.HASH),
+                new KeySchemaElement("streamVersion", KeyType.RANGE)
+            ),
+            t
+        );
+        if (options.isTimeIndex()) {
+            request
+                .withAttributeDefinitions(
+                    new AttributeDefinition("occurredBucket", "S"),
+                    new AttributeDefinition("occurredOn", "N")
+                )
+                .withGlobalSecondaryIndexes(new GlobalSecondaryIndex()
+                    .withIndexName(OCCURRED_ON_INDEX)
+                    .withKeySchema(timeIndexKey())
+                    .withProjection(timeIndexProjection())
+                    .withProvisionedThroughput(t)
+                );
+        }
+        if (!table.createIfNotExists(request)) {
+            try {
+                table.updateTable(t);
+            } catch (AmazonServiceException e) {
+                // DynamoDB rejects the update, which does not change the throughput
+                if (!"ValidationException".equals(e.getErrorCode()) || !String.valueOf(e.getErrorMessage()).contains("will not change")) {
+                    throw e;
+                }
+            }
+        }
+        return table;
     }
 
     @Override
     protected Iterator<Item> iteratorSince(String streamName, long lastReceivedEvent) {
         return table.queryStream(new QuerySpec()
                 .withHashKey("streamName", streamName)
-                .withRangeKeyCondition(new RangeKeyCondition("streamVersion").gt(lastReceivedEvent))
+                .withRangeKeyCondition(new RangeKeyCondition("streamVersion").between(lastReceivedEvent + 1, RESERVED_VERSION - 1))
         ).iterator();
     }
 
     @Override
     public void append(String streamName, long currentVersion, List<? extends Event> newEvents) {
+        append(Optional.empty(), streamName, currentVersion, newEvents);
+    }
+
+    @Override
+    public void append(String streamType, String streamName, long currentVersion, List<? extends Event> newEvents) {
+        append(Optional.of(streamType), streamName, currentVersion, newEvents);
+    }
+
+    private void append(Optional<String> streamType, String streamName, long currentVersion, List<? extends Event> newEvents) {
         long nextEventIndex = currentVersion;
+        long now = clock.millis();
         for (Event event : newEvents) {
             try {
-                table.putItem(
-                    new PutItemSpec()
-                        .withItem(mapper.mapToDbObject(event.occurred(++nextEventIndex)).withString("streamName", streamName))
-                        .withExpected(new Expected("streamName").notExist())
-                );
+                // the event is serialized anyway, so the stamp is put into the item instead of a cloned event
+                Item item = mapper.mapToDbObject(event)
+                    .withLong("streamVersion", ++nextEventIndex)
+                    .withLong("occurredOn", now)
+                    .withString("streamName", streamName);
+                if (timeIndex) {
+                    item.withString("occurredBucket", occurredBucket(now / DAY_MILLIS, shard(streamName)));
+                }
+                streamType.ifPresent(type -> item.withString("streamType", type));
+                table.putItem(new PutItemSpec().withItem(item).withExpected(new Expected("streamName").notExist()));
             } catch (ConditionalCheckFailedException e) {
                 throw new ConcurrentModificationException(
                         "Failed to put item " + event + " into the stream " + streamName,
@@ -111,12 +324,227 @@ public class DynamoDbEventStore extends AbstractEventStore<Item> {
         }
     }
 
+    @Override
+    public long versionAt(String streamName, long timestamp) {
+        long version = version(streamName);
+        if (version == 0 || occurredOn(streamName, version) <= timestamp) {
+            return version;
+        }
+        // the versions are dense, so find the last event occurred not later than the given time by the binary search
+        long low = 0, high = version - 1;
+        while (low < high) {
+            long mid = (low + high + 1) >>> 1;
+            if (occurredOn(streamName, mid) <= timestamp) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private long occurredOn(String streamName, long version) {
+        return table.getItem(new GetItemSpec()
+            .withPrimaryKey("streamName", streamName, "streamVersion", version)
+            .withAttributesToGet("occurredOn")
+        ).getLong("occurredOn");
+    }
+
+    @Override
+    public Stream<Event> eventsBetween(long from, long to) {
+        return eventsBetween(Optional.empty(), from, to);
+    }
+
+    @Override
+    public Stream<Event> eventsBetween(String streamType, long from, long to) {
+        return eventsBetween(Optional.of(streamType), from, to);
+    }
+
+    private Stream<Event> eventsBetween(Optional<String> streamType, long from, long to) {
+        if (!timeIndex) {
+            throw new UnsupportedOperationException(
+                "The index of the events by time is not enabled, see DynamoDbEventStoreOptions.withTimeIndex()"
+            );
+        }
+        if (from >= to) {
+            return Stream.empty();
+        }
+        checkTimeIndex();
+        // every shard of a day is sorted by time, so the shards are merged, and the found keys are read in batches
+        return LongStream.rangeClosed(from / DAY_MILLIS, (to - 1) / DAY_MILLIS).boxed().flatMap(day ->
+            Collections.batched(
+                Collections.merged(
+                    IntStream.range(0, TIME_INDEX_SHARDS).mapToObj(shard -> {
+                        QuerySpec query = new QuerySpec()
+                            .withHashKey("occurredBucket", occurredBucket(day, shard))
+                            .withRangeKeyCondition(new RangeKeyCondition("occurredOn").between(from, to - 1));
+                        streamType.ifPresent(type -> query
+                            .withFilterExpression("streamType = :streamType")
+                            .withValueMap(new ValueMap().withString(":streamType", type)));
+                        return table.queryStream(OCCURRED_ON_INDEX, query, true).iterator();
+                    }).collect(Collectors.toList()),
+                    Comparator.comparingLong((Item item) -> item.getLong("occurredOn"))
+                ).iterator(),
+                ExtendedTable.BATCH_GET_LIMIT
+            ).flatMap(this::getItems)
+        ).map(item -> (Event) mapper.mapToObject(item));
+    }
+
+    /**
+     * Reads the items with the keys of the given index items, keeping their order.
+     */
+    private Stream<Item> getItems(List<Item> keys) {
+        Map<String, Item> items = table.batchGetItems(keys.stream()
+            .map(key -> new PrimaryKey("streamName", key.getString("streamName"), "streamVersion", key.getLong("streamVersion")))
+            .collect(Collectors.toList())
+        ).stream().collect(Collectors.toMap(item -> itemKey(item), item -> item));
+        return keys.stream().map(key -> items.get(itemKey(key)));
+    }
+
+    private static String itemKey(Item item) {
+        return item.getLong("streamVersion") + "#" + item.getString("streamName");
+    }
+
+    private static Projection timeIndexProjection() {
+        // the stream type is projected for the filter
+        return new Projection().withProjectionType(ProjectionType.INCLUDE).withNonKeyAttributes("streamType");
+    }
+
+    /**
+     * Migrates the table created without the index of the events by time (see {@link #OCCURRED_ON_INDEX}): creates the
+     * index, and sets its key to the stored events, which are scanned just like by {@link #size()}. The events
+     * appended meanwhile are indexed already, so the migration could be run on the live table, and it could be run
+     * again, e.g. if it was interrupted. The index should be enabled for all the event stores of the table before.
+     */
+    public void migrateTimeIndex() {
+        if (!timeIndex) {
+            throw new IllegalStateException("The index of the events by time is not enabled");
+        }
+        if (!timeIndex().isPresent()) {
+            table.updateTable(new UpdateTableRequest()
+                .withTableName(table.getTableName())
+                .withAttributeDefinitions(
+                    new AttributeDefinition("occurredBucket", "S"),
+                    new AttributeDefinition("occurredOn", "N")
+                )
+                .withGlobalSecondaryIndexUpdates(new GlobalSecondaryIndexUpdate().withCreate(
+                    new CreateGlobalSecondaryIndexAction()
+                        .withIndexName(OCCURRED_ON_INDEX)
+                        .withKeySchema(timeIndexKey())
+                        .withProjection(timeIndexProjection())
+                        .withProvisionedThroughput(table.getProvisionedThroughput())
+                ))
+            );
+        }
+        try (Stream<Item> items = table.parallelScanStream(
+                    new ScanRequest()
+                        .withProjectionExpression("streamName, streamVersion, occurredOn")
+                        // the items stored along with the events are not indexed
+                        .withFilterExpression("attribute_not_exists(occurredBucket) AND attribute_exists(occurredOn) AND streamVersion < :reserved")
+                        .withExpressionAttributeValues(java.util.Collections.singletonMap(
+                            ":reserved",
+                            new AttributeValue().withN(String.valueOf(RESERVED_VERSION))
+                        )),
+                    scanSegments,
+                    scanExecutor,
+                    scanReadCapacityPerSecond)) {
+            items.forEach(item -> table.updateItem(new UpdateItemSpec()
+                .withPrimaryKey("streamName", item.getString("streamName"), "streamVersion", item.getLong("streamVersion"))
+                .withAttributeUpdate(new AttributeUpdate("occurredBucket").put(
+                    occurredBucket(item.getLong("occurredOn") / DAY_MILLIS, shard(item.getString("streamName")))
+                ))
+            ));
+        }
+    }
+
+    /**
+     * Sets the type of the stream to the events appended without it, e.g. before the types were stored, so that they
+     * could be found by {@link #eventsBetween(String, long, long)}. The repositories name the streams by the type
+     * followed by the identifier, so every event gets the longest of the given types its stream name starts with.
+     * Hence the types, which are the prefixes of one another (e.g. "House" and "HouseHold"), must be migrated at
+     * once. The events are scanned just like by {@link #size()}, so the migration could be run on the live table, and
+     * it could be run again.
+     * @param streamTypes types of the streams stored in the table
+     * @return amount of the migrated events
+     */
+    public long migrateStreamTypes(Collection<String> streamTypes) {
+        List<String> longestFirst = new ArrayList<>(streamTypes);
+        longestFirst.sort(Comparator.comparingInt(String::length).reversed());
+        try (Stream<Item> items = table.parallelScanStream(
+                    new ScanRequest()
+                        .withProjectionExpression("streamName, streamVersion")
+                        // the items stored along with the events are not events
+                        .withFilterExpression("attribute_not_exists(streamType) AND streamVersion < :reserved")
+                        .withExpressionAttributeValues(java.util.Collections.singletonMap(
+                            ":reserved",
+                            new AttributeValue().withN(String.valueOf(RESERVED_VERSION))
+                        )),
+                    scanSegments,
+                    scanExecutor,
+                    scanReadCapacityPerSecond)) {
+            return items.filter(item -> {
+                String streamName = item.getString("streamName");
+                Optional<String> streamType = longestFirst.stream().filter(streamName::startsWith).findFirst();
+                streamType.ifPresent(type -> table.updateItem(new UpdateItemSpec()
+                    .withPrimaryKey("streamName", streamName, "streamVersion", item.getLong("streamVersion"))
+                    .withAttributeUpdate(new AttributeUpdate("streamType").put(type))
+                ));
+                return streamType.isPresent();
+            }).count();
+        }
+    }
+
+    private void checkTimeIndex() {
+        if (timeIndexed) {
+            return;
+        }
+        Optional<GlobalSecondaryIndexDescription> index = timeIndex();
+        if (!index.isPresent()) {
+            throw new EventStoreException(String.format(
+                    "The table %s has no index %s of the events by time, see migrateTimeIndex()",
+                    table.getTableName(),
+                    OCCURRED_ON_INDEX));
+        }
+        if (!IndexStatus.ACTIVE.toString().equals(index.get().getIndexStatus())) {
+            throw new EventStoreException(String.format(
+                    "The index %s of the table %s is not active yet, but %s",
+                    OCCURRED_ON_INDEX,
+                    table.getTableName(),
+                    index.get().getIndexStatus()));
+        }
+        timeIndexed = true;
+    }
+
+    private Optional<GlobalSecondaryIndexDescription> timeIndex() {
+        return Optional.ofNullable(table.describe().getGlobalSecondaryIndexes())
+            .flatMap(indexes -> indexes.stream().filter(i -> OCCURRED_ON_INDEX.equals(i.getIndexName())).findAny());
+    }
+
+    private static List<KeySchemaElement> timeIndexKey() {
+        return Arrays.asList(
+            new KeySchemaElement("occurredBucket", KeyType.HASH),
+            new KeySchemaElement("occurredOn", KeyType.RANGE)
+        );
+    }
+
+    private static int shard(String streamName) {
+        return (streamName.hashCode() & Integer.MAX_VALUE) % TIME_INDEX_SHARDS;
+    }
+
+    private static String occurredBucket(long day, int shard) {
+        return day + "#" + shard;
+    }
+
     @Override
     public long size() {
         //TODO: better to use a separate table with counters
-        return table.scanStream(new ScanSpec().withAttributesToGet("streamName"), true)
-            .map((item) -> item.getString("streamName"))
-            .collect(Collectors.toSet()).size();
+        try (Stream<Item> items = table.parallelScanStream(
+                    new ScanRequest().withAttributesToGet("streamName"),
+                    scanSegments,
+                    scanExecutor,
+                    scanReadCapacityPerSecond)) {
+            return items.map((item) -> item.getString("streamName")).collect(Collectors.toSet()).size();
+        }
     }
 
     @Override
@@ -125,6 +553,7 @@ public class DynamoDbEventStore extends AbstractEventStore<Item> {
             .withAttributesToGet("streamVersion")
             .withScanIndexForward(false)
             .withHashKey("streamName", streamName)
+            .withRangeKeyCondition(new RangeKeyCondition("streamVersion").lt(RESERVED_VERSION))
             .withMaxResultSize(1)
         ).map(e -> (long) e.getLong("streamVersion")).findAny().orElse(0L);
     }
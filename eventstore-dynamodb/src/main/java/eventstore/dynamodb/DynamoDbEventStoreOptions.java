@@ -0,0 +1,42 @@
+package eventstore.dynamodb;
+
+import java.time.Clock;
+
+/**
+ * Optional settings of a {@link DynamoDbEventStore}, which are given to its constructor and fixed afterwards.
+ */
+public class DynamoDbEventStoreOptions {
+
+    private boolean timeIndex = false;
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Enables the index of the events by time (see {@link DynamoDbEventStore#OCCURRED_ON_INDEX}), which the reads of
+     * the events within a period are served by. The index is created along with the table, and its key is written
+     * with every appended event, so that it costs an extra write per event. The existing tables are migrated with
+     * {@link DynamoDbEventStore#migrateTimeIndex()} once the index is enabled.
+     * @return these options
+     */
+    public DynamoDbEventStoreOptions withTimeIndex() {
+        this.timeIndex = true;
+        return this;
+    }
+
+    public boolean isTimeIndex() {
+        return timeIndex;
+    }
+
+    /**
+     * Sets the clock the appended events are stamped with, which is the system one by default.
+     * @param clock clock is to be used for stamping the events, e.g. a fixed one for tests
+     * @return these options
+     */
+    public DynamoDbEventStoreOptions withClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+}
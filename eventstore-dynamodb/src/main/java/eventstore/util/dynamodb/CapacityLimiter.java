@@ -0,0 +1,383 @@
+package eventstore.util.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Client-side limiter of the capacity consumed by the requests to DynamoDB, so that the bulk jobs do not exhaust the
+ * provisioned throughput of the tables used by the online traffic. Every table has a token bucket for the reads and
+ * another one for the writes, refilled at the rate of the provisioned throughput of the table. The requests take
+ * the average capacity they consume from the bucket before being sent, and then the bucket is corrected by the
+ * capacity DynamoDB reports as consumed.
+ * The rate adapts to the throttling (AIMD): it is halved every time DynamoDB rejects a request, or leaves some items of
+ * a batch unprocessed, and then it slowly grows back to the provisioned throughput.
+ * The calls are made either with the {@link Priority#ONLINE} priority, which could drain the whole bucket, or with the
+ * {@link Priority#BATCH} one, which waits while the bucket is below the reserve kept for the bursts of the online
+ * calls, so that the batch calls use only the capacity the online calls leave, see {@link #withPriority}.
+ * The limiter applies to the requests made through {@link #client()}, e.g. by the {@link ExtendedTable}, the event
+ * store and the repositories given that client.
+ * Note, that the wrapped client must not retry the throttled requests itself, i.e. it must be created with
+ * {@code new ClientConfiguration().withMaxErrorRetry(0)}. Otherwise the limiter sees the throttling only once the
+ * client gives up, after its own back-off, so that the rate is decreased too late. The limiter retries the throttled
+ * requests instead, up to {@link #MAX_THROTTLED_RETRIES} times, every time at the decreased rate.
+ */
+public class CapacityLimiter {
+
+    /**
+     * Priority of the calls made by the current thread.
+     */
+    public enum Priority { ONLINE, BATCH }
+
+    /**
+     * How many times a throttled request is retried, before the throttling is thrown to the caller.
+     */
+    public static final int MAX_THROTTLED_RETRIES = 10;
+    private static final ThreadLocal<Priority> priority = ThreadLocal.withInitial(() -> Priority.ONLINE);
+    // how often the provisioned throughput of a table is described again
+    private static final long DESCRIBE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final AmazonDynamoDB client;
+    private final AmazonDynamoDB limited;
+    private final double batchShare;
+    private final Ticker ticker;
+    private final ConcurrentMap<String, Buckets> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the limiter keeping half of every bucket for the online calls.
+     */
+    public CapacityLimiter(AmazonDynamoDB client) {
+        this(client, 0.5);
+    }
+
+    /**
+     * Creates the limiter.
+     * @param client client, whose requests are limited
+     * @param batchShare which share of every bucket the batch calls could drain, between 0 and 1, the rest is kept for
+     *                   the online calls
+     */
+    public CapacityLimiter(AmazonDynamoDB client, double batchShare) {
+        this(client, batchShare, Ticker.SYSTEM);
+    }
+
+    CapacityLimiter(AmazonDynamoDB client, double batchShare, Ticker ticker) {
+        if (batchShare <= 0 || batchShare > 1) {
+            throw new IllegalArgumentException("Invalid share of the batch calls " + batchShare);
+        }
+        this.client     = client;
+        this.batchShare = batchShare;
+        this.ticker     = ticker;
+        this.limited    = (AmazonDynamoDB) Proxy.newProxyInstance(
+                AmazonDynamoDB.class.getClassLoader(),
+                new Class<?>[] { AmazonDynamoDB.class },
+                (proxy, method, args) -> {
+                    Object request = args != null && args.length == 1 ? args[0] : null;
+                    List<Buckets.Bucket> buckets = buckets(request);
+                    if (buckets.isEmpty()) {
+                        return invoke(method, args);
+                    }
+                    for (int retries = 0; ; ++retries) {
+                        buckets.forEach(bucket -> bucket.acquire(priority.get()));
+                        try {
+                            Object result = invoke(method, args);
+                            consumed(result);
+                            return result;
+                        } catch (ProvisionedThroughputExceededException e) {
+                            // the table, which throttled the batch, is unknown
+                            buckets.forEach(Buckets.Bucket::throttled);
+                            if (retries >= MAX_THROTTLED_RETRIES) {
+                                throw e;
+                            }
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Returns the client, whose requests are limited. Only the requests taking the request objects are limited, which
+     * are the ones used by the document API, e.g. {@link ExtendedTable}.
+     */
+    public AmazonDynamoDB client() {
+        return limited;
+    }
+
+    /**
+     * Makes the calls of the given supplier with the given priority, e.g. the calls of a bulk job with
+     * {@link Priority#BATCH}. Note, that the priority applies only to the calls made by the current thread.
+     */
+    public static <V> V withPriority(Priority p, Supplier<V> calls) {
+        Priority previous = priority.get();
+        priority.set(p);
+        try {
+            return calls.get();
+        } finally {
+            priority.set(previous);
+        }
+    }
+
+    /**
+     * Returns the priority of the calls made by the current thread.
+     */
+    public static Priority priority() {
+        return priority.get();
+    }
+
+    private Object invoke(java.lang.reflect.Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(client, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the buckets the given request takes the capacity from, i.e. a bucket of every table of a batch request,
+     * or none if the request is not limited. The request is made to return the consumed capacity.
+     */
+    private List<Buckets.Bucket> buckets(Object request) {
+        String total = ReturnConsumedCapacity.TOTAL.toString();
+        if (request instanceof GetItemRequest) {
+            GetItemRequest r = (GetItemRequest) request;
+            r.setReturnConsumedCapacity(total);
+            return Collections.singletonList(buckets(r.getTableName()).reads);
+        } else if (request instanceof QueryRequest) {
+            QueryRequest r = (QueryRequest) request;
+            r.setReturnConsumedCapacity(total);
+            return Collections.singletonList(buckets(r.getTableName()).reads);
+        } else if (request instanceof ScanRequest) {
+            ScanRequest r = (ScanRequest) request;
+            r.setReturnConsumedCapacity(total);
+            return Collections.singletonList(buckets(r.getTableName()).reads);
+        } else if (request instanceof BatchGetItemRequest) {
+            BatchGetItemRequest r = (BatchGetItemRequest) request;
+            r.setReturnConsumedCapacity(total);
+            return r.getRequestItems().keySet().stream().map(table -> buckets(table).reads).collect(Collectors.toList());
+        } else if (request instanceof PutItemRequest) {
+            PutItemRequest r = (PutItemRequest) request;
+            r.setReturnConsumedCapacity(total);
+            return Collections.singletonList(buckets(r.getTableName()).writes);
+        } else if (request instanceof UpdateItemRequest) {
+            UpdateItemRequest r = (UpdateItemRequest) request;
+            r.setReturnConsumedCapacity(total);
+            return Collections.singletonList(buckets(r.getTableName()).writes);
+        } else if (request instanceof DeleteItemRequest) {
+            DeleteItemRequest r = (DeleteItemRequest) request;
+            r.setReturnConsumedCapacity(total);
+            return Collections.singletonList(buckets(r.getTableName()).writes);
+        } else if (request instanceof BatchWriteItemRequest) {
+            BatchWriteItemRequest r = (BatchWriteItemRequest) request;
+            r.setReturnConsumedCapacity(total);
+            return r.getRequestItems().keySet().stream().map(table -> buckets(table).writes).collect(Collectors.toList());
+        }
+        return Collections.emptyList();
+    }
+
+    private void consumed(Object result) {
+        if (result instanceof GetItemResult) {
+            consumed(((GetItemResult) result).getConsumedCapacity(), true);
+        } else if (result instanceof QueryResult) {
+            consumed(((QueryResult) result).getConsumedCapacity(), true);
+        } else if (result instanceof ScanResult) {
+            consumed(((ScanResult) result).getConsumedCapacity(), true);
+        } else if (result instanceof BatchGetItemResult) {
+            BatchGetItemResult r = (BatchGetItemResult) result;
+            consumed(r.getConsumedCapacity(), true);
+            if (r.getUnprocessedKeys() != null) {
+                r.getUnprocessedKeys().keySet().forEach(table -> buckets(table).reads.throttled());
+            }
+        } else if (result instanceof PutItemResult) {
+            consumed(((PutItemResult) result).getConsumedCapacity(), false);
+        } else if (result instanceof UpdateItemResult) {
+            consumed(((UpdateItemResult) result).getConsumedCapacity(), false);
+        } else if (result instanceof DeleteItemResult) {
+            consumed(((DeleteItemResult) result).getConsumedCapacity(), false);
+        } else if (result instanceof BatchWriteItemResult) {
+            BatchWriteItemResult r = (BatchWriteItemResult) result;
+            consumed(r.getConsumedCapacity(), false);
+            if (r.getUnprocessedItems() != null) {
+                r.getUnprocessedItems().keySet().forEach(table -> buckets(table).writes.throttled());
+            }
+        }
+    }
+
+    private void consumed(List<ConsumedCapacity> capacities, boolean reads) {
+        Optional.ofNullable(capacities).orElse(Collections.emptyList()).forEach(c -> consumed(c, reads));
+    }
+
+    private void consumed(ConsumedCapacity capacity, boolean reads) {
+        if (capacity != null && capacity.getTableName() != null && capacity.getCapacityUnits() != null) {
+            Buckets buckets = buckets(capacity.getTableName());
+            (reads ? buckets.reads : buckets.writes).consumed(capacity.getCapacityUnits());
+        }
+    }
+
+    private Buckets buckets(String tableName) {
+        long now = ticker.nanoTime();
+        Buckets buckets = tables.get(tableName);
+        if (buckets == null) {
+            // the table is described outside of the map, so that the blocking call does not lock the other tables,
+            // the concurrent callers could describe it more than once, but only the first buckets are kept
+            Buckets described = new Buckets(describe(tableName), now);
+            buckets = Optional.ofNullable(tables.putIfAbsent(tableName, described)).orElse(described);
+        }
+        if (now - buckets.describedOn > DESCRIBE_INTERVAL_NANOS) {
+            // the throughput could be updated, the rest calls use the old one until the new one is described
+            synchronized (buckets) {
+                if (now - buckets.describedOn > DESCRIBE_INTERVAL_NANOS) {
+                    buckets.describedOn = now;
+                    buckets.provisioned(describe(tableName));
+                }
+            }
+        }
+        return buckets;
+    }
+
+    private ProvisionedThroughputDescription describe(String tableName) {
+        return client.describeTable(tableName).getTable().getProvisionedThroughput();
+    }
+
+    private final class Buckets {
+        final Bucket reads;
+        final Bucket writes;
+        volatile long describedOn;
+
+        Buckets(ProvisionedThroughputDescription throughput, long describedOn) {
+            this.reads       = new Bucket(throughput.getReadCapacityUnits());
+            this.writes      = new Bucket(throughput.getWriteCapacityUnits());
+            this.describedOn = describedOn;
+        }
+
+        void provisioned(ProvisionedThroughputDescription throughput) {
+            reads.provisioned(throughput.getReadCapacityUnits());
+            writes.provisioned(throughput.getWriteCapacityUnits());
+        }
+
+        /**
+         * Token bucket of the capacity units, whose capacity is the amount of units refilled per second, i.e. it
+         * allows bursts of up to a second of the throughput.
+         */
+        final class Bucket {
+            // the rate never drops below this share of the provisioned throughput
+            private static final double MIN_RATE_SHARE = 0.05;
+            // share of the provisioned throughput the rate grows by every second without the throttling
+            private static final double INCREASE_SHARE = 0.1;
+
+            private double maxRate;
+            private double rate;
+            private double tokens;
+            // average units consumed by a request, which are taken before the request is sent
+            private double averageUnits = 1;
+            private long refilledOn = ticker.nanoTime();
+            private long increasedOn = refilledOn;
+
+            Bucket(Long provisioned) {
+                provisioned(provisioned);
+                this.rate   = maxRate;
+                this.tokens = maxRate;
+            }
+
+            synchronized void provisioned(Long provisioned) {
+                maxRate = provisioned == null || provisioned <= 0 ? 0 : provisioned;
+                rate    = Math.min(rate, maxRate);
+            }
+
+            void acquire(Priority p) {
+                while (true) {
+                    long waitNanos;
+                    synchronized (this) {
+                        if (maxRate <= 0) {
+                            return;
+                        }
+                        refill();
+                        // the batch calls leave the rest capacity to the online ones
+                        double reserve = p == Priority.BATCH ? rate * (1 - batchShare) : 0;
+                        if (tokens > reserve) {
+                            tokens -= averageUnits;
+                            return;
+                        }
+                        waitNanos = (long) ((reserve - tokens + Math.min(averageUnits, rate)) / rate * 1e9);
+                    }
+                    try {
+                        ticker.sleep(Math.max(waitNanos, 1));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for the capacity", e);
+                    }
+                }
+            }
+
+            synchronized void consumed(double units) {
+                // the tokens could go below zero, then the next calls wait until the debt is refilled
+                tokens      -= units - averageUnits;
+                averageUnits = averageUnits * 0.9 + units * 0.1;
+                long now = ticker.nanoTime();
+                if (now - increasedOn >= TimeUnit.SECONDS.toNanos(1)) {
+                    rate        = Math.min(maxRate, rate + maxRate * INCREASE_SHARE);
+                    increasedOn = now;
+                }
+            }
+
+            synchronized void throttled() {
+                rate        = Math.max(maxRate * MIN_RATE_SHARE, rate / 2);
+                tokens      = Math.min(tokens, 0);
+                increasedOn = ticker.nanoTime();
+            }
+
+            private void refill() {
+                long now = ticker.nanoTime();
+                tokens     = Math.min(rate, tokens + rate * (now - refilledOn) / 1e9);
+                refilledOn = now;
+            }
+        }
+    }
+
+    /**
+     * Source of the time the buckets are refilled by, which is replaced by the tests.
+     */
+    interface Ticker {
+        Ticker SYSTEM = new Ticker() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+
+            @Override
+            public void sleep(long nanos) throws InterruptedException {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            }
+        };
+
+        long nanoTime();
+
+        void sleep(long nanos) throws InterruptedException;
+    }
+}
@@ -3,6 +3,9 @@ package eventstore.util.dynamodb;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.AttributeUpdate;
+import com.amazonaws.services.dynamodbv2.document.BatchGetItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.BatchWriteItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.ItemCollection;
 import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
@@ -10,6 +13,8 @@ import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
 import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
 import com.amazonaws.services.dynamodbv2.document.ScanOutcome;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
 import com.amazonaws.services.dynamodbv2.document.UpdateItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.internal.InternalUtils;
 import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
@@ -20,6 +25,7 @@ import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
@@ -35,15 +41,22 @@ import com.amazonaws.services.dynamodbv2.model.StreamSpecification;
 import com.amazonaws.services.dynamodbv2.model.StreamViewType;
 import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.UpdateTableResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import eventstore.util.collection.Collections;
+import eventstore.util.collection.PagingIterator;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -53,7 +66,20 @@ import java.util.stream.Stream;
  */
 public class ExtendedTable extends Table {
 
+    /**
+     * Maximum amount of the keys DynamoDB accepts in a single BatchGetItem request.
+     */
+    public static final int BATCH_GET_LIMIT = 100;
+    /**
+     * Maximum amount of the items DynamoDB accepts in a single BatchWriteItem request.
+     */
+    public static final int BATCH_WRITE_LIMIT = 25;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
     protected final AmazonDynamoDB client;
+    // how many pages the query and scan streams request ahead of the consumed one, see withReadAhead
+    private volatile int readAhead = 0;
+    private volatile Executor readAheadExecutor;
 
     public ExtendedTable(AmazonDynamoDB client, String tableName) { 
         super(client, tableName);
@@ -105,6 +131,27 @@ public class ExtendedTable extends Table {
         this(getClient(table), table.getTableName());
     }
 
+    /**
+     * Makes the query and scan streams request the next pages on the given executor, while the current page is
+     * consumed, so that the latency of DynamoDB is hidden behind the processing of the items. Note, that the
+     * prefetched pages are wasted, if the consumer stops before reaching them.
+     * @param readAhead maximum amount of the pages requested ahead of the consumed one, or 0 to disable prefetching
+     * @param executor executor requesting the pages
+     * @return this table
+     */
+    public ExtendedTable withReadAhead(int readAhead, Executor executor) {
+        if (readAhead < 0) {
+            throw new IllegalArgumentException("Invalid read-ahead depth " + readAhead);
+        }
+        this.readAheadExecutor = executor;
+        this.readAhead         = readAhead;
+        return this;
+    }
+
+    public AmazonDynamoDB getClient() {
+        return client;
+    }
+
     public boolean createIfNotExists(String idName, Class<?> idClass, ProvisionedThroughput t) {
         return createIfNotExists(
             Arrays.asList(new AttributeDefinition(idName, Number.class.isAssignableFrom(idClass) ? "N" : "S")),
@@ -184,6 +231,12 @@ public class ExtendedTable extends Table {
         return queryStream(query, false);
     }
 
+    public Stream<Item> queryStream(String indexName, QuerySpec q, boolean all) {
+        return Collections.stream(
+            doGetResult((lastEvaluatedKey) -> getIndex(indexName).query(q.withExclusiveStartKey(lastEvaluatedKey)), all)
+        );
+    }
+
     public long count() {
         // TODO: return more up-to-date number
         return describe().getItemCount();
@@ -195,6 +248,62 @@ public class ExtendedTable extends Table {
         );
     }
 
+    /**
+     * Returns the scanned items page by page, every page is read by the LastEvaluatedKey of the previous one, and the
+     * next page is prefetched while the current one is consumed, see {@link PagingIterator}.
+     * @param scan scan specification, whose start key and result size are set for every page
+     * @param pageSize maximum amount of the items read at once
+     * @param executor executor prefetching the pages
+     */
+    public Stream<Item> scanStream(ScanSpec scan, int pageSize, Executor executor) {
+        return paged((lastEvaluatedKey) -> scan(scan.withMaxResultSize(pageSize).withExclusiveStartKey(lastEvaluatedKey)), pageSize, executor);
+    }
+
+    /**
+     * Same as {@link #scanStream(ScanSpec, int, Executor)}, but for the query.
+     */
+    public Stream<Item> queryStream(QuerySpec query, int pageSize, Executor executor) {
+        return paged((lastEvaluatedKey) -> query(query.withMaxResultSize(pageSize).withExclusiveStartKey(lastEvaluatedKey)), pageSize, executor);
+    }
+
+    private <T> Stream<Item> paged(Function<KeyAttribute[], ItemCollection<T>> fetch, int pageSize, Executor executor) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size " + pageSize);
+        }
+        CapacityLimiter.Priority priority = CapacityLimiter.priority();
+        return Collections.<Item, KeyAttribute[]>paged(
+            (lastEvaluatedKey) -> CapacityLimiter.withPriority(priority, () -> {
+                ItemCollection<T> fetched = fetch.apply(lastEvaluatedKey.orElse(null));
+                List<Item> page = new ArrayList<>(pageSize);
+                fetched.forEach(page::add);
+                return new PagingIterator.Page<>(page, Optional.ofNullable(lastEvaluatedKey(fetched)));
+            }),
+            executor
+        );
+    }
+
+    /**
+     * Scans the table split into the given amount of the segments, which are scanned concurrently on the given
+     * executor, so that reading the whole large table is not limited by the latency of a single sequential scan.
+     * The items are returned in no particular order. Closing the returned stream stops the scan. The segments are
+     * scanned with the {@link CapacityLimiter.Priority#BATCH} priority.
+     * @param scan scan request, which is copied for every segment
+     * @param totalSegments amount of the segments, i.e. the degree of the parallelism
+     * @param executor executor scanning the segments, which should have at least the given amount of threads
+     * @param readCapacityPerSecond read capacity units per second the whole scan is allowed to consume, or 0, if the
+     *                              scan is not limited
+     */
+    public Stream<Item> parallelScanStream(ScanRequest scan, int totalSegments, Executor executor, double readCapacityPerSecond) {
+        ParallelScanIterator items = new ParallelScanIterator(
+                client,
+                scan.clone().withTableName(getTableName()),
+                totalSegments,
+                executor,
+                readCapacityPerSecond
+        );
+        return Collections.stream(items).onClose(items::cancel);
+    }
+
     public Stream<Item> scanStream(ScanSpec scan) {
         return scanStream(scan, false);
     }
@@ -207,7 +316,124 @@ public class ExtendedTable extends Table {
         return scanStream(false);
     }
 
+    /**
+     * Reads the items with the given keys using as few BatchGetItem requests as possible. The keys DynamoDB did not
+     * process (e.g. because of the throttling) are requested again with an exponential backoff.
+     * @param keys primary keys of the items are to be read
+     * @return the found items in no particular order
+     */
+    public List<Item> batchGetItems(Collection<PrimaryKey> keys) {
+        DynamoDB dynamoDb = new DynamoDB(client);
+        List<PrimaryKey> uniqueKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        List<Item> items = new ArrayList<>(uniqueKeys.size());
+        for (int from = 0; from < uniqueKeys.size(); from += BATCH_GET_LIMIT) {
+            items.addAll(batchGetChunk(dynamoDb, uniqueKeys.subList(from, Math.min(from + BATCH_GET_LIMIT, uniqueKeys.size()))));
+        }
+        return items;
+    }
+
+    /**
+     * Same as {@link #batchGetItems(Collection)}, but the BatchGetItem requests are sent concurrently using the given
+     * executor.
+     * @param keys primary keys of the items are to be read
+     * @param executor executor sending the requests
+     * @return the found items in no particular order
+     */
+    public List<Item> batchGetItems(Collection<PrimaryKey> keys, Executor executor) {
+        if (keys.size() <= BATCH_GET_LIMIT) {
+            return batchGetItems(keys);
+        }
+        DynamoDB dynamoDb = new DynamoDB(client);
+        List<PrimaryKey> uniqueKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        List<CompletableFuture<List<Item>>> chunks = new ArrayList<>();
+        for (int from = 0; from < uniqueKeys.size(); from += BATCH_GET_LIMIT) {
+            List<PrimaryKey> chunk = uniqueKeys.subList(from, Math.min(from + BATCH_GET_LIMIT, uniqueKeys.size()));
+            chunks.add(CompletableFuture.supplyAsync(() -> batchGetChunk(dynamoDb, chunk), executor));
+        }
+        List<Item> items = new ArrayList<>(uniqueKeys.size());
+        for (CompletableFuture<List<Item>> chunk : chunks) {
+            try {
+                items.addAll(chunk.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        return items;
+    }
+
+    private List<Item> batchGetChunk(DynamoDB dynamoDb, List<PrimaryKey> chunk) {
+        List<Item> items = new ArrayList<>(chunk.size());
+        BatchGetItemOutcome outcome = dynamoDb.batchGetItem(
+                new TableKeysAndAttributes(getTableName()).withPrimaryKeys(chunk.toArray(new PrimaryKey[chunk.size()]))
+        );
+        for (long backoff = 50; ; backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS)) {
+            Optional.ofNullable(outcome.getTableItems().get(getTableName())).ifPresent(items::addAll);
+            Map<String, KeysAndAttributes> unprocessed = outcome.getUnprocessedKeys();
+            if (unprocessed == null || unprocessed.isEmpty()) {
+                return items;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading the items from " + getTableName(), e);
+            }
+            outcome = dynamoDb.batchGetItemUnprocessed(unprocessed);
+        }
+    }
+
+    /**
+     * Puts and deletes the given items using as few BatchWriteItem requests as possible. The items DynamoDB did not
+     * process (e.g. because of the throttling) are written again with an exponential backoff.
+     * Note, that the batch writes cannot be conditional, so that they suit only the items without optimistic locking.
+     * @param items items are to be put
+     * @param keys primary keys of the items are to be deleted
+     */
+    public void batchWriteItems(Collection<Item> items, Collection<PrimaryKey> keys) {
+        DynamoDB dynamoDb = new DynamoDB(client);
+        List<Object> writes = new ArrayList<>(items.size() + keys.size());
+        writes.addAll(items);
+        writes.addAll(keys);
+        for (int from = 0; from < writes.size(); from += BATCH_WRITE_LIMIT) {
+            TableWriteItems chunk = new TableWriteItems(getTableName());
+            for (Object write : writes.subList(from, Math.min(from + BATCH_WRITE_LIMIT, writes.size()))) {
+                if (write instanceof Item) {
+                    chunk.addItemToPut((Item) write);
+                } else {
+                    chunk.addPrimaryKeyToDelete((PrimaryKey) write);
+                }
+            }
+            BatchWriteItemOutcome outcome = dynamoDb.batchWriteItem(chunk);
+            for (long backoff = 50; ; backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS)) {
+                Map<String, List<WriteRequest>> unprocessed = outcome.getUnprocessedItems();
+                if (unprocessed == null || unprocessed.isEmpty()) {
+                    break;
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while writing the items into " + getTableName(), e);
+                }
+                outcome = dynamoDb.batchWriteItemUnprocessed(unprocessed);
+            }
+        }
+    }
+
     private <T> Iterator<Item> doGetResult(Function<KeyAttribute[], ItemCollection<T>> fetch, boolean all) {
+        int depth = readAhead;
+        if (depth > 0) {
+            // the pages are prefetched with the priority of the calling thread
+            CapacityLimiter.Priority priority = CapacityLimiter.priority();
+            // every page of the collection is the cursor of the next one
+            return new PagingIterator<Item, com.amazonaws.services.dynamodbv2.document.Page<Item, T>>(
+                (previous) -> CapacityLimiter.withPriority(priority, () ->
+                    page(previous.isPresent() ? previous.get().nextPage() : fetch.apply(null).firstPage())
+                ),
+                readAheadExecutor,
+                depth
+            );
+        }
         return new Iterator<Item>() {
 
             Iterator<Item> items;
@@ -227,19 +453,33 @@ public class ExtendedTable extends Table {
             public boolean fetch() {
                 ItemCollection<T> fetched = fetch.apply(lastEvaluatedKey);
                 items = fetched.iterator();
-                if (fetched.getLastLowLevelResult() instanceof ScanOutcome) {
-                    lastEvaluatedKey = toKeyAttributes(
-                            ((ScanOutcome) fetched.getLastLowLevelResult()).getScanResult().getLastEvaluatedKey());
-                } else if (fetched.getLastLowLevelResult() instanceof QueryOutcome) {
-                    lastEvaluatedKey = toKeyAttributes(
-                        ((QueryOutcome) fetched.getLastLowLevelResult()).getQueryResult().getLastEvaluatedKey());
-                }
+                lastEvaluatedKey = lastEvaluatedKey(fetched);
                 return items.hasNext();
             }
 
         };
     }
 
+    private static <T> PagingIterator.Page<Item, com.amazonaws.services.dynamodbv2.document.Page<Item, T>> page(
+            com.amazonaws.services.dynamodbv2.document.Page<Item, T> page) {
+        List<Item> items = new ArrayList<>(page.size());
+        page.forEach(items::add);
+        return new PagingIterator.Page<>(items, page.hasNextPage() ? Optional.of(page) : Optional.empty());
+    }
+
+    /**
+     * Returns the key the read items end with, or null, if there are no more items.
+     */
+    private <T> KeyAttribute[] lastEvaluatedKey(ItemCollection<T> fetched) {
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        if (fetched.getLastLowLevelResult() instanceof ScanOutcome) {
+            lastEvaluatedKey = ((ScanOutcome) fetched.getLastLowLevelResult()).getScanResult().getLastEvaluatedKey();
+        } else if (fetched.getLastLowLevelResult() instanceof QueryOutcome) {
+            lastEvaluatedKey = ((QueryOutcome) fetched.getLastLowLevelResult()).getQueryResult().getLastEvaluatedKey();
+        }
+        return lastEvaluatedKey == null || lastEvaluatedKey.isEmpty() ? null : toKeyAttributes(lastEvaluatedKey);
+    }
+
     private KeyAttribute[] toKeyAttributes(Map<String, AttributeValue> values) {
         return values.entrySet()
                 .stream()
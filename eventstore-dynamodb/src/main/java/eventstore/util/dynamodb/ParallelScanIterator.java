@@ -0,0 +1,208 @@
+package eventstore.util.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.internal.InternalUtils;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterator over the items of a scan split into the segments, which are scanned concurrently on the given executor,
+ * see {@link ExtendedTable#parallelScanStream(ScanRequest, int, Executor, double)}. Every segment puts the read pages
+ * into a bounded queue, so that the segments wait for the consumer, when it is slower than them. The items are
+ * returned in no particular order. The scan is cancelled, once the consumer fails or closes the stream, or does not
+ * take a page for the given time, e.g. because it abandoned the stream without closing it. The consumer of the
+ * cancelled scan fails rather than gets the items read so far.
+ */
+class ParallelScanIterator implements Iterator<Item> {
+
+    /**
+     * Default time the segments wait for the consumer to take a page, before they give the scan up.
+     */
+    static final long CONSUMER_TIMEOUT_MILLIS = 60_000;
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final BlockingQueue<Page> pages;
+    private final String tableName;
+    private final int totalSegments;
+    private final long consumerTimeoutMillis;
+    private Iterator<Item> current = java.util.Collections.emptyIterator();
+    private int finishedSegments = 0;
+    private volatile boolean cancelled = false;
+
+    ParallelScanIterator(
+            AmazonDynamoDB client,
+            ScanRequest scan,
+            int totalSegments,
+            Executor executor,
+            double readCapacityPerSecond) {
+        this(client, scan, totalSegments, executor, readCapacityPerSecond, CONSUMER_TIMEOUT_MILLIS);
+    }
+
+    ParallelScanIterator(
+            AmazonDynamoDB client,
+            ScanRequest scan,
+            int totalSegments,
+            Executor executor,
+            double readCapacityPerSecond,
+            long consumerTimeoutMillis) {
+        if (totalSegments <= 0) {
+            throw new IllegalArgumentException("Invalid amount of the segments " + totalSegments);
+        }
+        this.tableName             = scan.getTableName();
+        this.totalSegments         = totalSegments;
+        this.consumerTimeoutMillis = consumerTimeoutMillis;
+        this.pages                 = new ArrayBlockingQueue<>(totalSegments * 2);
+        CapacityBudget budget = new CapacityBudget(readCapacityPerSecond);
+        for (int segment = 0; segment < totalSegments; ++segment) {
+            ScanRequest segmentScan = scan.clone()
+                .withSegment(segment)
+                .withTotalSegments(totalSegments)
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+            executor.execute(() -> CapacityLimiter.withPriority(CapacityLimiter.Priority.BATCH, () -> {
+                scanSegment(client, segmentScan, budget);
+                return null;
+            }));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext() && finishedSegments < totalSegments) {
+            Page page;
+            try {
+                page = pages.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new IllegalStateException("Interrupted while scanning " + tableName, e);
+            }
+            if (page == null) {
+                // the cancelled segments stop without finishing, so that the rest items never come
+                if (cancelled) {
+                    throw new IllegalStateException("The scan of " + tableName + " was cancelled");
+                }
+                continue;
+            }
+            if (page.failure != null) {
+                cancel();
+                throw page.failure;
+            }
+            if (page.items == null) {
+                ++finishedSegments;
+            } else {
+                current = page.items.iterator();
+            }
+        }
+        return current.hasNext();
+    }
+
+    @Override
+    public Item next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Stops scanning the segments, e.g. when the consumer does not need the rest items or failed.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    private void scanSegment(AmazonDynamoDB client, ScanRequest scan, CapacityBudget budget) {
+        try {
+            Map<String, AttributeValue> lastEvaluatedKey = null;
+            do {
+                ScanResult result = client.scan(scan.clone().withExclusiveStartKey(lastEvaluatedKey));
+                if (result.getConsumedCapacity() != null) {
+                    budget.consume(result.getConsumedCapacity().getCapacityUnits());
+                }
+                if (!put(new Page(InternalUtils.toItemList(result.getItems()), null))) {
+                    return;
+                }
+                lastEvaluatedKey = result.getLastEvaluatedKey();
+            } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+            put(new Page(null, null));
+        } catch (RuntimeException e) {
+            put(new Page(null, e));
+        }
+    }
+
+    /**
+     * Puts the page into the queue, unless the scan is cancelled. The scan is cancelled, if the consumer does not take
+     * a page for {@link #consumerTimeoutMillis}.
+     * @return false if the scan is cancelled
+     */
+    private boolean put(Page page) {
+        long deadline = System.currentTimeMillis() + consumerTimeoutMillis;
+        try {
+            while (!cancelled) {
+                if (pages.offer(page, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    cancel();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+        }
+        return false;
+    }
+
+    private static final class Page {
+        // null, when the segment is finished
+        final List<Item> items;
+        final RuntimeException failure;
+
+        Page(List<Item> items, RuntimeException failure) {
+            this.items   = items;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Paces the segments, so that they consume no more read capacity per second than the given budget in total.
+     */
+    private static final class CapacityBudget {
+        private final double capacityPerSecond;
+        // the moment, when the next request is allowed to start
+        private long nextAllowedNanos = System.nanoTime();
+
+        CapacityBudget(double capacityPerSecond) {
+            this.capacityPerSecond = capacityPerSecond;
+        }
+
+        void consume(Double capacityUnits) {
+            if (capacityPerSecond <= 0 || capacityUnits == null) {
+                return;
+            }
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                nextAllowedNanos = Math.max(nextAllowedNanos, now) + (long) (capacityUnits / capacityPerSecond * 1e9);
+                waitNanos = nextAllowedNanos - now;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the read capacity", e);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package eventstore.dynamodb;
 
 import eventstore.impl.AbstractEventStoreSpec;
+import eventstore.util.dynamodb.GsonDynamoDbObjectMapper;
 import eventstore.util.dynamodb.LocalAmazonDynamoDbClient;
 import java.util.UUID;
 
@@ -10,7 +11,14 @@ public class DynamoDbEventStoreSpec extends AbstractEventStoreSpec {
                     new LocalAmazonDynamoDbClient(9823),
                     (client) -> {
                         String eventStoreTable = "Events" + UUID.randomUUID();
-                        return () -> new DynamoDbEventStore(client, eventStoreTable, 1000, 1000);
+                        return () -> new DynamoDbEventStore(
+                            client,
+                            eventStoreTable,
+                            1000,
+                            1000,
+                            new GsonDynamoDbObjectMapper(),
+                            new DynamoDbEventStoreOptions().withTimeIndex()
+                        );
                     }
         ));
     }
@@ -0,0 +1,190 @@
+package eventstore.util.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CapacityLimiterSpec {
+    private static final String TABLE = "Events";
+    private static final String OTHER_TABLE = "Snapshots";
+    private static final long READS = 10;
+    private static final double DELTA = 0.001;
+
+    private final FakeTicker ticker = new FakeTicker();
+    private final AtomicInteger describes = new AtomicInteger();
+    private final AtomicInteger gets = new AtomicInteger();
+    // amount of the next reads DynamoDB throttles
+    private int throttles = 0;
+
+    @Test
+    public void burstsThenWaitsForTheRefill() {
+        AmazonDynamoDB client = new CapacityLimiter(client(), 0.5, ticker).client();
+
+        // the full bucket allows a second of the throughput at once
+        for (int i = 0; i < READS; ++i) {
+            client.getItem(new GetItemRequest().withTableName(TABLE));
+        }
+        assertEquals(0, ticker.seconds(), DELTA);
+
+        for (int i = 0; i < READS; ++i) {
+            client.getItem(new GetItemRequest().withTableName(TABLE));
+        }
+        assertEquals(1, ticker.seconds(), DELTA);
+        assertEquals(2 * READS, gets.get());
+        assertEquals(1, describes.get());
+    }
+
+    @Test
+    public void halvesTheRateOnThrottlingAndRecovers() {
+        AmazonDynamoDB client = new CapacityLimiter(client(), 0.5, ticker).client();
+        for (int i = 0; i < READS; ++i) {
+            client.getItem(new GetItemRequest().withTableName(TABLE));
+        }
+
+        // the throttled read is retried at the halved rate
+        throttles = 1;
+        double start = ticker.seconds();
+        client.getItem(new GetItemRequest().withTableName(TABLE));
+        assertEquals(0.1 + 0.2, ticker.seconds() - start, DELTA);
+        assertEquals(READS + 2, gets.get());
+
+        start = ticker.seconds();
+        client.getItem(new GetItemRequest().withTableName(TABLE));
+        assertEquals(0.2, ticker.seconds() - start, DELTA);
+
+        // the rate grows back by a tenth of the provisioned throughput per second
+        for (int i = 0; i < 100; ++i) {
+            client.getItem(new GetItemRequest().withTableName(TABLE));
+        }
+        start = ticker.seconds();
+        client.getItem(new GetItemRequest().withTableName(TABLE));
+        assertEquals(0.1, ticker.seconds() - start, DELTA);
+    }
+
+    @Test
+    public void keepsTheMinimalRateAndGivesUp() {
+        AmazonDynamoDB client = new CapacityLimiter(client(), 0.5, ticker).client();
+        throttles = Integer.MAX_VALUE;
+        try {
+            client.getItem(new GetItemRequest().withTableName(TABLE));
+            fail("The throttling should be thrown once the retries are exhausted");
+        } catch (ProvisionedThroughputExceededException e) {
+            assertEquals(CapacityLimiter.MAX_THROTTLED_RETRIES + 1, gets.get());
+        }
+        // the rate does not drop below 5% of the provisioned throughput, i.e. a read per 2 seconds
+        assertEquals(2, ticker.sleeps.get(ticker.sleeps.size() - 1) / 1e9, DELTA);
+    }
+
+    @Test
+    public void keepsTheReserveForTheOnlineCalls() {
+        AmazonDynamoDB client = new CapacityLimiter(client(), 0.5, ticker).client();
+
+        // the batch calls drain only the half of the bucket
+        CapacityLimiter.withPriority(CapacityLimiter.Priority.BATCH, () -> {
+            for (int i = 0; i < READS / 2; ++i) {
+                client.getItem(new GetItemRequest().withTableName(TABLE));
+            }
+            assertEquals(0, ticker.seconds(), DELTA);
+            client.getItem(new GetItemRequest().withTableName(TABLE));
+            assertEquals(0.1, ticker.seconds(), DELTA);
+            return null;
+        });
+
+        // the online calls drain the rest
+        for (int i = 0; i < READS / 2; ++i) {
+            client.getItem(new GetItemRequest().withTableName(TABLE));
+        }
+        assertEquals(0.1, ticker.seconds(), DELTA);
+        client.getItem(new GetItemRequest().withTableName(TABLE));
+        assertEquals(0.2, ticker.seconds(), DELTA);
+    }
+
+    @Test
+    public void batchesTakeTheCapacityOfEveryTable() {
+        AmazonDynamoDB client = new CapacityLimiter(client(), 0.5, ticker).client();
+        for (int i = 0; i < READS; ++i) {
+            client.getItem(new GetItemRequest().withTableName(OTHER_TABLE));
+        }
+        assertEquals(0, ticker.seconds(), DELTA);
+
+        // the first table has the capacity, but the other one waits for the refill
+        Map<String, KeysAndAttributes> items = new LinkedHashMap<>();
+        items.put(TABLE, new KeysAndAttributes());
+        items.put(OTHER_TABLE, new KeysAndAttributes());
+        client.batchGetItem(new BatchGetItemRequest().withRequestItems(items));
+        assertEquals(0.1, ticker.seconds(), DELTA);
+    }
+
+    private AmazonDynamoDB client() {
+        return (AmazonDynamoDB) Proxy.newProxyInstance(
+                AmazonDynamoDB.class.getClassLoader(),
+                new Class<?>[] { AmazonDynamoDB.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "describeTable":
+                            describes.incrementAndGet();
+                            return new DescribeTableResult().withTable(new TableDescription()
+                                    .withTableName(TABLE)
+                                    .withProvisionedThroughput(new ProvisionedThroughputDescription()
+                                            .withReadCapacityUnits(READS)
+                                            .withWriteCapacityUnits(READS)));
+                        case "getItem":
+                            gets.incrementAndGet();
+                            if (throttles > 0) {
+                                --throttles;
+                                throw new ProvisionedThroughputExceededException("Throttled");
+                            }
+                            return new GetItemResult().withConsumedCapacity(new ConsumedCapacity()
+                                    .withTableName(((GetItemRequest) args[0]).getTableName())
+                                    .withCapacityUnits(1.0));
+                        case "batchGetItem":
+                            return new BatchGetItemResult().withConsumedCapacity(
+                                    ((BatchGetItemRequest) args[0]).getRequestItems().keySet().stream()
+                                            .map(table -> new ConsumedCapacity().withTableName(table).withCapacityUnits(1.0))
+                                            .collect(Collectors.toList()));
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+        );
+    }
+
+    private static final class FakeTicker implements CapacityLimiter.Ticker {
+        final List<Long> sleeps = new ArrayList<>();
+        long now = 0;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            sleeps.add(nanos);
+            now += nanos;
+        }
+
+        double seconds() {
+            return now / 1e9;
+        }
+    }
+}
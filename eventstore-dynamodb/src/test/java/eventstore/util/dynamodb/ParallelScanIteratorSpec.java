@@ -0,0 +1,152 @@
+package eventstore.util.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelScanIteratorSpec {
+    private static final int SEGMENTS = 4;
+    private static final int PAGES    = 5;
+
+    @Test
+    public void scansEverySegment() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(SEGMENTS);
+        List<ScanRequest> requests = Collections.synchronizedList(new ArrayList<>());
+        try {
+            Set<String> items = new HashSet<>();
+            new ParallelScanIterator(client(scan -> {
+                requests.add(scan);
+                return page(scan);
+            }), new ScanRequest("Events"), SEGMENTS, executor, 0).forEachRemaining(item -> items.add(item.getString("id")));
+
+            Set<String> expected = new HashSet<>();
+            for (int segment = 0; segment < SEGMENTS; ++segment) {
+                for (int page = 0; page < PAGES; ++page) {
+                    expected.add(segment + "/" + page);
+                }
+            }
+            assertEquals(expected, items);
+            assertEquals(SEGMENTS * PAGES, requests.size());
+            requests.forEach(scan -> assertEquals(Integer.valueOf(SEGMENTS), scan.getTotalSegments()));
+            assertEquals(expected.size(), requests.stream().map(scan -> scan.getSegment() + "/" + scan.getExclusiveStartKey()).distinct().count());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelsTheScan() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(SEGMENTS);
+        AtomicInteger requests = new AtomicInteger();
+        try {
+            ParallelScanIterator items = new ParallelScanIterator(client(scan -> {
+                requests.incrementAndGet();
+                // the segments never end
+                return page(scan).withLastEvaluatedKey(key(0));
+            }), new ScanRequest("Events"), SEGMENTS, executor, 0);
+            items.next();
+            items.cancel();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            int made = requests.get();
+            try {
+                while (items.hasNext()) {
+                    items.next();
+                }
+                fail("The consumer should not get the items of the cancelled scan");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage().contains("cancelled"));
+            }
+            assertEquals(made, requests.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givesUpTheAbandonedScan() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(SEGMENTS);
+        try {
+            ParallelScanIterator items = new ParallelScanIterator(client(scan ->
+                page(scan).withLastEvaluatedKey(key(0))
+            ), new ScanRequest("Events"), SEGMENTS, executor, 0, 200);
+            items.next();
+            // the consumer neither takes the rest pages, nor closes the stream
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void propagatesTheFailures() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(SEGMENTS);
+        try {
+            ParallelScanIterator items = new ParallelScanIterator(client(scan -> {
+                if (scan.getSegment() == 2 && scan.getExclusiveStartKey() != null) {
+                    throw new IllegalArgumentException("The segment failed");
+                }
+                return page(scan);
+            }), new ScanRequest("Events"), SEGMENTS, executor, 0);
+            try {
+                items.forEachRemaining(item -> {});
+                fail("The failure of the segment should be propagated");
+            } catch (IllegalArgumentException e) {
+                assertEquals("The segment failed", e.getMessage());
+            }
+            // the rest segments are cancelled
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the next page of the segment, every segment has {@link #PAGES} pages of a single item.
+     */
+    private static ScanResult page(ScanRequest scan) {
+        int page = scan.getExclusiveStartKey() == null ? 0 : Integer.parseInt(scan.getExclusiveStartKey().get("page").getN()) + 1;
+        ScanResult result = new ScanResult().withItems(Collections.singletonList(
+            Collections.singletonMap("id", new AttributeValue(scan.getSegment() + "/" + page))
+        ));
+        return page + 1 < PAGES ? result.withLastEvaluatedKey(key(page)) : result;
+    }
+
+    private static Map<String, AttributeValue> key(int page) {
+        return Collections.singletonMap("page", new AttributeValue().withN(String.valueOf(page)));
+    }
+
+    private static AmazonDynamoDB client(Function<ScanRequest, ScanResult> scan) {
+        return (AmazonDynamoDB) Proxy.newProxyInstance(
+            AmazonDynamoDB.class.getClassLoader(),
+            new Class<?>[] { AmazonDynamoDB.class },
+            (proxy, method, args) -> {
+                if (!method.getName().equals("scan") || !(args[0] instanceof ScanRequest)) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                return scan.apply((ScanRequest) args[0]);
+            }
+        );
+    }
+}
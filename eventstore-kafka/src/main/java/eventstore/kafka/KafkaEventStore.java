@@ -6,9 +6,11 @@ import eventstore.EventStoreException;
 import eventstore.util.collection.Collections;
 import java.lang.InterruptedException;
 import java.lang.Math;
+import java.time.Clock;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -49,6 +51,7 @@ import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.Deserializer;
@@ -92,6 +95,7 @@ public class KafkaEventStore implements EventStore {
     private final Partitioner partitioner = new KafkaEventStorePartitioner();
     private final Optional<CuratorFramework> client;
     private final KafkaEventStoreOptimisticLockingStrategy strategy;
+    private final Clock clock;
     private final ConcurrentMap<String, InterProcessSemaphoreMutex> locks = new ConcurrentHashMap<>();
     private final ConcurrentMap<InterProcessSemaphoreMutex, Thread> acquiredLocks = new ConcurrentHashMap<>();
 
@@ -111,6 +115,27 @@ public class KafkaEventStore implements EventStore {
             String zookeeperNodes,
             Serde<Event> eventSerde,
             KafkaEventStoreOptimisticLockingStrategy strategy) {
+        this(name, applicationId, kafkaNodes, zookeeperNodes, eventSerde, strategy, Clock.systemUTC());
+    }
+
+    /**
+     * Creates the Kafka-based event store.
+     * @param name name of the event store, which is used for separation from other event stores, also it will be name
+     *             of the kafka topic with the appended events
+     * @param applicationId id of your application, which is used as Kafka's "application.id" property
+     * @param kafkaNodes comma-separated list of kafka nodes, used as Kafka's "bootstrap.servers" property
+     * @param zookeeperNodes comma-separated list of zookeeper nodes, used as Kafka's "zookeeper.connect" property
+     * @param eventSerde serde for events
+     * @param strategy optimistic locking strategy
+     * @param clock clock the appended events are stamped with
+     */
+    public KafkaEventStore(String name,
+            String applicationId,
+            String kafkaNodes,
+            String zookeeperNodes,
+            Serde<Event> eventSerde,
+            KafkaEventStoreOptimisticLockingStrategy strategy,
+            Clock clock) {
         this.name           = name;
         this.applicationId  = applicationId;
         this.kafkaNodes     = kafkaNodes;
@@ -118,6 +143,7 @@ public class KafkaEventStore implements EventStore {
         this.sinkTopic      = name + "Sink";
         this.sizeTopic      = name + "Size";
         this.strategy       = strategy;
+        this.clock          = clock;
         // "pool" of event consumers
         this.consumers      = new LinkedBlockingQueue<KafkaConsumer<String, Event>>(configureConsumers(eventSerde.deserializer()));
         // all consumers used in the event store, used for closing them
@@ -268,13 +294,18 @@ public class KafkaEventStore implements EventStore {
 
     @Override
     public void append(String streamName, long currentVersion, List<? extends Event> events) {
+        long now = clock.millis();
         for (int i = 0, n = events.size(); i < n; ++i) {
-            append(streamName, currentVersion + i, events.get(i));
+            append(streamName, currentVersion + i, events.get(i), now);
         }
     }
 
     @Override
     public void append(String streamName, long currentVersion, Event event) {
+        append(streamName, currentVersion, event, clock.millis());
+    }
+
+    private void append(String streamName, long currentVersion, Event event, long occurredOn) {
         String lockName = "EventStore" + name + partitionNumber(streamName);
         // use locks only if the client is configured
         Optional<InterProcessSemaphoreMutex> lock = client.map((c) -> {
@@ -286,7 +317,7 @@ public class KafkaEventStore implements EventStore {
             return locks.get(lockName);
         });
         try {
-            Event occurredEvent = event.occurred(currentVersion + 1);
+            Event occurredEvent = event.occurred(currentVersion + 1, occurredOn);
             try {
                 // if not SINK, we use locking, so we need to check the version before apending the event
                 if (strategy != KafkaEventStoreOptimisticLockingStrategy.SINK) {
@@ -388,6 +419,82 @@ public class KafkaEventStore implements EventStore {
         ).orElse(0L);
     }
 
+    @Override
+    public long versionAt(String streamName, long timestamp) {
+        long version = version(streamName);
+        return partition(streamName).map((topicPartition) -> firstOffsetAfter(topicPartition, version, timestamp)).orElse(0L);
+    }
+
+    /**
+     * The types of the streams are not kept (there are no record headers in this version of Kafka), so
+     * {@link #eventsBetween(String, long, long)} is not supported.
+     */
+    @Override
+    public Stream<Event> eventsBetween(long from, long to) {
+        List<Event> events = new ArrayList<>();
+        for (PartitionInfo partitionInfo : withConsumer((consumer) -> consumer.partitionsFor(mainTopic()))) {
+            TopicPartition topicPartition = new TopicPartition(mainTopic(), partitionInfo.partition());
+            long end = withConsumer((consumer) -> {
+                consumer.assign(Arrays.asList(topicPartition));
+                consumer.seekToEnd(Arrays.asList(topicPartition));
+                return consumer.position(topicPartition);
+            });
+            long start = firstOffsetAfter(topicPartition, end, from - 1);
+            withConsumer((consumer) -> {
+                consumer.assign(Arrays.asList(topicPartition));
+                consumer.seek(topicPartition, start);
+                long next = start;
+                while (next < end) {
+                    ConsumerRecords<String, Event> records = consumer.poll(TIMEOUT);
+                    if (records.isEmpty()) {
+                        throw new EventStoreException(String.format("Failed to read the event %s of %s", next, topicPartition));
+                    }
+                    for (ConsumerRecord<String, Event> record : records) {
+                        if (record.value().getOccurredOn() >= to) {
+                            return null;
+                        }
+                        events.add(record.value());
+                        next = record.offset() + 1;
+                    }
+                }
+                return null;
+            });
+        }
+        events.sort(Comparator.comparingLong(Event::getOccurredOn));
+        return events.stream();
+    }
+
+    /**
+     * Finds the first offset below the given end, which event occurred after the given time. There is no
+     * timestamp-to-offset lookup in this version of Kafka, so it is a binary search over the offsets, since they are
+     * ordered by time within a partition.
+     */
+    private long firstOffsetAfter(TopicPartition topicPartition, long end, long timestamp) {
+        long low = 0, high = end;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (occurredOn(topicPartition, mid) <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long occurredOn(TopicPartition topicPartition, long offset) {
+        return withConsumer((consumer) -> {
+            consumer.assign(Arrays.asList(topicPartition));
+            consumer.seek(topicPartition, offset);
+            for (ConsumerRecord<String, Event> record : consumer.poll(TIMEOUT)) {
+                if (record.offset() == offset) {
+                    return record.value().getOccurredOn();
+                }
+            }
+            throw new EventStoreException(String.format("Failed to read the event %s of %s", offset, topicPartition));
+        });
+    }
+
     private Optional<TopicPartition> partition(String streamName) {
         // if the strategy is LOCKING, it uses only one topic
         String topic = mainTopic();
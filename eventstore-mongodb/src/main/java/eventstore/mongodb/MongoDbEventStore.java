@@ -1,6 +1,7 @@
 package eventstore.mongodb;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
 import com.mongodb.BulkWriteException;
 import com.mongodb.BulkWriteOperation;
 import com.mongodb.DBCollection;
@@ -9,19 +10,26 @@ import com.mongodb.DuplicateKeyException;
 import com.mongodb.MongoException;
 import eventstore.AbstractEventStore;
 import eventstore.Event;
-import eventstore.EventStore;
 import eventstore.EventStoreException;
+import eventstore.StreamAppend;
 import eventstore.util.DbObjectMapper;
 import eventstore.util.collection.Collections;
 import eventstore.util.mongodb.GsonMongoDbObjectMapper;
 import eventstore.util.mongodb.Migration;
+import java.time.Clock;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -47,11 +55,24 @@ public class MongoDbEventStore extends AbstractEventStore<DBObject> {
     }
 
     public MongoDbEventStore(DBCollection dbCollection, DbObjectMapper<DBObject> mapper) { 
-        super(mapper);
+        this(dbCollection, mapper, Clock.systemUTC());
+    }
+
+    /**
+     * @param clock clock the appended events are stamped with, e.g. a fixed one for tests
+     */
+    public MongoDbEventStore(DBCollection dbCollection, DbObjectMapper<DBObject> mapper, Clock clock) {
+        super(mapper, clock);
         this.dbCollection = dbCollection;
         this.mapper       = mapper;
         Migration.migrate(() -> {
             dbCollection.createIndex(new BasicDBObject("occurredOn", 1));
+            // used for finding the events of the streams of some type within a period
+            dbCollection.createIndex(new BasicDBObject("streamType", 1).append("occurredOn", 1));
+            // used for finding the version of a stream at some moment
+            dbCollection.createIndex(
+                    new BasicDBObject("_id._streamId", 1).append("occurredOn", 1).append("_id._idx", 1)
+            );
         });
     }
 
@@ -67,22 +88,34 @@ public class MongoDbEventStore extends AbstractEventStore<DBObject> {
         ).sort(new BasicDBObject("occurredOn", 1));
     }
 
-    private DBObject serialize(Event event) {
+    private DBObject serialize(Optional<String> streamType, Event event, long streamVersion, long occurredOn) {
+        // the event is serialized anyway, so the stamp is put into the serialized object instead of a cloned event
         DBObject obj = mapper.mapToDbObject(event);
-        obj.put("streamVersion", event.getStreamVersion());
-        obj.put("occurredOn", System.currentTimeMillis());
+        streamType.ifPresent(type -> obj.put("streamType", type));
+        obj.put("streamVersion", streamVersion);
+        obj.put("occurredOn", occurredOn);
         return obj;
     }
 
     @Override
     public void append(String streamName, long currentVersion, List<? extends Event> newEvents) {
+        append(Optional.empty(), streamName, currentVersion, newEvents);
+    }
+
+    @Override
+    public void append(String streamType, String streamName, long currentVersion, List<? extends Event> newEvents) {
+        append(Optional.of(streamType), streamName, currentVersion, newEvents);
+    }
+
+    private void append(Optional<String> streamType, String streamName, long currentVersion, List<? extends Event> newEvents) {
         try {
             BulkWriteOperation operation = dbCollection.initializeOrderedBulkOperation();
             long nextEventIndex = currentVersion;
+            long now = clock.millis();
             for (Event event : newEvents) {
-                DBObject dbObject = serialize(event.occurred(++nextEventIndex));
+                DBObject dbObject = serialize(streamType, event, ++nextEventIndex, now);
                 dbObject.put("_id", new BasicDBObject("_streamId", hashedStreamName(streamName))
-                        .append("_idx", dbObject.get("streamVersion")));
+                        .append("_idx", nextEventIndex));
                 operation.insert(dbObject);
             };
             operation.execute();
@@ -97,6 +130,72 @@ public class MongoDbEventStore extends AbstractEventStore<DBObject> {
         }
     }
 
+    /**
+     * Appends the streams with two unordered bulk writes. The first events of the streams are inserted first, so that
+     * the conflicting streams are detected by the unique "_id", and then the rest of the events of the other streams.
+     */
+    @Override
+    public Set<String> appendAll(List<StreamAppend> appends) {
+        Set<String> conflicts = new LinkedHashSet<>();
+        List<DBObject> first = new ArrayList<>();
+        List<String> firstStreams = new ArrayList<>();
+        Map<String, List<DBObject>> rest = new LinkedHashMap<>();
+        long now = clock.millis();
+        for (StreamAppend append : appends) {
+            long nextEventIndex = append.currentVersion;
+            for (Event event : append.events) {
+                DBObject dbObject = serialize(append.streamType, event, ++nextEventIndex, now);
+                dbObject.put("_id", new BasicDBObject("_streamId", hashedStreamName(append.streamName))
+                        .append("_idx", nextEventIndex));
+                if (nextEventIndex == append.currentVersion + 1) {
+                    first.add(dbObject);
+                    firstStreams.add(append.streamName);
+                } else {
+                    rest.computeIfAbsent(append.streamName, (s) -> new ArrayList<>()).add(dbObject);
+                }
+            }
+        }
+        for (int i : insertAll(first)) {
+            conflicts.add(firstStreams.get(i));
+        }
+        List<DBObject> others = new ArrayList<>();
+        List<String> otherStreams = new ArrayList<>();
+        rest.forEach((streamName, dbObjects) -> {
+            if (!conflicts.contains(streamName)) {
+                others.addAll(dbObjects);
+                dbObjects.forEach(o -> otherStreams.add(streamName));
+            }
+        });
+        for (int i : insertAll(others)) {
+            conflicts.add(otherStreams.get(i));
+        }
+        return conflicts;
+    }
+
+    /**
+     * Inserts the given documents with an unordered bulk write.
+     * @return indexes of the documents, which were not inserted because of the duplicate keys
+     */
+    private Set<Integer> insertAll(List<DBObject> dbObjects) {
+        Set<Integer> duplicates = new HashSet<>();
+        if (dbObjects.isEmpty()) {
+            return duplicates;
+        }
+        BulkWriteOperation operation = dbCollection.initializeUnorderedBulkOperation();
+        dbObjects.forEach(operation::insert);
+        try {
+            operation.execute();
+        } catch (BulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCode() != 11000) {
+                    throw e;
+                }
+                duplicates.add(error.getIndex());
+            }
+        }
+        return duplicates;
+    }
+
     @Override
     public long size() {
         return Collections.stream(dbCollection.aggregate(new ArrayList<DBObject>(){{
@@ -105,6 +204,58 @@ public class MongoDbEventStore extends AbstractEventStore<DBObject> {
         }}).results()).map(e -> (long) e.get("count")).findAny().orElse(0L);
     }
 
+    @Override
+    public long versionAt(String streamName, long timestamp) {
+        return Collections.stream((Iterator<DBObject>) dbCollection.find(
+                    new BasicDBObject("_id._streamId", hashedStreamName(streamName))
+                        .append("occurredOn", new BasicDBObject("$lte", timestamp))
+                ).sort(new BasicDBObject("occurredOn", -1).append("_id._idx", -1)).limit(1)
+        ).map(e -> ((Number) ((DBObject) e.get("_id")).get("_idx")).longValue()).findAny().orElse(0L);
+    }
+
+    @Override
+    public Stream<Event> eventsBetween(long from, long to) {
+        return eventsBetween(new BasicDBObject(), from, to);
+    }
+
+    @Override
+    public Stream<Event> eventsBetween(String streamType, long from, long to) {
+        return eventsBetween(new BasicDBObject("streamType", streamType), from, to);
+    }
+
+    private Stream<Event> eventsBetween(BasicDBObject query, long from, long to) {
+        return Collections.stream((Iterator<DBObject>) dbCollection.find(
+                    query.append("occurredOn", new BasicDBObject("$gte", from).append("$lt", to))
+                ).sort(new BasicDBObject("occurredOn", 1))
+        ).map(dbObject -> (Event) mapper.mapToObject(dbObject));
+    }
+
+    /**
+     * Sets the type of the stream to the events appended without it, e.g. before the types were stored, so that they
+     * could be found by {@link #eventsBetween(String, long, long)}. The repositories name the streams by the type
+     * followed by the identifier, so every event gets the longest of the given types its stream name starts with.
+     * Hence the types, which are the prefixes of one another (e.g. "House" and "HouseHold"), must be migrated at
+     * once. The migration could be run on the live collection, and it could be run again.
+     * @param streamTypes types of the streams stored in the collection
+     * @return amount of the migrated events
+     */
+    public long migrateStreamTypes(Collection<String> streamTypes) {
+        long migrated = 0;
+        List<String> longestFirst = new ArrayList<>(streamTypes);
+        longestFirst.sort(Comparator.comparingInt(String::length).reversed());
+        for (String streamType : longestFirst) {
+            // the stream identifiers are the hex MD5 digests followed by the names, see hashedStreamName
+            migrated += dbCollection.update(
+                    new BasicDBObject("streamType", new BasicDBObject("$exists", false))
+                        .append("_id._streamId", Pattern.compile("^[0-9a-f]{32}" + Pattern.quote(streamType))),
+                    new BasicDBObject("$set", new BasicDBObject("streamType", streamType)),
+                    false,
+                    true
+            ).getN();
+        }
+        return migrated;
+    }
+
     @Override
     public long version(String streamName) {
         return Collections.stream(dbCollection.aggregate(new ArrayList<DBObject>(){{
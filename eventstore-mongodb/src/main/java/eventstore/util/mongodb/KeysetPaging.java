@@ -0,0 +1,50 @@
+package eventstore.util.mongodb;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import eventstore.util.collection.Collections;
+import eventstore.util.collection.PagingIterator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Utility methods for reading large collections page by page, see {@link PagingIterator}.
+ */
+public final class KeysetPaging {
+    private KeysetPaging() {}
+
+    /**
+     * Returns the documents matching the given query sorted by the given key. Every page is read by the range of the
+     * key following the last document of the previous page, so that, unlike skip/limit, reading every page costs the
+     * same, given the key is indexed.
+     * @param collection collection of the documents
+     * @param query query selecting the documents
+     * @param key unique key of the documents
+     * @param pageSize maximum amount of the documents read at once
+     * @param executor executor prefetching the pages
+     */
+    public static Stream<DBObject> stream(DBCollection collection, DBObject query, String key, int pageSize, Executor executor) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size " + pageSize);
+        }
+        return Collections.<DBObject, Object>paged(
+            (after) -> {
+                List<DBObject> page = collection.find(after.map(last ->
+                        (DBObject) new BasicDBObject("$and", Arrays.asList(query, new BasicDBObject(key, new BasicDBObject("$gt", last))))
+                    ).orElse(query))
+                    .sort(new BasicDBObject(key, 1))
+                    .limit(pageSize)
+                    .toArray();
+                return new PagingIterator.Page<>(
+                    page,
+                    page.size() < pageSize ? Optional.empty() : Optional.of(page.get(page.size() - 1).get(key))
+                );
+            },
+            executor
+        );
+    }
+}
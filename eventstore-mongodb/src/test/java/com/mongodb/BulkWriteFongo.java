@@ -0,0 +1,95 @@
+package com.mongodb;
+
+import com.github.fakemongo.Fongo;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory server failing the bulk writes like the real one does, with a {@link BulkWriteException} telling the index
+ * of every failed request. The collections of the plain {@link Fongo} throw the error of the first failed request
+ * instead, e.g. a {@link DuplicateKeyException}.
+ */
+public class BulkWriteFongo extends Fongo {
+
+    private Map<String, FongoDB> dbs;
+
+    public BulkWriteFongo(String name) {
+        super(name);
+    }
+
+    @Override
+    public synchronized FongoDB getDB(String name) {
+        if (dbs == null) {
+            dbs = new HashMap<>();
+        }
+        return dbs.computeIfAbsent(name, (dbName) -> new BulkWriteFongoDB(this, dbName));
+    }
+
+    private static final class BulkWriteFongoDB extends FongoDB {
+
+        BulkWriteFongoDB(Fongo fongo, String name) {
+            super(fongo, name);
+        }
+
+        @Override
+        public synchronized FongoDBCollection doGetCollection(String name, boolean idIsNotUniq) {
+            FongoDBCollection collection = super.doGetCollection(name, idIsNotUniq);
+            if (collection instanceof BulkWriteCollection || name.startsWith("system.")) {
+                return collection;
+            }
+            collection = new BulkWriteCollection(this, name, idIsNotUniq);
+            addCollection(collection);
+            return collection;
+        }
+
+        private static final class BulkWriteCollection extends FongoDBCollection {
+
+            BulkWriteCollection(FongoDB db, String name, boolean idIsNotUniq) {
+                super(db, name, idIsNotUniq);
+            }
+
+            /**
+             * Executes the requests one by one and collects their errors, the ordered bulk stops at the first one.
+             */
+            @Override
+            BulkWriteResult executeBulkWriteOperation(
+                    boolean ordered,
+                    Boolean bypassDocumentValidation,
+                    List<WriteRequest> requests,
+                    WriteConcern writeConcern) {
+                List<BulkWriteError> errors = new ArrayList<>();
+                List<BulkWriteUpsert> upserts = new ArrayList<>();
+                int inserted = 0, matched = 0, removed = 0, modified = 0;
+                for (int i = 0; i < requests.size(); ++i) {
+                    BulkWriteResult result;
+                    try {
+                        result = super.executeBulkWriteOperation(
+                            ordered, bypassDocumentValidation, Collections.singletonList(requests.get(i)), writeConcern
+                        );
+                    } catch (MongoServerException e) {
+                        errors.add(new BulkWriteError(e.getCode(), e.getMessage(), new BasicDBObject(), i));
+                        if (ordered) {
+                            break;
+                        }
+                        continue;
+                    }
+                    inserted += result.getInsertedCount();
+                    matched  += result.getMatchedCount();
+                    removed  += result.getRemovedCount();
+                    modified += result.isModifiedCountAvailable() ? result.getModifiedCount() : 0;
+                    for (BulkWriteUpsert upsert : result.getUpserts()) {
+                        upserts.add(new BulkWriteUpsert(i, upsert.getId()));
+                    }
+                }
+                BulkWriteResult result = new AcknowledgedBulkWriteResult(inserted, matched, removed, modified, upserts);
+                if (!errors.isEmpty()) {
+                    throw new BulkWriteException(result, errors, null, new ServerAddress());
+                }
+                return result;
+            }
+        }
+    }
+}